@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3.processor;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The checks {@code MethodAnnotations} makes when a proxy is first
+ * created, made on the source instead. The messages are the same as
+ * those of {@code InvalidAnnotationException}, so an error reads the
+ * same whether the compiler or the runtime reports it.
+ *
+ * <p>In addition, {@code @Match} patterns given as constants are
+ * compiled, as an invalid pattern would otherwise only fail on the
+ * first listing.
+ */
+final class AnnotationChecks {
+
+    private static final String PACKAGE = "org.tomitribe.jaws.s3.";
+    private static final String PREFIX = PACKAGE + "Prefix";
+    private static final String MATCH = PACKAGE + "Match";
+    private static final String MATCHES = PACKAGE + "Matches";
+    private static final String SUFFIX = PACKAGE + "Suffix";
+    private static final String SUFFIXES = PACKAGE + "Suffixes";
+
+    private final Elements elements;
+
+    AnnotationChecks(final Elements elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * @return the errors of the annotations on the interface itself
+     */
+    List<String> check(final TypeElement type) {
+        final List<String> errors = new ArrayList<>();
+        checkPatterns(type, errors);
+        return errors;
+    }
+
+    /**
+     * @return the errors of the annotations on the method and its
+     *         parameters, in the order {@code MethodAnnotations} finds them
+     */
+    List<String> check(final ExecutableElement method) {
+        final List<? extends VariableElement> params = method.getParameters();
+        final List<String> errors = new ArrayList<>();
+
+        // --- @Prefix ---
+        final AnnotationMirror methodPrefix = find(method, PREFIX);
+        if (methodPrefix != null && string(methodPrefix, "value").isEmpty()) {
+            errors.add("@Prefix on method requires a non-empty value");
+        }
+
+        boolean prefixBound = false;
+        for (final VariableElement param : params) {
+            if (find(param, PREFIX) == null) continue;
+
+            if (methodPrefix != null) {
+                errors.add("@Prefix on both method and parameter is ambiguous");
+            } else if (!is(param.asType(), String.class)) {
+                errors.add("@Prefix parameter must be String, found " + simpleName(param.asType()));
+            } else if (prefixBound) {
+                errors.add("only one @Prefix parameter allowed");
+            } else {
+                prefixBound = true;
+            }
+        }
+
+        // --- @Match ---
+        final List<AnnotationMirror> methodMatches = findAll(method, MATCH, MATCHES);
+        if (!methodMatches.isEmpty()) {
+            for (final AnnotationMirror match : methodMatches) {
+                if (string(match, "value").isEmpty()) {
+                    errors.add("@Match on method requires a non-empty value");
+                }
+            }
+            if (params.stream().anyMatch(param -> find(param, MATCH) != null)) {
+                errors.add("@Match on both method and parameter is ambiguous");
+            }
+            checkPatterns(method, errors);
+        } else {
+            for (final VariableElement param : params) {
+                if (find(param, MATCH) == null) continue;
+
+                final TypeMirror type = param.asType();
+                if (is(type, String.class) || is(type, Pattern.class)) continue;
+
+                if (type.getKind() == TypeKind.BOOLEAN) {
+                    errors.add("@Match is not allowed on boolean parameters");
+                } else {
+                    errors.add("@Match parameter must be String or Pattern, found " + simpleName(type));
+                }
+            }
+        }
+
+        // --- @Suffix ---
+        final List<AnnotationMirror> methodSuffixes = findAll(method, SUFFIX, SUFFIXES);
+        if (!methodSuffixes.isEmpty()) {
+            for (final AnnotationMirror suffix : methodSuffixes) {
+                if (strings(suffix, "value").isEmpty()) {
+                    errors.add("@Suffix on method requires at least one value");
+                }
+            }
+            if (params.stream().anyMatch(param -> find(param, SUFFIX) != null)) {
+                errors.add("@Suffix on both method and parameter is ambiguous");
+            }
+        } else {
+            for (final VariableElement param : params) {
+                if (find(param, SUFFIX) == null) continue;
+
+                final TypeMirror type = param.asType();
+                if (is(type, String.class)) continue;
+
+                if (type.getKind() == TypeKind.BOOLEAN) {
+                    errors.add("@Suffix is not allowed on boolean parameters");
+                } else {
+                    errors.add("@Suffix parameter must be String, found " + simpleName(type));
+                }
+            }
+        }
+
+        return errors;
+    }
+
+    private void checkPatterns(final Element element, final List<String> errors) {
+        for (final AnnotationMirror match : findAll(element, MATCH, MATCHES)) {
+            final String pattern = string(match, "value");
+            if (pattern.isEmpty()) continue;
+            try {
+                Pattern.compile(pattern);
+            } catch (final PatternSyntaxException e) {
+                errors.add("@Match pattern is not a valid regular expression: " + e.getDescription()
+                        + " near index " + e.getIndex() + " of \"" + pattern + "\"");
+            }
+        }
+    }
+
+    private static AnnotationMirror find(final Element element, final String annotation) {
+        for (final AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (name(mirror).equals(annotation)) return mirror;
+        }
+        return null;
+    }
+
+    /**
+     * Finds a repeatable annotation whether it is present once or was
+     * wrapped in its container by the compiler.
+     */
+    private List<AnnotationMirror> findAll(final Element element, final String annotation, final String container) {
+        final List<AnnotationMirror> found = new ArrayList<>();
+        for (final AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            final String name = name(mirror);
+            if (name.equals(annotation)) {
+                found.add(mirror);
+            } else if (name.equals(container)) {
+                for (final AnnotationValue value : values(mirror, "value")) {
+                    found.add((AnnotationMirror) value.getValue());
+                }
+            }
+        }
+        return found;
+    }
+
+    private static String name(final AnnotationMirror mirror) {
+        return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    private String string(final AnnotationMirror mirror, final String attribute) {
+        return (String) value(mirror, attribute).getValue();
+    }
+
+    private List<String> strings(final AnnotationMirror mirror, final String attribute) {
+        final List<String> strings = new ArrayList<>();
+        for (final AnnotationValue value : values(mirror, attribute)) {
+            strings.add((String) value.getValue());
+        }
+        return strings;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<? extends AnnotationValue> values(final AnnotationMirror mirror, final String attribute) {
+        return (List<? extends AnnotationValue>) value(mirror, attribute).getValue();
+    }
+
+    private AnnotationValue value(final AnnotationMirror mirror, final String attribute) {
+        final Map<? extends ExecutableElement, ? extends AnnotationValue> values = elements.getElementValuesWithDefaults(mirror);
+        for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(attribute)) return entry.getValue();
+        }
+        throw new IllegalStateException("@" + name(mirror) + " has no attribute " + attribute);
+    }
+
+    private static boolean is(final TypeMirror type, final Class<?> clazz) {
+        if (type.getKind() != TypeKind.DECLARED) return false;
+        final Element element = ((DeclaredType) type).asElement();
+        return ((TypeElement) element).getQualifiedName().contentEquals(clazz.getName());
+    }
+
+    /**
+     * The name {@code Class.getSimpleName()} would give for the type.
+     */
+    private static String simpleName(final TypeMirror type) {
+        switch (type.getKind()) {
+            case DECLARED:
+                return ((DeclaredType) type).asElement().getSimpleName().toString();
+            case ARRAY:
+                return simpleName(((ArrayType) type).getComponentType()) + "[]";
+            default:
+                return type.toString();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3.processor;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the source of the generated implementation of one interface.
+ *
+ * <p>Every abstract method, declared or inherited, gets a static final
+ * {@code GeneratedProxy.Call} resolved when the class is initialized and
+ * a body that hands its arguments to that call. Default methods are
+ * inherited as they are, and {@code equals}, {@code hashCode} and
+ * {@code toString} come from {@code GeneratedProxy}.
+ *
+ * <p>All types are written fully qualified, so the generated source
+ * needs no imports and cannot clash with names the interface declares.
+ */
+final class ImplementationWriter {
+
+    private static final String SUFFIX = "$$Jaws";
+    private static final String BASE = "org.tomitribe.jaws.s3.GeneratedProxy";
+    private static final String HANDLER = "org.tomitribe.jaws.s3.S3Handler";
+
+    private final TypeElement type;
+    private final Types types;
+    private final String packageName;
+    private final String simpleName;
+    private final List<ExecutableElement> methods;
+
+    ImplementationWriter(final TypeElement type, final Elements elements, final Types types) {
+        this.type = type;
+        this.types = types;
+
+        final PackageElement pkg = elements.getPackageOf(type);
+        this.packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+
+        // The binary name without the package, so Outer.Inner becomes Outer$Inner$$Jaws
+        final String binaryName = elements.getBinaryName(type).toString();
+        this.simpleName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1) + SUFFIX;
+
+        this.methods = abstractMethods(type, elements);
+    }
+
+    String getQualifiedName() {
+        return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+    }
+
+    /**
+     * Generic methods would need their type variables carried over to
+     * the implementation; those interfaces are left to the proxy.
+     */
+    boolean hasGenericMethods() {
+        return methods.stream().anyMatch(method -> !method.getTypeParameters().isEmpty());
+    }
+
+    void write(final Writer out) throws IOException {
+        final String iface = type.getQualifiedName().toString();
+        final StringBuilder source = new StringBuilder();
+
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+
+        source.append("@javax.annotation.processing.Generated(\"").append(JawsProcessor.class.getName()).append("\")\n");
+        source.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        source.append("public final class ").append(simpleName)
+                .append(" extends ").append(BASE)
+                .append(" implements ").append(iface).append(" {\n\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            final ExecutableElement method = methods.get(i);
+            source.append("    private static final ").append(BASE).append(".Call CALL").append(i)
+                    .append(" = ").append(BASE).append(".call(").append(iface).append(".class, \"")
+                    .append(method.getSimpleName()).append("\"");
+            for (final VariableElement param : method.getParameters()) {
+                source.append(", ").append(types.erasure(param.asType())).append(".class");
+            }
+            source.append(");\n");
+        }
+        if (!methods.isEmpty()) source.append("\n");
+
+        source.append("    public ").append(simpleName).append("(final ").append(HANDLER).append(" handler) {\n");
+        source.append("        super(handler);\n");
+        source.append("    }\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            source.append("\n");
+            writeMethod(source, methods.get(i), "CALL" + i);
+        }
+
+        source.append("}\n");
+        out.write(source.toString());
+    }
+
+    private void writeMethod(final StringBuilder source, final ExecutableElement method, final String call) {
+        final TypeMirror returnType = method.getReturnType();
+        final List<? extends VariableElement> params = method.getParameters();
+
+        source.append("    @Override\n");
+        source.append("    public ").append(returnType).append(" ").append(method.getSimpleName()).append("(");
+        for (int i = 0; i < params.size(); i++) {
+            if (i > 0) source.append(", ");
+            source.append("final ").append(params.get(i).asType()).append(" p").append(i);
+        }
+        source.append(")");
+
+        final List<? extends TypeMirror> thrown = method.getThrownTypes();
+        for (int i = 0; i < thrown.size(); i++) {
+            source.append(i == 0 ? " throws " : ", ").append(thrown.get(i));
+        }
+        source.append(" {\n");
+
+        final StringBuilder invoke = new StringBuilder();
+        invoke.append(call).append(".invoke(this, ");
+        if (params.isEmpty()) {
+            invoke.append("null");
+        } else {
+            invoke.append("new Object[]{");
+            for (int i = 0; i < params.size(); i++) {
+                if (i > 0) invoke.append(", ");
+                invoke.append("p").append(i);
+            }
+            invoke.append("}");
+        }
+        invoke.append(")");
+
+        if (returnType.getKind() == TypeKind.VOID) {
+            source.append("        ").append(invoke).append(";\n");
+        } else {
+            source.append("        return (").append(returnType).append(") ").append(invoke).append(";\n");
+        }
+        source.append("    }\n");
+    }
+
+    /**
+     * The abstract methods the implementation must provide. A method
+     * inherited from several interfaces is implemented once, with the
+     * most specific return type.
+     */
+    private List<ExecutableElement> abstractMethods(final TypeElement type, final Elements elements) {
+        final Map<String, ExecutableElement> methods = new LinkedHashMap<>();
+
+        for (final ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            if (!method.getModifiers().contains(Modifier.ABSTRACT)) continue;
+            if (isObjectMethod(method)) continue;
+
+            final String signature = signature(method);
+            final ExecutableElement existing = methods.get(signature);
+            if (existing == null || types.isSubtype(method.getReturnType(), existing.getReturnType())) {
+                methods.put(signature, method);
+            }
+        }
+
+        return new ArrayList<>(methods.values());
+    }
+
+    private String signature(final ExecutableElement method) {
+        final StringBuilder signature = new StringBuilder(method.getSimpleName());
+        for (final VariableElement param : method.getParameters()) {
+            signature.append(',').append(types.erasure(param.asType()));
+        }
+        return signature.toString();
+    }
+
+    /**
+     * An interface may redeclare the public methods of {@code Object};
+     * those are implemented by {@code GeneratedProxy}.
+     */
+    private static boolean isObjectMethod(final ExecutableElement method) {
+        final String name = method.getSimpleName().toString();
+        final List<? extends VariableElement> params = method.getParameters();
+
+        if (params.isEmpty()) return name.equals("hashCode") || name.equals("toString");
+        return params.size() == 1 && name.equals("equals")
+                && params.get(0).asType().toString().equals("java.lang.Object");
+    }
+}
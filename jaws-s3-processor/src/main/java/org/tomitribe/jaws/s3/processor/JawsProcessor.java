@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates an implementation of every interface extending
+ * {@code org.tomitribe.jaws.s3.S3} in the sources being compiled, and
+ * reports invalid JAWS annotations as compile errors.
+ *
+ * <p>For {@code com.example.Repository} the implementation is
+ * {@code com.example.Repository$$Jaws}. {@code S3File.as()} uses it when
+ * it is on the class path and falls back to a
+ * {@link java.lang.reflect.Proxy} when it is not, so the processor is
+ * optional and the generated classes need no registration.
+ *
+ * <p>Interfaces that cannot be implemented from generated code are
+ * skipped and keep using a proxy: private interfaces, interfaces nested
+ * in private classes, and generic interfaces or methods.
+ */
+@SupportedAnnotationTypes("*")
+public class JawsProcessor extends AbstractProcessor {
+
+    private static final String S3 = "org.tomitribe.jaws.s3.S3";
+
+    private Elements elements;
+    private Types types;
+    private Messager messager;
+    private AnnotationChecks checks;
+
+    @Override
+    public synchronized void init(final ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.elements = processingEnv.getElementUtils();
+        this.types = processingEnv.getTypeUtils();
+        this.messager = processingEnv.getMessager();
+        this.checks = new AnnotationChecks(elements);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * Never claims any annotation, so other processors see the same
+     * elements.
+     */
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment round) {
+        final TypeElement s3 = elements.getTypeElement(S3);
+
+        // jaws-s3 is not on the class path of this compilation
+        if (s3 == null) return false;
+
+        for (final TypeElement type : ElementFilter.typesIn(round.getRootElements())) {
+            process(type, types.erasure(s3.asType()));
+        }
+        return false;
+    }
+
+    private void process(final TypeElement type, final TypeMirror s3) {
+        for (final TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            process(nested, s3);
+        }
+
+        if (type.getKind() != ElementKind.INTERFACE) return;
+        if (!types.isSubtype(types.erasure(type.asType()), s3)) return;
+        if (type.getQualifiedName().toString().startsWith(S3 + ".") || type.getQualifiedName().contentEquals(S3)) return;
+
+        if (!check(type)) return;
+        if (!isImplementable(type)) return;
+
+        final ImplementationWriter implementation = new ImplementationWriter(type, elements, types);
+        if (implementation.hasGenericMethods()) return;
+
+        try {
+            final JavaFileObject file = processingEnv.getFiler().createSourceFile(implementation.getQualifiedName(), type);
+            try (Writer writer = file.openWriter()) {
+                implementation.write(writer);
+            }
+        } catch (final IOException e) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "Cannot write " + implementation.getQualifiedName() + ": " + e.getMessage(), type);
+        }
+    }
+
+    /**
+     * Reports every invalid annotation of the interface and of the
+     * methods it declares. Inherited methods are checked with the
+     * interface that declares them.
+     *
+     * @return {@code true} if there were no errors
+     */
+    private boolean check(final TypeElement type) {
+        boolean valid = report(checks.check(type), type);
+        for (final ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getModifiers().contains(Modifier.STATIC)) continue;
+            valid &= report(checks.check(method), method);
+        }
+        return valid;
+    }
+
+    private boolean report(final List<String> errors, final Element element) {
+        for (final String error : errors) {
+            messager.printMessage(Diagnostic.Kind.ERROR, error, element);
+        }
+        return errors.isEmpty();
+    }
+
+    private static boolean isImplementable(final TypeElement type) {
+        if (!type.getTypeParameters().isEmpty()) return false;
+
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) return false;
+        }
+
+        return true;
+    }
+}
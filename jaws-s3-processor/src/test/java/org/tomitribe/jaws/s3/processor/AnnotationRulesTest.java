@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3.processor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.tomitribe.jaws.s3.InvalidAnnotationException;
+import org.tomitribe.jaws.s3.MockS3Extension;
+import org.tomitribe.jaws.s3.S3Bucket;
+import org.tomitribe.jaws.s3.S3Client;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The processor's {@code AnnotationChecks} repeat the rules of the
+ * runtime's {@code MethodAnnotations}. Each invalid method below is
+ * compiled once with the processor and once without, and the errors the
+ * compiler reports must be those the runtime reports for the same method.
+ */
+public class AnnotationRulesTest {
+
+    private static final String[] INVALID = {
+            "@Prefix Stream<S3File> files();",
+            "@Prefix(\"org/\") Stream<S3File> files(@Prefix String prefix);",
+            "Stream<S3File> files(@Prefix int prefix);",
+            "Stream<S3File> files(@Prefix String first, @Prefix String second);",
+            "@Match(\"\") Stream<S3File> files();",
+            "@Match(\".*\") Stream<S3File> files(@Match String pattern);",
+            "Stream<S3File> files(@Match boolean pattern);",
+            "Stream<S3File> files(@Match Integer pattern);",
+            "@Suffix({}) Stream<S3File> files();",
+            "@Suffix(\".txt\") Stream<S3File> files(@Suffix String suffix);",
+            "Stream<S3File> files(@Suffix boolean suffix);",
+            "Stream<S3File> files(@Suffix long[] suffix);",
+            "@Prefix @Match(\"\") @Match(\"\") Stream<S3File> files(@Prefix String prefix, @Suffix int suffix);",
+    };
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+    private Path output;
+    private S3Bucket bucket;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        output = Files.createTempDirectory("jaws-rules");
+        Files.createDirectories(output.resolve("processed"));
+        Files.createDirectories(output.resolve("classes"));
+        bucket = new S3Client(mockS3.getS3Client()).createBucket("repository");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(output)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void compilerAndRuntimeAgree() throws Exception {
+        final URL classes = output.resolve("classes").toUri().toURL();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes}, getClass().getClassLoader())) {
+            for (int i = 0; i < INVALID.length; i++) {
+                final String className = "org.example.Invalid" + i;
+                final String source = "" +
+                        "package org.example;\n" +
+                        "import org.tomitribe.jaws.s3.*;\n" +
+                        "import java.util.stream.Stream;\n" +
+                        "public interface Invalid" + i + " extends S3.Dir {\n" +
+                        "    " + INVALID[i] + "\n" +
+                        "}\n";
+
+                final List<String> compiled = TestCompiler.compile(output.resolve("processed"), className, source, true);
+                assertEquals(List.of(), TestCompiler.compile(output.resolve("classes"), className, source, false));
+
+                final Class<?> type = loader.loadClass(className);
+                final InvalidAnnotationException runtime = assertThrows(InvalidAnnotationException.class, () -> bucket.as(type));
+
+                assertFalse(compiled.isEmpty(), INVALID[i]);
+                assertEquals(runtime.getErrors(), compiled, INVALID[i]);
+            }
+        }
+    }
+}
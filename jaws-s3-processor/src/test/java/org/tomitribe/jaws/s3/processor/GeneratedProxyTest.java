@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3.processor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.tomitribe.jaws.s3.Match;
+import org.tomitribe.jaws.s3.MockS3Extension;
+import org.tomitribe.jaws.s3.Name;
+import org.tomitribe.jaws.s3.S3;
+import org.tomitribe.jaws.s3.S3Bucket;
+import org.tomitribe.jaws.s3.S3Client;
+import org.tomitribe.jaws.s3.S3File;
+import org.tomitribe.jaws.s3.Suffix;
+
+import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The test sources of this module are compiled with the processor, so
+ * the interfaces below have generated implementations.
+ */
+public class GeneratedProxyTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+    private S3Bucket bucket;
+
+    @BeforeEach
+    public final void setUp() throws Exception {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+
+        bucket = s3Client.createBucket("repository")
+                .put("org.color/red/1.4/foo.txt", "red")
+                .put("org.color/red/1.4/foo.pom", "")
+                .put("junit/junit/4.12/junit.txt", "")
+                .put("readme.txt", "hello");
+    }
+
+    @Test
+    public void generatedClassIsUsed() {
+        final Repository repository = bucket.as(Repository.class);
+
+        assertEquals(Repository.class.getName() + "$$Jaws", repository.getClass().getName());
+        assertEquals(Group.class.getName() + "$$Jaws", repository.group("junit").getClass().getName());
+    }
+
+    @Test
+    public void listing() {
+        final List<String> names = bucket.as(Repository.class).groups()
+                .map(group -> group.file().getName())
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("junit", "org.color"), names);
+    }
+
+    @Test
+    public void annotationsAreApplied() {
+        final Version version = bucket.as(Repository.class)
+                .group("org.color")
+                .file().getFile("red/1.4").as(Version.class);
+
+        final List<String> names = version.texts()
+                .map(S3File::getName)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("foo.txt"), names);
+    }
+
+    @Test
+    public void childNamesAreValidated() {
+        final Repository repository = bucket.as(Repository.class);
+
+        assertThrows(IllegalArgumentException.class, () -> repository.group("Invalid"));
+    }
+
+    @Test
+    public void declaredExceptionIsThrown() throws Exception {
+        final Repository repository = bucket.as(Repository.class);
+
+        assertEquals("hello", repository.readme().getValueAsString());
+        assertThrows(FileNotFoundException.class, repository::missing);
+    }
+
+    @Test
+    public void defaultMethod() {
+        assertEquals("hello", bucket.as(Repository.class).readmeText());
+    }
+
+    @Test
+    public void navigation() {
+        final Group group = bucket.as(Repository.class).group("junit");
+
+        assertEquals("junit", group.file().getAbsoluteName());
+        assertEquals("", group.parent().getAbsoluteName());
+    }
+
+    @Test
+    public void equalsAndHashCode() {
+        final Group first = bucket.as(Repository.class).group("junit");
+        final Group second = bucket.as(Repository.class).group("junit");
+        final Group other = bucket.as(Repository.class).group("org.color");
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertNotEquals(first, other);
+        assertEquals("junit", first.toString());
+    }
+
+    public interface Repository extends S3.Dir {
+
+        Stream<Group> groups();
+
+        Group group(String name);
+
+        @Name("readme.txt")
+        S3File readme() throws FileNotFoundException;
+
+        @Name("missing.txt")
+        S3File missing() throws FileNotFoundException;
+
+        default String readmeText() {
+            return file("readme.txt").getValueAsString();
+        }
+    }
+
+    @Match("[a-z.]+")
+    public interface Group extends S3.Dir {
+    }
+
+    public interface Version extends S3.Dir {
+
+        @Suffix(".txt")
+        Stream<S3File> texts();
+    }
+}
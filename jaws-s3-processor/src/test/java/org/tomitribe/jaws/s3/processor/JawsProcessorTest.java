@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3.processor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JawsProcessorTest {
+
+    private Path output;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        output = Files.createTempDirectory("jaws-processor");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(output)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void generatesImplementations() throws Exception {
+        final List<String> errors = compile("org.example.Repository", "" +
+                "package org.example;\n" +
+                "import org.tomitribe.jaws.s3.*;\n" +
+                "import java.io.FileNotFoundException;\n" +
+                "import java.util.List;\n" +
+                "import java.util.stream.Stream;\n" +
+                "public interface Repository extends S3.Dir {\n" +
+                "    Stream<Group> groups();\n" +
+                "    Group group(String name);\n" +
+                "    @Recursive List<S3File> all(@Suffix String suffix, boolean exclude);\n" +
+                "    @Name(\"readme.txt\") S3File readme() throws FileNotFoundException;\n" +
+                "    @Match(\"[a-z]+\") interface Group extends S3.Dir {}\n" +
+                "}\n");
+
+        assertEquals(List.of(), errors);
+        assertTrue(generated("org/example/Repository$$Jaws"));
+        assertTrue(generated("org/example/Repository$Group$$Jaws"));
+    }
+
+    @Test
+    public void emptyPrefix() throws Exception {
+        final List<String> errors = compile("org.example.Files", "" +
+                "package org.example;\n" +
+                "import org.tomitribe.jaws.s3.*;\n" +
+                "import java.util.stream.Stream;\n" +
+                "public interface Files extends S3.Dir {\n" +
+                "    @Prefix Stream<S3File> files(String name);\n" +
+                "}\n");
+
+        assertEquals(List.of("@Prefix on method requires a non-empty value"), errors);
+        assertFalse(generated("org/example/Files$$Jaws"));
+    }
+
+    @Test
+    public void invalidParameters() throws Exception {
+        final List<String> errors = compile("org.example.Files", "" +
+                "package org.example;\n" +
+                "import org.tomitribe.jaws.s3.*;\n" +
+                "import java.util.stream.Stream;\n" +
+                "public interface Files extends S3.Dir {\n" +
+                "    Stream<S3File> prefixed(@Prefix int prefix);\n" +
+                "    Stream<S3File> matched(@Match boolean pattern);\n" +
+                "    Stream<S3File> suffixed(@Suffix Integer suffix);\n" +
+                "}\n");
+
+        assertEquals(List.of(
+                "@Prefix parameter must be String, found int",
+                "@Match is not allowed on boolean parameters",
+                "@Suffix parameter must be String, found Integer"), errors);
+    }
+
+    @Test
+    public void ambiguousAnnotations() throws Exception {
+        final List<String> errors = compile("org.example.Files", "" +
+                "package org.example;\n" +
+                "import org.tomitribe.jaws.s3.*;\n" +
+                "import java.util.stream.Stream;\n" +
+                "public interface Files extends S3.Dir {\n" +
+                "    @Match(\".*\") @Match(\"\") Stream<S3File> matched(@Match String pattern);\n" +
+                "    @Suffix(\".txt\") Stream<S3File> suffixed(@Suffix String suffix);\n" +
+                "}\n");
+
+        assertEquals(List.of(
+                "@Match on method requires a non-empty value",
+                "@Match on both method and parameter is ambiguous",
+                "@Suffix on both method and parameter is ambiguous"), errors);
+    }
+
+    @Test
+    public void invalidPattern() throws Exception {
+        final List<String> errors = compile("org.example.Files", "" +
+                "package org.example;\n" +
+                "import org.tomitribe.jaws.s3.*;\n" +
+                "@Match(\"[a-z\")\n" +
+                "public interface Files extends S3.Dir {\n" +
+                "}\n");
+
+        assertEquals(1, errors.size(), errors.toString());
+        assertTrue(errors.get(0).startsWith("@Match pattern is not a valid regular expression"), errors.get(0));
+    }
+
+    @Test
+    public void unsupportedInterfacesAreLeftToTheProxy() throws Exception {
+        final List<String> errors = compile("org.example.Holder", "" +
+                "package org.example;\n" +
+                "import org.tomitribe.jaws.s3.*;\n" +
+                "import java.util.stream.Stream;\n" +
+                "public class Holder {\n" +
+                "    private interface Hidden extends S3.Dir {}\n" +
+                "    public interface Typed<T extends S3> extends S3.Dir { Stream<T> items(); }\n" +
+                "    public interface Converting extends S3.Dir { <T> T convert(Class<T> type); }\n" +
+                "    public interface Plain { String name(); }\n" +
+                "}\n");
+
+        assertEquals(List.of(), errors);
+        assertFalse(generated("org/example/Holder$Hidden$$Jaws"));
+        assertFalse(generated("org/example/Holder$Typed$$Jaws"));
+        assertFalse(generated("org/example/Holder$Converting$$Jaws"));
+        assertFalse(generated("org/example/Holder$Plain$$Jaws"));
+    }
+
+    private boolean generated(final String name) {
+        return Files.exists(output.resolve(name + ".java")) && Files.exists(output.resolve(name + ".class"));
+    }
+
+    private List<String> compile(final String className, final String source) {
+        return TestCompiler.compile(output, className, source, true);
+    }
+}
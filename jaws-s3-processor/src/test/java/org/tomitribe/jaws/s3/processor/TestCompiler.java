@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3.processor;
+
+import org.tomitribe.jaws.s3.S3File;
+import software.amazon.awssdk.transfer.s3.model.Upload;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles single sources into a directory for the tests of this module.
+ */
+final class TestCompiler {
+
+    private TestCompiler() {
+    }
+
+    /**
+     * Compiles a single source, with the processor unless {@code process}
+     * is {@code false}.
+     *
+     * @return the messages of the errors reported
+     */
+    static List<String> compile(final Path output, final String className, final String source, final boolean process) {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+        final JavaFileObject file = new SimpleJavaFileObject(
+                URI.create("string:///" + className.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        final List<String> options = new ArrayList<>(List.of(
+                "-classpath", classpath(),
+                "-d", output.toString(),
+                "-s", output.toString()));
+        if (!process) options.add("-proc:none");
+
+        final JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null, List.of(file));
+        if (process) task.setProcessors(List.of(new JawsProcessor()));
+        task.call();
+
+        return diagnostics.getDiagnostics().stream()
+                .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                .map(diagnostic -> diagnostic.getMessage(null))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The test class path may be a manifest-only jar, so jaws-s3 and the
+     * transfer manager its interfaces refer to are added explicitly.
+     */
+    private static String classpath() {
+        return Stream.of(S3File.class, Upload.class)
+                .map(type -> type.getProtectionDomain().getCodeSource().getLocation().getPath())
+                .collect(Collectors.joining(File.pathSeparator, System.getProperty("java.class.path") + File.pathSeparator, ""));
+    }
+}
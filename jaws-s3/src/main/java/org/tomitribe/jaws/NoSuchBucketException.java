@@ -25,6 +25,11 @@ public class NoSuchBucketException extends RuntimeException {
         this.bucketName = bucketName;
     }
 
+    public NoSuchBucketException(final String bucketName, final Throwable cause) {
+        super(bucketName, cause);
+        this.bucketName = bucketName;
+    }
+
     public String getBucketName() {
         return bucketName;
     }
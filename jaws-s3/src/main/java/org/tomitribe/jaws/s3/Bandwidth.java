@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A token-bucket limit on the bytes per second sent and received.
+ * Bytes of request bodies and response streams are paid for as they
+ * flow; once the bucket is empty, further chunks are held back until
+ * enough tokens have accumulated. Up to {@code burst} bytes may pass
+ * at full speed after a quiet period.
+ *
+ * <pre>{@code
+ * S3Client s3 = S3Client.builder()
+ *         .s3(asyncClient)
+ *         .bandwidth(Bandwidth.of(50 * 1024 * 1024))
+ *         .bucketBandwidth("backfill", Bandwidth.of(10 * 1024 * 1024))
+ *         .build();
+ * }</pre>
+ *
+ * <p>When both a client and a bucket limit apply, a chunk waits for
+ * whichever is slower. Since bytes are held back as they flow,
+ * {@link software.amazon.awssdk.transfer.s3.progress.TransferListener}
+ * progress reflects the limit.
+ */
+public class Bandwidth {
+
+    private final long bytesPerSecond;
+    private final long burst;
+    private final double bytesPerNano;
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+    private double tokens;
+    private long last = System.nanoTime();
+
+    private Bandwidth(final long bytesPerSecond, final long burst) {
+        if (bytesPerSecond < 1) throw new IllegalArgumentException("bytesPerSecond must be positive: " + bytesPerSecond);
+        if (burst < 1) throw new IllegalArgumentException("burst must be positive: " + burst);
+        this.bytesPerSecond = bytesPerSecond;
+        this.burst = burst;
+        this.bytesPerNano = bytesPerSecond / 1e9;
+        this.tokens = burst;
+    }
+
+    /**
+     * Creates a limit that allows one second's worth of bytes as a burst.
+     *
+     * @param bytesPerSecond the sustained rate
+     * @return the limit
+     */
+    public static Bandwidth of(final long bytesPerSecond) {
+        return new Bandwidth(bytesPerSecond, bytesPerSecond);
+    }
+
+    /**
+     * @param bytesPerSecond the sustained rate
+     * @param burst          the bytes that may pass at full speed after a quiet period
+     * @return the limit
+     */
+    public static Bandwidth of(final long bytesPerSecond, final long burst) {
+        return new Bandwidth(bytesPerSecond, burst);
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public long getBurst() {
+        return burst;
+    }
+
+    /**
+     * @return the total bytes that have passed through this limit
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * @return the total time chunks have been held back by this limit
+     */
+    public Duration getDelay() {
+        return Duration.ofNanos(delayed.sum());
+    }
+
+    /**
+     * Takes tokens for {@code count} bytes, going into debt if there are
+     * not enough.
+     *
+     * @return how long to wait, in nanoseconds, before the bytes may pass
+     */
+    synchronized long reserve(final long count) {
+        final long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - last) * bytesPerNano);
+        last = now;
+        tokens -= count;
+        bytes.add(count);
+
+        if (tokens >= 0) return 0;
+
+        final long wait = (long) Math.ceil(-tokens / bytesPerNano);
+        delayed.add(wait);
+        return wait;
+    }
+
+    /**
+     * Runs {@code task} after {@code nanos}, on one daemon thread shared
+     * by all limits.
+     */
+    static void schedule(final Runnable task, final long nanos) {
+        Timer.INSTANCE.schedule(task, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static class Timer {
+        private static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, r -> {
+            final Thread thread = new Thread(r, "jaws-bandwidth-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reads an object into memory like {@link AsyncResponseTransformer#toBytes()},
+ * but only once the object's size has been reserved in the client's
+ * {@link BufferPool}. Until then the body is not subscribed to, which
+ * leaves it on the connection. The array is allocated once at the size
+ * given by {@code Content-Length} rather than grown as bytes arrive.
+ *
+ * <p>The reservation is released when the body has been read or the
+ * read fails. What the caller does with the bytes afterwards is outside
+ * the budget.
+ */
+class BudgetedBytesTransformer implements AsyncResponseTransformer<GetObjectResponse, ResponseBytes<GetObjectResponse>> {
+
+    private final BufferPool pool;
+    private volatile CompletableFuture<ResponseBytes<GetObjectResponse>> future;
+    private volatile GetObjectResponse response;
+
+    BudgetedBytesTransformer(final BufferPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public CompletableFuture<ResponseBytes<GetObjectResponse>> prepare() {
+        // Called again for every retry
+        future = new CompletableFuture<>();
+        return future;
+    }
+
+    @Override
+    public void onResponse(final GetObjectResponse response) {
+        this.response = response;
+    }
+
+    @Override
+    public void onStream(final SdkPublisher<ByteBuffer> publisher) {
+        final CompletableFuture<ResponseBytes<GetObjectResponse>> target = future;
+        final GetObjectResponse response = this.response;
+        final Long length = response.contentLength();
+        if (length != null && length > Integer.MAX_VALUE - 8) {
+            target.completeExceptionally(new IllegalStateException("Object of " + length + " bytes is too large to read into memory"));
+            return;
+        }
+        final long reserved = length != null ? length : pool.getBufferSize();
+
+        final CompletableFuture<Void> reservation = pool.reserve(reserved);
+        target.whenComplete((value, throwable) -> reservation.cancel(false));
+
+        reservation.thenRun(() -> publisher.subscribe(new Collector(target, response, length, reserved)));
+    }
+
+    @Override
+    public void exceptionOccurred(final Throwable error) {
+        future.completeExceptionally(error);
+    }
+
+    private class Collector implements Subscriber<ByteBuffer> {
+        private final CompletableFuture<ResponseBytes<GetObjectResponse>> target;
+        private final GetObjectResponse response;
+        private final long reserved;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private Subscription subscription;
+        private byte[] bytes;
+        private int position;
+
+        Collector(final CompletableFuture<ResponseBytes<GetObjectResponse>> target, final GetObjectResponse response,
+                  final Long length, final long reserved) {
+            this.target = target;
+            this.response = response;
+            this.reserved = reserved;
+            this.bytes = new byte[length != null ? Math.toIntExact(length) : pool.getBufferSize()];
+        }
+
+        @Override
+        public void onSubscribe(final Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(final ByteBuffer buffer) {
+            if (target.isDone()) {
+                // Cancelled, for example a hedged request that lost
+                subscription.cancel();
+                release();
+                return;
+            }
+
+            final int remaining = buffer.remaining();
+            if (position + remaining > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + remaining));
+            }
+            buffer.get(bytes, position, remaining);
+            position += remaining;
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            release();
+            target.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            release();
+            final byte[] result = position == bytes.length ? bytes : Arrays.copyOf(bytes, position);
+            target.complete(ResponseBytes.fromByteArrayUnsafe(response, result));
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) pool.release(reserved);
+        }
+    }
+}
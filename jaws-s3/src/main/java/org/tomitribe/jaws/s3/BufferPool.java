@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A client-wide budget for bytes held in memory by requests in flight,
+ * together with a pool of reusable buffers drawn from that budget.
+ *
+ * <p>In-memory downloads such as {@link S3File#getValueAsString()}
+ * reserve the object's size before its body is read. When the budget is
+ * exhausted the body is simply not read yet, so the response waits on
+ * the connection instead of on the heap. Uploads from an
+ * {@link java.io.InputStream} of unknown length are read into pooled
+ * buffers, which are returned once the upload completes. Such an upload
+ * waits for its first buffer only; once started it may overdraw the
+ * budget, which then holds back new work until it is repaid.
+ *
+ * <p>A reservation larger than the whole budget is granted once nothing
+ * else is reserved, so a single large object never waits forever. Idle
+ * buffers kept for reuse count against the budget and are dropped when
+ * a reservation needs the room.
+ *
+ * <pre>{@code
+ * S3Client s3 = S3Client.builder()
+ *         .s3(asyncClient)
+ *         .bufferPool(BufferPool.builder()
+ *                 .capacity(512L * 1024 * 1024)
+ *                 .direct(true)
+ *                 .build())
+ *         .build();
+ * }</pre>
+ *
+ * <p>Buffers used internally by the SDK and the transfer manager are
+ * outside this budget.
+ */
+public class BufferPool {
+
+    private final long capacity;
+    private final int bufferSize;
+    private final boolean direct;
+    private final Deque<ByteBuffer> idle = new ArrayDeque<>();
+    private final Deque<Waiter> waiting = new ArrayDeque<>();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private long used;
+
+    private BufferPool(final Builder builder) {
+        this.capacity = builder.capacity;
+        this.bufferSize = builder.bufferSize;
+        this.direct = builder.direct;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the number of bytes that may be held by requests in flight
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the size of each pooled buffer
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return {@code true} if pooled buffers are allocated outside the heap
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @return the number of bytes currently reserved by requests in flight
+     */
+    public synchronized long getUsed() {
+        return used;
+    }
+
+    /**
+     * @return the number of idle buffers kept for reuse
+     */
+    public synchronized int getIdle() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of reservations waiting for room in the budget
+     */
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    /**
+     * @return the number of buffers allocated since the pool was created
+     */
+    public long getAllocated() {
+        return allocated.sum();
+    }
+
+    /**
+     * @return the number of times an idle buffer was handed out again
+     *         instead of allocating a new one
+     */
+    public long getReused() {
+        return reused.sum();
+    }
+
+    /**
+     * Returns a future that completes once {@code bytes} have been
+     * reserved. Reservations are granted in order. Cancelling the future
+     * gives up its place.
+     */
+    CompletableFuture<Void> reserve(final long bytes) {
+        final Waiter waiter;
+        synchronized (this) {
+            if (waiting.isEmpty() && fits(bytes)) {
+                used += bytes;
+                return CompletableFuture.completedFuture(null);
+            }
+            waiter = new Waiter(bytes);
+            waiting.add(waiter);
+        }
+
+        waiter.future.whenComplete((ignored, throwable) -> {
+            if (waiter.future.isCancelled()) cancelled(waiter);
+        });
+        return waiter.future;
+    }
+
+    /**
+     * A cancelled reservation leaves the queue straight away, as one
+     * that does not fit would otherwise hold back every one behind it.
+     */
+    private void cancelled(final Waiter waiter) {
+        final boolean removed;
+        synchronized (this) {
+            removed = waiting.remove(waiter);
+        }
+        if (removed) release(0);
+    }
+
+    void release(final long bytes) {
+        final List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            used -= bytes;
+            while (!waiting.isEmpty()) {
+                final Waiter waiter = waiting.peek();
+                if (waiter.future.isDone()) {
+                    waiting.poll();
+                    continue;
+                }
+                if (!fits(waiter.bytes)) break;
+
+                waiting.poll();
+                used += waiter.bytes;
+                granted.add(waiter);
+            }
+        }
+
+        // Outside the lock, as completing runs the waiting downloads
+        for (final Waiter waiter : granted) {
+            if (!waiter.future.complete(null)) release(waiter.bytes);
+        }
+    }
+
+    /**
+     * Takes a cleared buffer of {@link #getBufferSize()} bytes, blocking
+     * while the budget is exhausted.
+     */
+    ByteBuffer take() {
+        S3Client.join(reserve(bufferSize));
+        return poll();
+    }
+
+    /**
+     * Takes a further buffer for work that already holds buffers from
+     * {@link #take()}, without waiting. Two uploads each waiting for the
+     * other to free its buffers would deadlock, so work that has been
+     * admitted may overdraw the budget instead. New work then waits until
+     * the budget is back under its capacity.
+     */
+    ByteBuffer takeMore() {
+        synchronized (this) {
+            used += bufferSize;
+        }
+        return poll();
+    }
+
+    private ByteBuffer poll() {
+        synchronized (this) {
+            final ByteBuffer buffer = idle.poll();
+            if (buffer != null) {
+                reused.increment();
+                return buffer;
+            }
+        }
+
+        allocated.increment();
+        return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Returns a buffer from {@link #take()} or {@link #takeMore()} for reuse. Only call this once
+     * nothing else can still be reading the buffer.
+     */
+    void give(final ByteBuffer buffer) {
+        buffer.clear();
+        synchronized (this) {
+            // Keep it only if the budget, idle buffers included, has room
+            if (used + (long) idle.size() * bufferSize <= capacity) idle.push(buffer);
+        }
+        release(bufferSize);
+    }
+
+    /**
+     * Releases the budget of a buffer from {@link #take()} or
+     * {@link #takeMore()} without
+     * reusing it, for when a request may still be reading it.
+     */
+    void discard(final ByteBuffer buffer) {
+        release(bufferSize);
+    }
+
+    /**
+     * Idle buffers are dropped to make room, as a reservation in flight
+     * is worth more than a buffer that might be reused.
+     */
+    private boolean fits(final long bytes) {
+        while (used + (long) idle.size() * bufferSize + bytes > capacity && !idle.isEmpty()) {
+            idle.poll();
+        }
+        return used == 0 || used + bytes <= capacity;
+    }
+
+    private static class Waiter {
+        private final long bytes;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Waiter(final long bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    public static class Builder {
+        private long capacity = Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 4);
+        private int bufferSize = 64 * 1024;
+        private boolean direct;
+
+        /**
+         * Sets the number of bytes that may be held by requests in
+         * flight. Defaults to a quarter of the maximum heap, at most 256 MB.
+         */
+        public Builder capacity(final long capacity) {
+            if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Sets the size of each pooled buffer. Defaults to 64 KB.
+         */
+        public Builder bufferSize(final int bufferSize) {
+            if (bufferSize < 1) throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Allocates pooled buffers outside the heap. Defaults to {@code false}.
+         */
+        public Builder direct(final boolean direct) {
+            this.direct = direct;
+            return this;
+        }
+
+        public BufferPool build() {
+            return new BufferPool(this);
+        }
+    }
+}
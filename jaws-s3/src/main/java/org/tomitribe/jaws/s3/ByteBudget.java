@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+/**
+ * A blocking budget of bytes. Callers reserve the number of bytes they
+ * are about to hold in memory and release them when done. A reservation
+ * larger than the whole budget is granted once nothing else is reserved,
+ * so a single oversized object can never wait forever.
+ */
+class ByteBudget {
+
+    private final long capacity;
+    private long used;
+
+    ByteBudget(final long capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Blocks until the bytes can be reserved.
+     *
+     * @throws IllegalStateException if interrupted while waiting
+     */
+    synchronized void acquire(final long bytes) {
+        try {
+            while (used > 0 && used + bytes > capacity) {
+                wait();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + bytes + " bytes of budget", e);
+        }
+        used += bytes;
+    }
+
+    synchronized void release(final long bytes) {
+        used -= bytes;
+        notifyAll();
+    }
+
+    synchronized long getUsed() {
+        return used;
+    }
+
+    long getCapacity() {
+        return capacity;
+    }
+}
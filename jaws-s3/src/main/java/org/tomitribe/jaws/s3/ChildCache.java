@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The children of one {@link S3File} looked up by name, so that walking
+ * the same path twice returns the same instances along with whatever
+ * state their earlier HEAD or read resolved.
+ *
+ * <p>Children are held weakly and at most {@link #MAX_ENTRIES} are kept,
+ * least recently used first out, so the cache never keeps a child alive
+ * or grows with the number of distinct names asked for.
+ *
+ * <p>Each entry records the write count of the bucket when it was
+ * created. Once any object of the bucket has been written or deleted
+ * since, the entry is dropped and the child is looked up afresh.
+ */
+final class ChildCache {
+
+    static final int MAX_ENTRIES = 32;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * @param name   the child name
+     * @param writes the current write count of the bucket
+     * @return the cached child, or {@code null} if there is none or it
+     *         may be stale
+     */
+    synchronized S3File get(final String name, final long writes) {
+        final Entry entry = entries.get(name);
+        if (entry == null) return null;
+
+        final S3File child = entry.get();
+        if (child == null || entry.writes != writes) {
+            entries.remove(name);
+            return null;
+        }
+        return child;
+    }
+
+    /**
+     * @param name   the child name
+     * @param child  the child
+     * @param writes the write count of the bucket read before the child
+     *               was created
+     */
+    synchronized void put(final String name, final S3File child, final long writes) {
+        entries.put(name, new Entry(child, writes));
+    }
+
+    private static final class Entry extends WeakReference<S3File> {
+        private final long writes;
+
+        private Entry(final S3File child, final long writes) {
+            super(child);
+            this.writes = writes;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adaptive limits on the number of requests a client has in flight
+ * against each S3 partition. A partition is a bucket plus the first
+ * segment of the key, which is how S3 scales request rates.
+ *
+ * <p>Limits follow additive-increase, multiplicative-decrease: each
+ * partition starts at the {@link Builder#initialLimit initial limit}, is
+ * cut by the {@link Builder#backoff backoff} factor when S3 answers
+ * {@code 503 SlowDown}, and grows by one per limit's worth of successful
+ * requests while it is being used. Other failures, and requests that
+ * were never sent because they were cancelled or could not start, leave
+ * the limit as it is. Only one cut is made per round of
+ * requests, so a burst of throttled responses to requests sent at the
+ * same time halves the limit once rather than collapsing it to the
+ * minimum.
+ *
+ * <p>Requests over the limit wait in a queue without holding a thread.
+ * Transfer manager uploads and downloads wait for a slot before they
+ * start.
+ *
+ * <pre>{@code
+ * S3Client s3 = S3Client.builder()
+ *         .s3(asyncClient)
+ *         .concurrencyLimits(ConcurrencyLimits.builder()
+ *                 .initialLimit(32)
+ *                 .build())
+ *         .build();
+ * }</pre>
+ *
+ * <p>A {@code ConcurrencyLimits} instance also reports the current limits
+ * and throttle counts for the client it is given to. Give each client its
+ * own instance.
+ */
+public class ConcurrencyLimits {
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoff;
+    private final ConcurrentMap<String, Partition> partitions = new ConcurrentHashMap<>();
+    private final LongAdder throttles = new LongAdder();
+
+    private ConcurrencyLimits(final Builder builder) {
+        this.initialLimit = builder.initialLimit;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.backoff = builder.backoff;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the current limit for the partition holding the given key.
+     *
+     * @param bucket the bucket name
+     * @param key    an object key or listing prefix
+     * @return the number of requests allowed in flight
+     */
+    public int getLimit(final String bucket, final String key) {
+        final Partition partition = partitions.get(partition(bucket, key));
+        if (partition == null) return initialLimit;
+        synchronized (partition) {
+            return (int) partition.limit;
+        }
+    }
+
+    /**
+     * Returns the limits of all partitions that currently have requests
+     * in flight or have not yet recovered from throttling. Partitions
+     * that are idle at their initial limit are not tracked.
+     *
+     * @return limits keyed by {@code bucket/segment}, sorted by partition
+     */
+    public Map<String, Integer> getLimits() {
+        final Map<String, Integer> limits = new TreeMap<>();
+        for (final Partition partition : partitions.values()) {
+            synchronized (partition) {
+                if (!partition.retired) limits.put(partition.name, (int) partition.limit);
+            }
+        }
+        return limits;
+    }
+
+    /**
+     * @return the number of requests S3 has answered with a throttling error
+     */
+    public long getThrottles() {
+        return throttles.sum();
+    }
+
+    /**
+     * @return the number of requests currently in flight across all partitions
+     */
+    public int getInFlight() {
+        int inFlight = 0;
+        for (final Partition partition : partitions.values()) {
+            synchronized (partition) {
+                inFlight += partition.inFlight;
+            }
+        }
+        return inFlight;
+    }
+
+    /**
+     * @return the number of requests currently waiting for a slot
+     */
+    public int getQueued() {
+        int queued = 0;
+        for (final Partition partition : partitions.values()) {
+            synchronized (partition) {
+                queued += partition.waiting.size();
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * Returns a future that completes with a permit once the partition
+     * has room. Cancelling the future gives up the place in the queue.
+     */
+    CompletableFuture<Permit> acquire(final String bucket, final String key) {
+        final String name = partition(bucket, key);
+        for (;;) {
+            final Partition partition = partitions.computeIfAbsent(name, Partition::new);
+            synchronized (partition) {
+                // Removed between lookup and lock
+                if (partition.retired) continue;
+
+                if (partition.inFlight < (int) partition.limit) {
+                    partition.inFlight++;
+                    return CompletableFuture.completedFuture(new Permit(partition, partition.epoch));
+                }
+
+                final CompletableFuture<Permit> waiter = new CompletableFuture<>();
+                partition.waiting.add(waiter);
+                return waiter;
+            }
+        }
+    }
+
+    /**
+     * S3 partitions request rates by key prefix. The first segment is
+     * the finest split that keys usually share.
+     */
+    static String partition(final String bucket, final String key) {
+        if (key == null) return bucket + "/";
+        final int slash = key.indexOf('/');
+        return bucket + "/" + (slash < 0 ? "" : key.substring(0, slash + 1));
+    }
+
+    /**
+     * Returns {@code true} if the failure is S3 asking the client to slow
+     * down. These arrive after the SDK has used up its own retries.
+     */
+    static boolean isThrottled(final Throwable throwable) {
+        if (throwable == null) return false;
+        final Throwable cause = S3Client.unwrap(throwable);
+        if (!(cause instanceof AwsServiceException)) return false;
+        final AwsServiceException e = (AwsServiceException) cause;
+        return e.isThrottlingException() || e.statusCode() == 503;
+    }
+
+    /**
+     * One slot in a partition. Released exactly once, with the outcome
+     * of the request that used it, or discarded if no request was sent.
+     */
+    class Permit {
+        private final Partition partition;
+        private final long epoch;
+        private boolean released;
+
+        Permit(final Partition partition, final long epoch) {
+            this.partition = partition;
+            this.epoch = epoch;
+        }
+
+        /**
+         * Releases the permit with the outcome of the request sent with
+         * it: {@code null} if S3 answered successfully.
+         */
+        void release(final Throwable failure) {
+            release(failure, true);
+        }
+
+        /**
+         * Releases a permit no request was sent with, because the caller
+         * cancelled or the request could not be started. It says nothing
+         * about the partition, so the limit is left as it is.
+         */
+        void discard() {
+            release(null, false);
+        }
+
+        private void release(final Throwable failure, final boolean sent) {
+            final List<CompletableFuture<Permit>> granted = new ArrayList<>();
+            final List<Permit> permits = new ArrayList<>();
+
+            synchronized (partition) {
+                if (released) return;
+                released = true;
+
+                partition.inFlight--;
+
+                if (isThrottled(failure)) {
+                    throttles.increment();
+                    if (epoch == partition.epoch) {
+                        partition.limit = Math.max(minLimit, partition.limit * backoff);
+                        partition.epoch++;
+                    }
+                } else if (sent && failure == null && partition.inFlight + 1 >= partition.limit / 2) {
+                    partition.limit = Math.min(maxLimit, partition.limit + 1 / partition.limit);
+                }
+
+                while (partition.inFlight < (int) partition.limit && !partition.waiting.isEmpty()) {
+                    partition.inFlight++;
+                    granted.add(partition.waiting.poll());
+                    permits.add(new Permit(partition, partition.epoch));
+                }
+
+                if (partition.inFlight == 0 && partition.waiting.isEmpty() && partition.limit >= initialLimit) {
+                    partition.retired = true;
+                    partitions.remove(partition.name, partition);
+                }
+            }
+
+            // Outside the lock, as completing runs the waiting requests
+            for (int i = 0; i < granted.size(); i++) {
+                if (!granted.get(i).complete(permits.get(i))) {
+                    permits.get(i).discard();
+                }
+            }
+        }
+    }
+
+    private class Partition {
+        private final String name;
+        private final Queue<CompletableFuture<Permit>> waiting = new ArrayDeque<>();
+        private double limit = initialLimit;
+        private int inFlight;
+        private long epoch;
+        private boolean retired;
+
+        Partition(final String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Builder {
+        private int initialLimit = 128;
+        private int minLimit = 1;
+        private int maxLimit = 1024;
+        private double backoff = 0.5;
+
+        /**
+         * Sets the limit each partition starts at and returns to once
+         * it has recovered. Defaults to {@code 128}.
+         */
+        public Builder initialLimit(final int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        /**
+         * Sets the lowest limit throttling can push a partition to.
+         * Defaults to {@code 1}.
+         */
+        public Builder minLimit(final int minLimit) {
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        /**
+         * Sets the highest limit a partition can grow to. Defaults to
+         * {@code 1024}.
+         */
+        public Builder maxLimit(final int maxLimit) {
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Sets the factor a partition's limit is multiplied by when S3
+         * throttles it. Defaults to {@code 0.5}.
+         */
+        public Builder backoff(final double backoff) {
+            if (backoff <= 0 || backoff >= 1) {
+                throw new IllegalArgumentException("backoff must be between 0 and 1: " + backoff);
+            }
+            this.backoff = backoff;
+            return this;
+        }
+
+        public ConcurrencyLimits build() {
+            if (minLimit < 1 || minLimit > initialLimit || initialLimit > maxLimit) {
+                throw new IllegalArgumentException(String.format("Limits must satisfy 1 <= min <= initial <= max: %s, %s, %s",
+                        minLimit, initialLimit, maxLimit));
+            }
+            return new ConcurrencyLimits(this);
+        }
+    }
+}
@@ -29,6 +29,10 @@ import java.util.function.Predicate;
  * its no-arg constructor and applied to each {@link S3File} in the
  * listing.
  *
+ * <p>The predicate is instantiated once per proxy method and element
+ * type, then shared by every call to that method, so it must be
+ * stateless or thread-safe.
+ *
  * <p>{@code @Filter} is the most powerful filtering annotation but
  * also the last to run. When a method or type carries several filter
  * annotations they are evaluated in a fixed order — simplest and
@@ -82,6 +86,25 @@ import java.util.function.Predicate;
  * {@link S3File} — size, metadata, path components, or other
  * attributes beyond the name.
  *
+ * <h3>Attributes read by the predicate</h3>
+ *
+ * <p>A listing carries the name, size, last-modified date and ETag of
+ * each object. Content type and user metadata are not included, and a
+ * predicate that reads them makes a HEAD request for each entry, one
+ * after the other. Declaring them with {@link #needs()} lets the
+ * listing fetch them for all entries of a page concurrently before the
+ * predicate runs:
+ *
+ * <pre>{@code
+ * public interface Reports extends S3.Dir {
+ *     @Filter(value = IsJson.class, needs = Filter.Attribute.CONTENT_TYPE)
+ *     Stream<S3File> json();
+ * }
+ * }</pre>
+ *
+ * <p>A predicate that causes a request per entry without declaring it is
+ * reported once with a warning through {@code java.util.logging}.
+ *
  * @see Prefix
  * @see Suffix
  * @see Match
@@ -91,4 +114,31 @@ import java.util.function.Predicate;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Filter {
     Class<? extends Predicate<S3File>> value();
+
+    /**
+     * The attributes of the {@link S3File} the predicate reads. Those a
+     * listing does not include are fetched for the listed entries before
+     * the predicate is called. When empty, nothing is fetched ahead.
+     */
+    Attribute[] needs() default {};
+
+    /**
+     * An attribute of a listed {@link S3File}.
+     */
+    enum Attribute {
+        NAME,
+        SIZE,
+        LAST_MODIFIED,
+        ETAG,
+        CONTENT_TYPE,
+        USER_METADATA;
+
+        /**
+         * @return whether {@code ListObjects} returns the attribute, so
+         *         that reading it from a listed file makes no request
+         */
+        boolean isListed() {
+            return this != CONTENT_TYPE && this != USER_METADATA;
+        }
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * Base class of the implementations that the {@code jaws-s3-processor}
+ * annotation processor generates for {@link S3} interfaces. For an
+ * interface {@code com.example.Repository} the processor writes
+ * {@code com.example.Repository$$Jaws}, and {@link S3File#as(Class)}
+ * instantiates it in place of a {@link java.lang.reflect.Proxy}.
+ *
+ * <p>Each generated method passes its arguments to a {@link Call}
+ * held in a static final field of the generated class. The call runs
+ * the same compiled plan as a proxy would, but without going through
+ * {@link java.lang.reflect.InvocationHandler} and the {@link Method}
+ * lookup that comes with it, so every call site stays monomorphic.
+ *
+ * <p>This class and {@link Call} are public only so generated code in
+ * other packages can reach them; they are not meant to be used directly.
+ */
+public abstract class GeneratedProxy {
+
+    /**
+     * The suffix appended to the binary name of an interface to find its
+     * generated implementation.
+     */
+    public static final String SUFFIX = "$$Jaws";
+
+    private final S3Handler handler;
+
+    protected GeneratedProxy(final S3Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Resolves a method of the implemented interface once, when the
+     * generated class is initialized.
+     *
+     * @param iface          the interface the generated class implements
+     * @param name           the method name
+     * @param parameterTypes the erased parameter types
+     * @return the call to use for every invocation of the method
+     */
+    protected static Call call(final Class<?> iface, final String name, final Class<?>... parameterTypes) {
+        try {
+            return new Call(iface, iface.getMethod(name, parameterTypes));
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException("Generated class does not match " + iface.getName()
+                    + ", recompile it: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return handler.equals(((GeneratedProxy) o).handler);
+    }
+
+    @Override
+    public int hashCode() {
+        return handler.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return handler.toString();
+    }
+
+    /**
+     * One method of a generated class. The plan is compiled on the first
+     * call rather than when the class is initialized, so that invalid
+     * annotations are reported by the call, as they are for proxies.
+     */
+    public static final class Call {
+        private final Class<?> iface;
+        private final Method method;
+        private final Class<?>[] exceptionTypes;
+        private S3Handler.Plan plan;
+
+        private Call(final Class<?> iface, final Method method) {
+            this.iface = iface;
+            this.method = method;
+            this.exceptionTypes = method.getExceptionTypes();
+        }
+
+        /**
+         * Invokes the method on a generated instance. Checked exceptions
+         * the method declares are rethrown as they are; any other checked
+         * exception is wrapped in an {@link UndeclaredThrowableException},
+         * as a proxy would.
+         *
+         * @param proxy the generated instance
+         * @param args  the arguments, or {@code null} if the method has none
+         * @return the result
+         */
+        public Object invoke(final GeneratedProxy proxy, final Object[] args) {
+            try {
+                return plan().invoke(proxy.handler, proxy, args);
+            } catch (final RuntimeException | Error e) {
+                throw e;
+            } catch (final Throwable t) {
+                for (final Class<?> declared : exceptionTypes) {
+                    if (declared.isInstance(t)) throw Call.<RuntimeException>rethrow(t);
+                }
+                throw new UndeclaredThrowableException(t);
+            }
+        }
+
+        /**
+         * Plans are immutable, so a plan compiled twice by racing threads
+         * is harmless.
+         */
+        private S3Handler.Plan plan() {
+            S3Handler.Plan plan = this.plan;
+            if (plan == null) {
+                plan = ProxyType.of(iface).plan(method);
+                this.plan = plan;
+            }
+            return plan;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T extends Throwable> T rethrow(final Throwable throwable) throws T {
+            throw (T) throwable;
+        }
+    }
+}
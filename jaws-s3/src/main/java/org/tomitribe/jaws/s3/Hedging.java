@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hedged requests for cutting tail latency. When a request has not
+ * completed within the observed latency percentile for its operation, an
+ * identical second request is sent. Whichever response arrives first is
+ * used and the other request is cancelled.
+ *
+ * <pre>{@code
+ * S3Client s3 = S3Client.builder()
+ *         .s3(asyncClient)
+ *         .hedging(Hedging.builder()
+ *                 .operations(Operation.GET, Operation.HEAD)
+ *                 .percentile(95)
+ *                 .build())
+ *         .build();
+ * }</pre>
+ *
+ * <p>Only {@link Operation#isIdempotentRead() idempotent reads} can be
+ * hedged, and streaming downloads are never hedged. With the default
+ * 95th percentile roughly one request in twenty is duplicated once enough
+ * latencies have been recorded; until then the {@link Builder#maxDelay
+ * maximum delay} is used.
+ *
+ * <p>A {@code Hedging} instance also collects the statistics for the
+ * client it is given to, such as {@link #getHedgeRate(Operation)} and
+ * {@link #getWinRate(Operation)}. Give each client its own instance.
+ */
+public class Hedging {
+
+    static final int SAMPLES = 1000;
+    static final int MIN_SAMPLES = 20;
+
+    private final double percentile;
+    private final long minDelay;
+    private final long maxDelay;
+    private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+
+    private Hedging(final Builder builder) {
+        this.percentile = builder.percentile;
+        this.minDelay = builder.minDelay.toNanos();
+        this.maxDelay = builder.maxDelay.toNanos();
+        for (final Operation operation : builder.operations) {
+            stats.put(operation, new Stats());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the operations that are hedged.
+     *
+     * @return an unmodifiable set of operations
+     */
+    public Set<Operation> getOperations() {
+        return Collections.unmodifiableSet(stats.keySet());
+    }
+
+    /**
+     * Returns how long a request of the given operation currently waits
+     * before a second request is sent.
+     *
+     * @param operation the operation
+     * @return the current delay, or {@code null} if the operation is not hedged
+     */
+    public Duration getDelay(final Operation operation) {
+        final Stats stats = this.stats.get(operation);
+        if (stats == null) return null;
+        return Duration.ofNanos(stats.delay());
+    }
+
+    /**
+     * @param operation the operation
+     * @return the number of requests of that operation sent through hedging
+     */
+    public long getRequests(final Operation operation) {
+        final Stats stats = this.stats.get(operation);
+        return stats == null ? 0 : stats.requests.sum();
+    }
+
+    /**
+     * @param operation the operation
+     * @return the number of those requests for which a second request was sent
+     */
+    public long getHedges(final Operation operation) {
+        final Stats stats = this.stats.get(operation);
+        return stats == null ? 0 : stats.hedges.sum();
+    }
+
+    /**
+     * @param operation the operation
+     * @return the number of hedged requests answered first by the second request
+     */
+    public long getWins(final Operation operation) {
+        final Stats stats = this.stats.get(operation);
+        return stats == null ? 0 : stats.wins.sum();
+    }
+
+    /**
+     * Returns the fraction of requests that were hedged. This is the
+     * additional load hedging puts on S3.
+     *
+     * @param operation the operation
+     * @return hedges divided by requests, or {@code 0} if there were none
+     */
+    public double getHedgeRate(final Operation operation) {
+        final long requests = getRequests(operation);
+        return requests == 0 ? 0 : (double) getHedges(operation) / requests;
+    }
+
+    /**
+     * Returns the fraction of hedges that answered first. A low win rate
+     * means the delay is too short and hedges are mostly wasted.
+     *
+     * @param operation the operation
+     * @return wins divided by hedges, or {@code 0} if there were none
+     */
+    public double getWinRate(final Operation operation) {
+        final long hedges = getHedges(operation);
+        return hedges == 0 ? 0 : (double) getWins(operation) / hedges;
+    }
+
+    /**
+     * Sends the request, and sends it again if it is still outstanding
+     * after the current delay. Operations that are not hedged are sent
+     * once, unchanged.
+     *
+     * <p>A failure only fails the call once no other copy of the request
+     * is still outstanding, so a hedge that fails does not discard a
+     * primary that is about to succeed. Cancelling the returned future
+     * cancels both copies.
+     */
+    <T> CompletableFuture<T> execute(final Operation operation, final Supplier<CompletableFuture<T>> request) {
+        final Stats stats = this.stats.get(operation);
+        if (stats == null) return request.get();
+
+        stats.requests.increment();
+
+        final long start = System.nanoTime();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicInteger outstanding = new AtomicInteger(1);
+        final AtomicReference<CompletableFuture<T>> hedge = new AtomicReference<>();
+
+        final CompletableFuture<T> primary = request.get();
+
+        final ScheduledFuture<?> timer = Timer.INSTANCE.schedule(() -> {
+            if (result.isDone()) return;
+            outstanding.incrementAndGet();
+            stats.hedges.increment();
+
+            final CompletableFuture<T> second;
+            try {
+                second = request.get();
+            } catch (final RuntimeException | Error e) {
+                if (outstanding.decrementAndGet() == 0) result.completeExceptionally(e);
+                return;
+            }
+            hedge.set(second);
+            second.whenComplete((value, throwable) -> {
+                if (throwable == null) {
+                    if (result.complete(value)) stats.wins.increment();
+                } else if (outstanding.decrementAndGet() == 0) {
+                    result.completeExceptionally(S3Client.unwrap(throwable));
+                }
+            });
+            if (result.isDone()) second.cancel(true);
+        }, stats.delay(), TimeUnit.NANOSECONDS);
+
+        primary.whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                stats.record(System.nanoTime() - start);
+                result.complete(value);
+            } else if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(S3Client.unwrap(throwable));
+            }
+        });
+
+        result.whenComplete((value, throwable) -> {
+            timer.cancel(false);
+            if (!primary.isDone()) {
+                // The primary lost; it took at least this long
+                stats.record(System.nanoTime() - start);
+                primary.cancel(true);
+            }
+            final CompletableFuture<T> second = hedge.get();
+            if (second != null) second.cancel(true);
+        });
+
+        return result;
+    }
+
+    /**
+     * Recent latencies and counters for one operation. The delay is
+     * recomputed from the ring of samples every {@link #RECOMPUTE}
+     * recordings rather than on every request.
+     */
+    private class Stats {
+        private static final int RECOMPUTE = 32;
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder wins = new LongAdder();
+        private final long[] samples = new long[SAMPLES];
+        private int count;
+        private volatile long delay = maxDelay;
+
+        long delay() {
+            return delay;
+        }
+
+        synchronized void record(final long nanos) {
+            samples[count % SAMPLES] = nanos;
+            count++;
+
+            if (count >= MIN_SAMPLES && count % RECOMPUTE == 0) {
+                final long[] sorted = Arrays.copyOf(samples, Math.min(count, SAMPLES));
+                Arrays.sort(sorted);
+                final int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+                final long observed = sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+                delay = Math.max(minDelay, Math.min(maxDelay, observed));
+            }
+        }
+    }
+
+    /**
+     * One daemon thread shared by all clients for starting hedges.
+     * Cancelled timers are removed right away, as nearly all of them are.
+     */
+    private static class Timer {
+        private static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1, r -> {
+            final Thread thread = new Thread(r, "jaws-hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            INSTANCE.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    public static class Builder {
+        private Set<Operation> operations = EnumSet.of(Operation.LIST, Operation.HEAD, Operation.GET);
+        private double percentile = 95;
+        private Duration minDelay = Duration.ofMillis(10);
+        private Duration maxDelay = Duration.ofSeconds(1);
+
+        /**
+         * Sets the operations to hedge. Defaults to
+         * {@code LIST}, {@code HEAD} and {@code GET}.
+         *
+         * @throws IllegalArgumentException if an operation is not an idempotent read
+         */
+        public Builder operations(final Operation... operations) {
+            final Set<Operation> set = EnumSet.noneOf(Operation.class);
+            for (final Operation operation : operations) {
+                if (!operation.isIdempotentRead()) {
+                    throw new IllegalArgumentException("Only idempotent reads can be hedged: " + operation);
+                }
+                set.add(operation);
+            }
+            this.operations = set;
+            return this;
+        }
+
+        /**
+         * Sets the latency percentile after which a second request is
+         * sent. Defaults to {@code 95}.
+         */
+        public Builder percentile(final double percentile) {
+            if (percentile <= 0 || percentile >= 100) {
+                throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+            }
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * Sets the shortest delay before a second request is sent, however
+         * fast requests have been. Defaults to 10 milliseconds.
+         */
+        public Builder minDelay(final Duration minDelay) {
+            this.minDelay = minDelay;
+            return this;
+        }
+
+        /**
+         * Sets the longest delay before a second request is sent. This is
+         * also the delay used until enough latencies have been recorded.
+         * Defaults to one second.
+         */
+        public Builder maxDelay(final Duration maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        public Hedging build() {
+            if (minDelay.compareTo(maxDelay) > 0) {
+                throw new IllegalArgumentException("minDelay " + minDelay + " is greater than maxDelay " + maxDelay);
+            }
+            return new Hedging(this);
+        }
+    }
+}
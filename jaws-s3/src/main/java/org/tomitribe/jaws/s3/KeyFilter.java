@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+/**
+ * Decides from the raw strings of a listing response which entries
+ * become {@link S3File} instances: the key of each object and each
+ * common prefix. Entries of the wrong kind are skipped without looking
+ * at them, and the name rules of a {@link Validation} are checked in
+ * place within the key, so an entry that is filtered out costs no
+ * allocation.
+ *
+ * <p>Only the {@link Filter @Filter} predicates, which need the
+ * {@link S3File}, are left to run on the entries that pass. When they
+ * declare attributes a listing does not include, the entries are
+ * enriched with HEAD requests first, see {@link #needsMetadata()}.
+ */
+final class KeyFilter {
+
+    static final KeyFilter ALL = new KeyFilter(true, true, Validation.builder().build());
+
+    private final boolean files;
+    private final boolean directories;
+    private final Validation validation;
+
+    private KeyFilter(final boolean files, final boolean directories, final Validation validation) {
+        this.files = files;
+        this.directories = directories;
+        this.validation = validation;
+    }
+
+    /**
+     * Accepts objects whose name passes the validation.
+     */
+    static KeyFilter files(final Validation validation) {
+        return new KeyFilter(true, false, validation);
+    }
+
+    /**
+     * Accepts common prefixes whose name passes the validation.
+     */
+    static KeyFilter directories(final Validation validation) {
+        return new KeyFilter(false, true, validation);
+    }
+
+    boolean includesFiles() {
+        return files;
+    }
+
+    boolean includesDirectories() {
+        return directories;
+    }
+
+    /**
+     * @param key the key of an object in a listing
+     */
+    boolean acceptsFile(final String key) {
+        return files && validation.matchesKey(key);
+    }
+
+    /**
+     * @param prefix a common prefix of a listing
+     */
+    boolean acceptsDirectory(final String prefix) {
+        return directories && validation.matchesKey(prefix);
+    }
+
+    /**
+     * @return whether listed files must have their full metadata loaded
+     *         before {@link #accepts(S3File)} is called
+     */
+    boolean needsMetadata() {
+        return files && validation.needsMetadata();
+    }
+
+    /**
+     * Runs the checks that need the file itself on an entry that was
+     * accepted by its key.
+     */
+    boolean accepts(final S3File file) {
+        return validation.testFilters(file);
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import software.amazon.awssdk.services.s3.model.CommonPrefix;
+import software.amazon.awssdk.services.s3.model.ListObjectsRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsResponse;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A {@link Flow.Publisher} over an S3 listing. Pages are fetched with
+ * the async client only while the subscriber has outstanding demand, so
+ * a slow subscriber never causes more than one page to be buffered.
+ *
+ * <p>When walking, the common prefixes of each listing are descended
+ * into depth-first after all pages of that listing have been emitted,
+ * in the same order as {@link S3File#walk()}.
+ *
+ * <p>Each subscriber gets its own independent listing. Pages are
+ * fetched in the priority class in effect when the publisher was created.
+ *
+ * <p>When the {@link Filter filters} need metadata a listing does not
+ * include, HEAD requests are issued for the entries of a page, at most
+ * {@link S3Handler#METADATA_WINDOW} at a time, and the page is emitted
+ * once they have all completed. Files deleted since they were listed
+ * are left out, as there is nothing left to filter on.
+ */
+class ListingPublisher<T> implements Flow.Publisher<T> {
+
+    private final S3Bucket bucket;
+    private final ListObjectsRequest request;
+    private final KeyFilter keys;
+    private final boolean walk;
+    private final Function<S3File, T> mapper;
+    private final Priority.Level priority = Priority.Scope.current();
+
+    /**
+     * @param bucket  the bucket to list
+     * @param request the fully populated listing request
+     * @param keys    selects the object entries and common prefixes to
+     *                emit; each is checked by key before an S3File is
+     *                created for it
+     * @param walk    descend into common prefixes
+     * @param mapper  converts surviving entries to the emitted type
+     */
+    ListingPublisher(final S3Bucket bucket, final ListObjectsRequest request,
+                     final KeyFilter keys, final boolean walk, final Function<S3File, T> mapper) {
+        this.bucket = bucket;
+        this.request = request;
+        this.keys = keys;
+        this.walk = walk;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new ListingSubscription(subscriber));
+    }
+
+    /**
+     * Subscribes with unbounded demand and collects every element.
+     *
+     * @return a future that completes once the last page has been read
+     */
+    CompletableFuture<List<T>> toList() {
+        final CompletableFuture<List<T>> future = new CompletableFuture<>();
+        subscribe(new Flow.Subscriber<T>() {
+            private final List<T> list = new ArrayList<>();
+
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(final T item) {
+                list.add(item);
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(list);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * One listing being paged through. The children are the listings
+     * of the common prefixes seen so far, walked once this listing
+     * has no more pages.
+     */
+    private static class Frame {
+        private final ListObjectsRequest base;
+        private final Deque<Frame> children = new ArrayDeque<>();
+        private ListObjectsRequest next;
+
+        Frame(final ListObjectsRequest base) {
+            this.base = base;
+            this.next = base;
+        }
+    }
+
+    /**
+     * All signals to the subscriber and all access to the frames happen
+     * inside {@link #drain()}, which only one thread runs at a time. The
+     * page callback merely hands its result over and calls drain.
+     */
+    private class ListingSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super T> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final Queue<T> buffer = new ConcurrentLinkedQueue<>();
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        private final Set<CompletableFuture<?>> loading = ConcurrentHashMap.newKeySet();
+
+        private volatile ListObjectsResponse received;
+        private volatile List<S3File> enriched;
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+        private volatile CompletableFuture<ListObjectsResponse> inFlight;
+        private volatile CompletableFuture<Void> enrichment;
+
+        private Frame fetching;
+        private boolean enriching;
+        private boolean done;
+
+        ListingSubscription(final Flow.Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+            this.frames.push(new Frame(request));
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Non-positive request " + n + " (Reactive Streams rule 3.9)");
+                drain();
+                return;
+            }
+
+            for (;;) {
+                final long current = requested.get();
+                final long updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+                if (requested.compareAndSet(current, updated)) break;
+            }
+
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            final CompletableFuture<ListObjectsResponse> future = inFlight;
+            if (future != null) future.cancel(false);
+            final CompletableFuture<Void> enriching = enrichment;
+            if (enriching != null) enriching.cancel(false);
+            loading.forEach(load -> load.cancel(false));
+            drain();
+        }
+
+        private void fetch(final Frame frame) {
+            fetching = frame;
+            final CompletableFuture<ListObjectsResponse> future = bucket.listObjectsAsync(frame.next, priority);
+            inFlight = future;
+            future.whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    error = S3Client.unwrap(throwable);
+                } else {
+                    received = response;
+                }
+                drain();
+            });
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) return;
+
+            int missed = 1;
+            for (;;) {
+                if (done) return;
+
+                if (cancelled) {
+                    done = true;
+                    buffer.clear();
+                    frames.clear();
+                    return;
+                }
+
+                final Throwable failure = error;
+                if (failure != null) {
+                    done = true;
+                    buffer.clear();
+                    subscriber.onError(failure);
+                    return;
+                }
+
+                final ListObjectsResponse page = received;
+                if (page != null) {
+                    received = null;
+                    try {
+                        accept(fetching, page);
+                    } catch (final RuntimeException e) {
+                        done = true;
+                        buffer.clear();
+                        subscriber.onError(e);
+                        return;
+                    }
+                    fetching = null;
+                    inFlight = null;
+                }
+
+                final List<S3File> loaded = enriched;
+                if (loaded != null) {
+                    enriched = null;
+                    enrichment = null;
+                    enriching = false;
+                    try {
+                        for (final S3File file : loaded) {
+                            if (file.exists()) offer(file);
+                        }
+                    } catch (final RuntimeException e) {
+                        done = true;
+                        buffer.clear();
+                        subscriber.onError(e);
+                        return;
+                    }
+                }
+
+                final long demand = requested.get();
+                long emitted = 0;
+                while (emitted != demand && !cancelled) {
+                    final T item = buffer.poll();
+                    if (item == null) break;
+                    subscriber.onNext(item);
+                    emitted++;
+                }
+                if (emitted != 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+
+                if (buffer.isEmpty() && fetching == null && !enriching && !cancelled) {
+                    final Frame frame = nextFrame();
+                    if (frame == null) {
+                        done = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (requested.get() > 0) {
+                        fetch(frame);
+                    }
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) return;
+            }
+        }
+
+        private void accept(final Frame frame, final ListObjectsResponse page) {
+            final List<S3File> files = new ArrayList<>();
+            final Path.Siblings siblings = new Path.Siblings();
+            if (keys.includesFiles()) {
+                for (final S3Object object : page.contents()) {
+                    if (keys.acceptsFile(object.key())) {
+                        files.add(new S3File(bucket, siblings.fromKey(object.key()), object));
+                    }
+                }
+            }
+
+            for (final CommonPrefix prefix : page.commonPrefixes()) {
+                if (keys.acceptsDirectory(prefix.prefix())) {
+                    files.add(S3File.directory(bucket, siblings.fromKey(prefix.prefix())));
+                }
+                if (walk) {
+                    frame.children.add(new Frame(frame.base.toBuilder().prefix(prefix.prefix()).build()));
+                }
+            }
+
+            frame.next = page.isTruncated()
+                    ? frame.next.toBuilder().marker(S3Bucket.nextMarker(page)).build()
+                    : null;
+
+            if (keys.needsMetadata() && !files.isEmpty()) {
+                enrich(files);
+            } else {
+                files.forEach(this::offer);
+            }
+        }
+
+        /**
+         * Loads the full metadata of the files of one page and hands them
+         * over to {@link #drain()}, which holds back the next page until
+         * then.
+         */
+        private void enrich(final List<S3File> files) {
+            enriching = true;
+            final CompletableFuture<Void> loaded = S3Streams.forEachAsync(files, S3Handler.METADATA_WINDOW, this::load);
+            enrichment = loaded;
+            if (cancelled) loaded.cancel(false);
+
+            loaded.whenComplete((ignored, throwable) -> {
+                if (throwable != null) {
+                    error = S3Client.unwrap(throwable);
+                } else {
+                    enriched = files;
+                }
+                drain();
+            });
+        }
+
+        /**
+         * Issues the HEAD request for one file in the priority class of
+         * the listing, keeping it until it completes so that cancelling
+         * the subscription can cancel it.
+         */
+        private CompletableFuture<S3File> load(final S3File file) {
+            final CompletableFuture<S3File> future;
+            try (Priority.Scope scope = priority.scope()) {
+                future = file.loadMetadataAsync();
+            }
+
+            loading.add(future);
+            future.whenComplete((value, throwable) -> loading.remove(future));
+            if (cancelled) future.cancel(false);
+            return future;
+        }
+
+        private void offer(final S3File file) {
+            if (keys.accepts(file)) {
+                buffer.add(mapper.apply(file));
+            }
+        }
+
+        /**
+         * Finds the listing that has the next page to fetch: the current
+         * listing if it has more pages, otherwise its next unwalked child.
+         */
+        private Frame nextFrame() {
+            while (!frames.isEmpty()) {
+                final Frame frame = frames.peek();
+                if (frame.next != null) return frame;
+
+                final Frame child = frame.children.poll();
+                if (child != null) {
+                    frames.push(child);
+                    continue;
+                }
+
+                frames.pop();
+            }
+            return null;
+        }
+    }
+}
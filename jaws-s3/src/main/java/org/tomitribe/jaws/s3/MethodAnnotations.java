@@ -25,12 +25,14 @@ import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 /**
  * Pre-analyzed annotation metadata for a single proxy method.
  *
- * <p>Built once at proxy creation time; stored in {@code S3Handler} indexed by
+ * <p>Built once per interface; stored in {@code ProxyType} indexed by
  * method. At invocation time, {@link #asAnnotatedElement(Object[])} merges the
  * pre-computed bindings with the runtime args and returns an
  * {@link AnnotatedElement} whose annotation API behaves identically to reading
@@ -51,6 +53,8 @@ public class MethodAnnotations {
     private final PrefixBinding prefix;
     private final List<SuffixBinding> suffixes;
     private final List<MatchBinding> matches;
+    private final ConcurrentMap<Class<?>, Validation.Template> listings = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<?>, Validation> children = new ConcurrentHashMap<>();
 
     private MethodAnnotations(final Method method,
                                final PrefixBinding prefix,
@@ -202,6 +206,72 @@ public class MethodAnnotations {
         return new BoundAnnotations(args);
     }
 
+    /**
+     * Returns the filter for the elements of a listing returned by this
+     * method. The annotations of the element type and the method are
+     * compiled once per element type, {@link Filter} classes included, and
+     * only the values of {@code @Suffix} and {@code @Match} parameters are
+     * bound per call.
+     *
+     * @param elementType the element type of the returned collection
+     * @param args        the call arguments
+     * @return the filter
+     */
+    Validation listingFilter(final Class<?> elementType, final Object[] args) {
+        final Validation.Template template = listingTemplate(elementType);
+
+        if (suffixes.isEmpty() && matches.isEmpty()) return template.bind(NameMatcher.ANY);
+
+        final NameMatcher.Builder bound = NameMatcher.builder();
+        for (final SuffixBinding suffix : suffixes) {
+            suffix.bind(bound, args);
+        }
+        for (final MatchBinding match : matches) {
+            match.bind(bound, args);
+        }
+        return template.bind(bound.build());
+    }
+
+    /**
+     * Returns the part of the listing filter that does not depend on the
+     * call arguments, compiling it on first use.
+     *
+     * @param elementType the element type of the returned collection
+     * @return the unbound filter
+     */
+    Validation.Template listingTemplate(final Class<?> elementType) {
+        final Validation.Template template = listings.get(key(elementType));
+        if (template != null) return template;
+
+        return listings.computeIfAbsent(key(elementType), type -> Validation.builder()
+                .type(elementType)
+                .element(method)
+                .prefix(false)
+                .template());
+    }
+
+    /**
+     * Returns the validation of a child looked up by name through this
+     * method, compiled once per child type.
+     *
+     * @param type the returned child type
+     * @return the validation
+     */
+    Validation childValidation(final Class<?> type) {
+        return children.computeIfAbsent(type, t -> Validation.builder()
+                .type(t)
+                .element(method)
+                .build());
+    }
+
+    /**
+     * Concurrent maps do not take null keys. A listing without an element
+     * type carries no type annotations, the same as {@code Object}.
+     */
+    private static Class<?> key(final Class<?> elementType) {
+        return elementType != null ? elementType : Object.class;
+    }
+
     private class BoundAnnotations implements AnnotatedElement {
         private final Object[] args;
 
@@ -297,6 +367,14 @@ public class MethodAnnotations {
             return excludeIndex >= 0 && (boolean) args[excludeIndex];
         }
 
+        void bind(final NameMatcher.Builder names, final Object[] args) {
+            final Object val = args[patternIndex];
+            final NameMatcher.Regex regex = (val instanceof Pattern)
+                    ? NameMatcher.regex((Pattern) val)
+                    : NameMatcher.regex((String) val);
+            names.match(regex, getExclude(args));
+        }
+
         Match toAnnotation(final Object[] args) {
             final String pattern = getPattern(args);
             final boolean exclude = getExclude(args);
@@ -332,6 +410,10 @@ public class MethodAnnotations {
             return excludeIndex >= 0 && (boolean) args[excludeIndex];
         }
 
+        void bind(final NameMatcher.Builder names, final Object[] args) {
+            names.suffix(new String[]{getValue(args)}, getExclude(args));
+        }
+
         Suffix toAnnotation(final Object[] args) {
             final String value = getValue(args);
             final boolean exclude = getExclude(args);
@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The name rules of {@link Prefix}, {@link Suffix} and {@link Match}
+ * compiled into a single matcher.
+ *
+ * <p>All suffix values, include and exclude, go into one trie of
+ * reversed strings, so a name is checked against every suffix by
+ * reading its last few characters once. The regular expressions are
+ * merged into one pattern of lookaheads whenever that does not change
+ * their meaning, and matchers are reused per thread. Testing a name
+ * allocates nothing.
+ *
+ * <p>Names can be tested in place within a key, so listing entries can
+ * be filtered before an {@link S3File} is created for them.
+ */
+final class NameMatcher {
+
+    private static final int REGEX_CACHE_SIZE = 256;
+
+    private static final Map<String, Regex> REGEXES = new LinkedHashMap<String, Regex>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Regex> eldest) {
+            return size() > REGEX_CACHE_SIZE;
+        }
+    };
+
+    static final NameMatcher ANY = builder().build();
+
+    private final String[] prefixes;
+    private final SuffixTrie[] suffixes;
+    private final Regex[] regexes;
+    private final boolean[] excludes;
+
+    private NameMatcher(final String[] prefixes, final SuffixTrie[] suffixes,
+                        final Regex[] regexes, final boolean[] excludes) {
+        this.prefixes = prefixes;
+        this.suffixes = suffixes;
+        this.regexes = regexes;
+        this.excludes = excludes;
+    }
+
+    static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return {@code true} if this matcher accepts every name
+     */
+    boolean isEmpty() {
+        return prefixes.length == 0 && suffixes.length == 0 && regexes.length == 0;
+    }
+
+    boolean matches(final String name) {
+        return matches(name, 0, name.length());
+    }
+
+    /**
+     * Tests the name of a key without extracting it: the text after the
+     * last {@code /}, ignoring trailing slashes as {@link Path} does.
+     *
+     * @param key an object key or a common prefix
+     */
+    boolean matchesKey(final String key) {
+        int end = key.length();
+        while (end > 0 && key.charAt(end - 1) == '/') end--;
+        final int start = key.lastIndexOf('/', end - 1) + 1;
+        return matches(key, start, end);
+    }
+
+    /**
+     * Tests the name held in {@code text} between {@code start}
+     * (inclusive) and {@code end} (exclusive).
+     */
+    boolean matches(final String text, final int start, final int end) {
+        for (final String prefix : prefixes) {
+            if (end - start < prefix.length() || !text.startsWith(prefix, start)) return false;
+        }
+
+        for (final SuffixTrie trie : suffixes) {
+            if (!trie.matches(text, start, end)) return false;
+        }
+
+        for (int i = 0; i < regexes.length; i++) {
+            if (regexes[i].matches(text, start, end) == excludes[i]) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns a compiled whole-name matcher for a regular expression. The
+     * most recently used expressions are kept, as expressions passed as
+     * call arguments are usually repeated.
+     */
+    static Regex regex(final String regex) {
+        synchronized (REGEXES) {
+            final Regex cached = REGEXES.get(regex);
+            if (cached != null) return cached;
+        }
+
+        final Regex compiled = new Regex(Pattern.compile(regex));
+        synchronized (REGEXES) {
+            final Regex raced = REGEXES.putIfAbsent(regex, compiled);
+            return raced != null ? raced : compiled;
+        }
+    }
+
+    /**
+     * Returns a whole-name matcher for a compiled pattern, keeping its
+     * flags.
+     */
+    static Regex regex(final Pattern pattern) {
+        if (pattern.flags() == 0) return regex(pattern.pattern());
+        return new Regex(pattern);
+    }
+
+    static class Builder {
+        private final List<String> prefixes = new ArrayList<>();
+        private final List<String[]> includeSuffixes = new ArrayList<>();
+        private final List<String> excludeSuffixes = new ArrayList<>();
+        private final List<Regex> regexes = new ArrayList<>();
+        private final List<Boolean> excludes = new ArrayList<>();
+
+        /**
+         * Names must start with the value.
+         */
+        Builder prefix(final String value) {
+            prefixes.add(value);
+            return this;
+        }
+
+        /**
+         * Names must end with one of the values, or with none of them when
+         * {@code exclude} is set.
+         */
+        Builder suffix(final String[] values, final boolean exclude) {
+            if (exclude) {
+                excludeSuffixes.addAll(Arrays.asList(values));
+            } else {
+                includeSuffixes.add(values);
+            }
+            return this;
+        }
+
+        /**
+         * Names must match the whole expression, or must not when
+         * {@code exclude} is set.
+         */
+        Builder match(final Regex regex, final boolean exclude) {
+            regexes.add(regex);
+            excludes.add(exclude);
+            return this;
+        }
+
+        NameMatcher build() {
+            final List<Regex> compiled = new ArrayList<>();
+            final List<Boolean> flags = new ArrayList<>();
+            compile(compiled, flags);
+
+            final boolean[] excluded = new boolean[flags.size()];
+            for (int i = 0; i < excluded.length; i++) {
+                excluded[i] = flags.get(i);
+            }
+
+            return new NameMatcher(prefixes.toArray(new String[0]), tries(), compiled.toArray(new Regex[0]), excluded);
+        }
+
+        /**
+         * Each include group sets one bit of a mask, so one trie handles
+         * up to 64 groups. More groups, which no sane interface has, get
+         * another trie.
+         */
+        private SuffixTrie[] tries() {
+            if (includeSuffixes.isEmpty() && excludeSuffixes.isEmpty()) return new SuffixTrie[0];
+
+            final List<SuffixTrie> tries = new ArrayList<>();
+            int group = 0;
+            SuffixTrie.Node root = new SuffixTrie.Node();
+            for (final String value : excludeSuffixes) {
+                root.insert(value, 0, true);
+            }
+
+            for (final String[] values : includeSuffixes) {
+                if (group == Long.SIZE) {
+                    tries.add(new SuffixTrie(root, -1L));
+                    root = new SuffixTrie.Node();
+                    group = 0;
+                }
+                for (final String value : values) {
+                    root.insert(value, 1L << group, false);
+                }
+                group++;
+            }
+
+            tries.add(new SuffixTrie(root, group == Long.SIZE ? -1L : (1L << group) - 1));
+            return tries.toArray(new SuffixTrie[0]);
+        }
+
+        /**
+         * Merges the regular expressions that can be merged into one,
+         * leaving the others as they are.
+         */
+        private void compile(final List<Regex> compiled, final List<Boolean> flags) {
+            final List<Integer> mergeable = new ArrayList<>();
+            for (int i = 0; i < regexes.size(); i++) {
+                if (regexes.get(i).isMergeable()) {
+                    mergeable.add(i);
+                } else {
+                    compiled.add(regexes.get(i));
+                    flags.add(excludes.get(i));
+                }
+            }
+
+            if (mergeable.size() == 1) {
+                compiled.add(regexes.get(mergeable.get(0)));
+                flags.add(excludes.get(mergeable.get(0)));
+            } else if (mergeable.size() > 1) {
+                compiled.add(regex(merge(mergeable)));
+                flags.add(false);
+            }
+        }
+
+        /**
+         * One negative lookahead for all excludes and one lookahead per
+         * include, each anchored at the end of the name, then the name
+         * itself. Matches exactly when the separate patterns would.
+         */
+        private String merge(final List<Integer> mergeable) {
+            final StringBuilder excluded = new StringBuilder();
+            final StringBuilder included = new StringBuilder();
+
+            for (final int i : mergeable) {
+                final String inline = regexes.get(i).inline();
+                if (excludes.get(i)) {
+                    if (excluded.length() > 0) excluded.append('|');
+                    excluded.append(inline);
+                } else {
+                    included.append("(?=").append(inline).append("\\z)");
+                }
+            }
+
+            final StringBuilder merged = new StringBuilder();
+            if (excluded.length() > 0) merged.append("(?!(?:").append(excluded).append(")\\z)");
+            merged.append(included).append("[\\s\\S]*");
+            return merged.toString();
+        }
+    }
+
+    /**
+     * A compiled pattern matched against whole names, with one reusable
+     * {@link Matcher} per thread.
+     */
+    static final class Regex {
+        private final Pattern pattern;
+        private final ThreadLocal<Matcher> matchers;
+
+        private Regex(final Pattern pattern) {
+            this.pattern = pattern;
+            this.matchers = ThreadLocal.withInitial(() -> pattern.matcher(""));
+        }
+
+        boolean matches(final String text, final int start, final int end) {
+            final Matcher matcher = matchers.get();
+            final boolean matches = matcher.reset(text).region(start, end).matches();
+            matcher.reset("");
+            return matches;
+        }
+
+        /**
+         * A pattern can be embedded in a larger one if it has no groups
+         * that would be renumbered or renamed, no inline flags that would
+         * leak out of it, no unterminated quote, and only flags that can be
+         * written inline.
+         */
+        boolean isMergeable() {
+            final int flags = pattern.flags();
+            if ((flags & (Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) return false;
+            if ((flags & Pattern.LITERAL) != 0) return true;
+
+            final String regex = pattern.pattern();
+            for (int i = 0; i < regex.length(); i++) {
+                final char c = regex.charAt(i);
+                if (c == '\\') {
+                    if (++i == regex.length()) return false;
+                    final char escaped = regex.charAt(i);
+                    if (Character.isDigit(escaped) || escaped == 'k' || escaped == 'Q') return false;
+                } else if (c == '(' && i + 1 < regex.length() && regex.charAt(i + 1) == '?') {
+                    if (i + 2 == regex.length()) return false;
+                    final char kind = regex.charAt(i + 2);
+                    if (kind == ':' || kind == '=' || kind == '!' || kind == '>') continue;
+                    if (kind == '<' && i + 3 < regex.length()
+                            && (regex.charAt(i + 3) == '=' || regex.charAt(i + 3) == '!')) continue;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The pattern as a non-capturing group carrying its own flags.
+         */
+        String inline() {
+            final int flags = pattern.flags();
+            final String regex = (flags & Pattern.LITERAL) != 0 ? Pattern.quote(pattern.pattern()) : pattern.pattern();
+
+            final StringBuilder inline = new StringBuilder("(?");
+            if ((flags & Pattern.CASE_INSENSITIVE) != 0) inline.append('i');
+            if ((flags & Pattern.UNIX_LINES) != 0) inline.append('d');
+            if ((flags & Pattern.MULTILINE) != 0) inline.append('m');
+            if ((flags & Pattern.DOTALL) != 0) inline.append('s');
+            if ((flags & Pattern.UNICODE_CASE) != 0) inline.append('u');
+            if ((flags & Pattern.UNICODE_CHARACTER_CLASS) != 0) inline.append('U');
+            return inline.append(':').append(regex).append(')').toString();
+        }
+
+        @Override
+        public String toString() {
+            return pattern.pattern();
+        }
+    }
+
+    /**
+     * Suffixes stored back to front. Walking a name from its last
+     * character visits every suffix it ends with; each node records the
+     * include groups completed there and whether an exclude ends there.
+     */
+    private static final class SuffixTrie {
+        private final Node root;
+        private final long required;
+
+        private SuffixTrie(final Node root, final long required) {
+            this.root = root;
+            this.required = required;
+        }
+
+        boolean matches(final String text, final int start, final int end) {
+            Node node = root;
+            if (node.exclude) return false;
+            long seen = node.groups;
+
+            for (int i = end - 1; i >= start; i--) {
+                if ((seen & required) == required && !node.excludesBelow) break;
+                node = node.child(text.charAt(i));
+                if (node == null) break;
+                if (node.exclude) return false;
+                seen |= node.groups;
+            }
+
+            return (seen & required) == required;
+        }
+
+        private static final class Node {
+            private char[] keys = new char[0];
+            private Node[] children = new Node[0];
+            private long groups;
+            private boolean exclude;
+            private boolean excludesBelow;
+
+            void insert(final String value, final long group, final boolean exclude) {
+                Node node = this;
+                for (int i = value.length() - 1; i >= 0; i--) {
+                    if (exclude) node.excludesBelow = true;
+                    node = node.add(value.charAt(i));
+                }
+                node.groups |= group;
+                node.exclude |= exclude;
+            }
+
+            Node child(final char c) {
+                final int index = Arrays.binarySearch(keys, c);
+                return index >= 0 ? children[index] : null;
+            }
+
+            private Node add(final char c) {
+                final int index = Arrays.binarySearch(keys, c);
+                if (index >= 0) return children[index];
+
+                final int insert = -index - 1;
+                final Node child = new Node();
+                keys = insert(keys, insert, c);
+                final Node[] grown = Arrays.copyOf(children, children.length + 1);
+                System.arraycopy(grown, insert, grown, insert + 1, children.length - insert);
+                grown[insert] = child;
+                children = grown;
+                return child;
+            }
+
+            private static char[] insert(final char[] keys, final int index, final char c) {
+                final char[] grown = Arrays.copyOf(keys, keys.length + 1);
+                System.arraycopy(grown, index, grown, index + 1, keys.length - index);
+                grown[index] = c;
+                return grown;
+            }
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.time.Instant;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public class ObjectMetadata {
     private final String eTag;
@@ -37,12 +38,25 @@ public class ObjectMetadata {
     private final String contentType;
     private final Map<String, String> userMetadata;
 
+    /**
+     * Supplies the complete metadata when this instance was built from
+     * a listing, which has no content type or user metadata.
+     */
+    private final Supplier<ObjectMetadata> loader;
+    private volatile ObjectMetadata loaded;
+
     private ObjectMetadata(final String eTag, final long contentLength, final Instant lastModified, final String contentType, final Map<String, String> userMetadata) {
+        this(eTag, contentLength, lastModified, contentType, userMetadata, null);
+    }
+
+    private ObjectMetadata(final String eTag, final long contentLength, final Instant lastModified, final String contentType,
+                           final Map<String, String> userMetadata, final Supplier<ObjectMetadata> loader) {
         this.eTag = eTag;
         this.contentLength = contentLength;
         this.lastModified = lastModified;
         this.contentType = contentType;
         this.userMetadata = userMetadata;
+        this.loader = loader;
     }
 
     public String getETag() {
@@ -57,26 +71,63 @@ public class ObjectMetadata {
         return lastModified;
     }
 
+    /**
+     * Returns the content type. For metadata that came from a listing
+     * this issues a HEAD request on first access.
+     *
+     * @return the content type, or {@code null} if not set
+     */
     public String getContentType() {
-        return contentType;
+        return complete().contentType;
     }
 
+    /**
+     * Returns the user metadata ({@code x-amz-meta-*} headers). For
+     * metadata that came from a listing this issues a HEAD request on
+     * first access.
+     *
+     * @return the user metadata, never {@code null}
+     */
     public Map<String, String> getUserMetadata() {
+        final Map<String, String> userMetadata = complete().userMetadata;
         if (userMetadata == null) return Collections.emptyMap();
         return Collections.unmodifiableMap(userMetadata);
     }
 
+    /**
+     * Returns the metadata that holds the content type and user metadata.
+     * For listing metadata this is loaded once; concurrent callers wait for
+     * the single request in flight rather than issuing their own. A failed
+     * load is not remembered, so the next access tries again.
+     */
+    private ObjectMetadata complete() {
+        if (loader == null) return this;
+
+        ObjectMetadata result = loaded;
+        if (result == null) {
+            synchronized (this) {
+                result = loaded;
+                if (result == null) {
+                    result = loader.get();
+                    loaded = result;
+                }
+            }
+        }
+        return result;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
 
     public Builder toBuilder() {
+        final ObjectMetadata complete = complete();
         return new Builder()
                 .eTag(eTag)
                 .contentLength(contentLength)
                 .lastModified(lastModified)
-                .contentType(contentType)
-                .userMetadata(userMetadata != null ? new HashMap<>(userMetadata) : null);
+                .contentType(complete.contentType)
+                .userMetadata(complete.userMetadata != null ? new HashMap<>(complete.userMetadata) : null);
     }
 
     public static class Builder {
@@ -196,4 +247,14 @@ public class ObjectMetadata {
                 .lastModified(summary.lastModified())
                 .build();
     }
+
+    /**
+     * Size, ETag and lastModified are served from the listing. The
+     * content type and user metadata come from {@code loader}, which is
+     * called at most once, the first time either is accessed.
+     */
+    static ObjectMetadata fromListing(final S3Object summary, final Supplier<ObjectMetadata> loader) {
+        return new ObjectMetadata(S3File.stripQuotes(summary.eTag()), summary.size(), summary.lastModified(),
+                null, null, loader);
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+/**
+ * The kinds of S3 request JAWS issues. Used to select which requests
+ * a client-wide policy such as {@link Hedging} applies to.
+ */
+public enum Operation {
+
+    /**
+     * One page of a {@code ListObjects} listing.
+     */
+    LIST,
+
+    /**
+     * A {@code HeadObject} metadata request.
+     */
+    HEAD,
+
+    /**
+     * A {@code GetObject} request whose content is read into memory.
+     */
+    GET,
+
+    /**
+     * A {@code GetObject} request whose content is streamed to the caller.
+     */
+    STREAM,
+
+    /**
+     * A {@code PutObject} request.
+     */
+    PUT,
+
+    /**
+     * A {@code DeleteObject} request.
+     */
+    DELETE,
+
+    /**
+     * An upload or download through the transfer manager, which may
+     * itself consist of several requests.
+     */
+    TRANSFER;
+
+    /**
+     * Returns {@code true} if sending this request twice has the same
+     * effect as sending it once, neither copy consumes a body that
+     * cannot be replayed and the losing copy holds no open stream.
+     *
+     * @return whether the request may be duplicated
+     */
+    public boolean isIdempotentRead() {
+        return this == LIST || this == HEAD || this == GET;
+    }
+}
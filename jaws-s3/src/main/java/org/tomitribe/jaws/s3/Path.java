@@ -16,28 +16,32 @@
  */
 package org.tomitribe.jaws.s3;
 
-import java.util.Objects;
-
+/**
+ * The key of an S3 object split into a name and a parent.
+ *
+ * <p>A path holds only the key and the offset of the name within it.
+ * The name is cut out the first time it is asked for, and the parent is
+ * parsed once and then kept, so that paths created from the same
+ * directory share one parent instance. Listings parse their keys with
+ * {@link Siblings}, which hands consecutive entries of one directory
+ * the same parent.
+ */
 public class Path {
-    private final String name;
-    private final String absoluteName;
-    private final String parent;
-
-    private Path(final String name, final String absoluteName, final String parent) {
-        this.name = name;
-        this.absoluteName = absoluteName;
+    private final String key;
+    private final int nameStart;
+    private String name;
+    private Path parent;
+
+    private Path(final String key, final int nameStart, final Path parent) {
+        this.key = key;
+        this.nameStart = nameStart;
         this.parent = parent;
     }
 
     public static Path fromKey(String key) {
         key = normalize(key);
         if ("".equals(key)) return ROOT;
-        final int lastSlash = key.lastIndexOf('/') + 1;
-        if (lastSlash == 0) return new Path(key, key, null);
-
-        final String name = key.substring(lastSlash);
-        final String parent = key.substring(0, lastSlash);
-        return new Path(name, key, parent);
+        return new Path(key, key.lastIndexOf('/') + 1, null);
     }
 
     private static String normalize(final String key) {
@@ -49,31 +53,53 @@ public class Path {
         return ROOT;
     }
 
+    /**
+     * Name and parent are cached without synchronization. Racing threads
+     * at worst compute equal values twice; both are safe to publish as
+     * their own fields are final.
+     */
     public String getName() {
+        String name = this.name;
+        if (name == null) {
+            name = nameStart == 0 ? key : key.substring(nameStart);
+            this.name = name;
+        }
         return name;
     }
 
     public String getAbsoluteName() {
-        return absoluteName;
+        return key;
     }
 
     public String getSearchPrefix() {
-        return absoluteName + "/";
+        return key + "/";
     }
 
     public Path getParent() {
-        return parent == null ? ROOT : Path.fromKey(parent);
+        Path parent = this.parent;
+        if (parent == null) {
+            parent = nameStart == 0 ? ROOT : Path.fromKey(key.substring(0, nameStart - 1));
+            this.parent = parent;
+        }
+        return parent;
     }
 
     public Path getChild(final String name) {
-        if (name.contains("/")) return Path.fromKey(absoluteName + "/" + name);
+        if (name.contains("/")) return Path.fromKey(key + "/" + name);
+
+        return new Path(key + "/" + name, key.length() + 1, this);
+    }
 
-        return new Path(name, absoluteName + "/" + name, absoluteName);
+    /**
+     * Whether both paths are in the same directory, compared in place.
+     */
+    private boolean isSibling(final Path other) {
+        return nameStart == other.nameStart && key.regionMatches(0, other.key, 0, nameStart);
     }
 
     @Override
     public String toString() {
-        return absoluteName;
+        return key;
     }
 
     @Override
@@ -81,15 +107,15 @@ public class Path {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         final Path path = (Path) o;
-        return absoluteName.equals(path.absoluteName);
+        return key.equals(path.key);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(absoluteName);
+        return key.hashCode();
     }
 
-    public static final Path ROOT = new Path("", "", null) {
+    public static final Path ROOT = new Path("", 0, null) {
         @Override
         public Path getParent() {
             return null;
@@ -105,4 +131,22 @@ public class Path {
             return null;
         }
     };
+
+    /**
+     * Parses the keys of one listing in order. Listings return keys
+     * sorted, so the entries of a directory arrive together and each new
+     * path can take its parent from the previous one.
+     */
+    static final class Siblings {
+        private Path last;
+
+        Path fromKey(final String key) {
+            final Path path = Path.fromKey(key);
+            if (last != null && path != ROOT && path.nameStart > 0 && last.isSibling(path)) {
+                path.parent = last.getParent();
+            }
+            last = path;
+            return path;
+        }
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.function.Supplier;
+
+/**
+ * Assigns the requests made by a proxy method, or by every method of an
+ * interface, to a priority class. When the client has a
+ * {@link PriorityScheduler}, interactive requests are started ahead of
+ * queued normal and background requests.
+ *
+ * <pre>{@code
+ * @Priority(Priority.Level.BACKGROUND)
+ * public interface Backfill extends S3.Dir {
+ *     @Recursive
+ *     Stream<S3File> everything();
+ * }
+ * }</pre>
+ *
+ * <p>Requests made through {@link S3File} or {@link S3Bucket} directly
+ * take their class from the enclosing {@link Scope}:
+ *
+ * <pre>{@code
+ * try (Priority.Scope scope = Priority.Level.BACKGROUND.scope()) {
+ *     file.upload(path);
+ * }
+ * }</pre>
+ *
+ * <p>Requests are classed when they are sent, on the thread that sends
+ * them. A stream or publisher returned by an annotated method keeps the
+ * method's class for the pages it fetches later. Requests made from
+ * completion callbacks of {@code *Async} methods are {@code NORMAL}
+ * unless they open a scope of their own.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Priority {
+
+    Level value();
+
+    enum Level {
+        /**
+         * Requests a user is waiting on.
+         */
+        INTERACTIVE,
+
+        /**
+         * The default for requests made outside any scope.
+         */
+        NORMAL,
+
+        /**
+         * Bulk work that may wait while other requests run.
+         */
+        BACKGROUND;
+
+        /**
+         * Classes the requests made on this thread until the returned
+         * scope is closed. Scopes nest; closing one restores the class
+         * that was in effect when it was opened.
+         *
+         * @return the scope to close
+         */
+        public Scope scope() {
+            return new Scope(this);
+        }
+    }
+
+    /**
+     * The priority class of requests made on the current thread.
+     */
+    final class Scope implements AutoCloseable {
+        private static final ThreadLocal<Level> CURRENT = ThreadLocal.withInitial(() -> Level.NORMAL);
+
+        private final Level previous;
+        private final Thread thread;
+        private boolean closed;
+
+        private Scope(final Level level) {
+            this.thread = Thread.currentThread();
+            this.previous = CURRENT.get();
+            CURRENT.set(level);
+        }
+
+        /**
+         * @return the class of requests made on this thread
+         */
+        public static Level current() {
+            return CURRENT.get();
+        }
+
+        /**
+         * Runs {@code action} with its requests in the given class.
+         */
+        static <T> T call(final Level level, final Supplier<T> action) {
+            if (level == CURRENT.get()) return action.get();
+            try (Scope scope = level.scope()) {
+                return action.get();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            if (Thread.currentThread() != thread) {
+                throw new IllegalStateException("A priority scope must be closed on the thread that opened it");
+            }
+            closed = true;
+            CURRENT.set(previous);
+        }
+    }
+}
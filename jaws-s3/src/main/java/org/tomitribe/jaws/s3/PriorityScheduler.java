@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Limits the requests a client has in flight in total and decides which
+ * waiting request goes next by its {@link Priority priority class}.
+ *
+ * <p>Each class may have slots reserved for it that other classes never
+ * use, and a cap on the slots it may hold. The remaining slots are shared.
+ * When a slot frees up, queued {@code INTERACTIVE} requests are started
+ * first, then {@code NORMAL}, then {@code BACKGROUND}, each in the order
+ * they arrived. Slots reserved for background work keep it moving
+ * while the shared slots are busy with other classes.
+ *
+ * <pre>{@code
+ * S3Client s3 = S3Client.builder()
+ *         .s3(asyncClient)
+ *         .priorities(PriorityScheduler.builder()
+ *                 .concurrency(200)
+ *                 .reserve(Priority.Level.INTERACTIVE, 50)
+ *                 .limit(Priority.Level.BACKGROUND, 100)
+ *                 .build())
+ *         .build();
+ * }</pre>
+ *
+ * <p>Requests first wait for room under the client's
+ * {@link ConcurrencyLimits} and only then queue here, so requests held
+ * back by a throttled partition do not take slots from other
+ * partitions. Give each client its own instance.
+ */
+public class PriorityScheduler {
+
+    private static final Priority.Level[] LEVELS = Priority.Level.values();
+
+    private final int concurrency;
+    private final int shared;
+    private final int[] reserved = new int[LEVELS.length];
+    private final int[] limit = new int[LEVELS.length];
+    private final int[] inFlight = new int[LEVELS.length];
+    private final long[] started = new long[LEVELS.length];
+    private final List<Queue<CompletableFuture<Slot>>> waiting = new ArrayList<>();
+
+    private PriorityScheduler(final Builder builder) {
+        this.concurrency = builder.concurrency;
+        int reservedTotal = 0;
+        for (final Priority.Level level : LEVELS) {
+            reserved[level.ordinal()] = builder.reserved.getOrDefault(level, 0);
+            limit[level.ordinal()] = builder.limits.getOrDefault(level, concurrency);
+            reservedTotal += reserved[level.ordinal()];
+            waiting.add(new ArrayDeque<>());
+        }
+        this.shared = concurrency - reservedTotal;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @return the slots only requests of the given class may use
+     */
+    public int getReserved(final Priority.Level level) {
+        return reserved[level.ordinal()];
+    }
+
+    /**
+     * @return the most slots requests of the given class may hold at once
+     */
+    public int getLimit(final Priority.Level level) {
+        return limit[level.ordinal()];
+    }
+
+    /**
+     * @return the number of requests of the given class in flight
+     */
+    public synchronized int getInFlight(final Priority.Level level) {
+        return inFlight[level.ordinal()];
+    }
+
+    /**
+     * @return the number of requests of the given class waiting for a slot
+     */
+    public synchronized int getQueued(final Priority.Level level) {
+        return waiting.get(level.ordinal()).size();
+    }
+
+    /**
+     * @return the number of requests of the given class started so far
+     */
+    public synchronized long getStarted(final Priority.Level level) {
+        return started[level.ordinal()];
+    }
+
+    /**
+     * Returns a future that completes with a slot once a request of the
+     * given class may start. Cancelling the future gives up the place in
+     * the queue.
+     */
+    CompletableFuture<Slot> acquire(final Priority.Level level) {
+        final CompletableFuture<Slot> waiter = new CompletableFuture<>();
+        synchronized (this) {
+            waiting.get(level.ordinal()).add(waiter);
+        }
+        dispatch();
+        return waiter;
+    }
+
+    /**
+     * Moves a waiting request up to the given class. Nothing happens if
+     * it has already started or is queued in that class or a higher one.
+     */
+    void promote(final CompletableFuture<Slot> waiter, final Priority.Level level) {
+        synchronized (this) {
+            for (int i = level.ordinal() + 1; i < LEVELS.length; i++) {
+                if (waiting.get(i).remove(waiter)) {
+                    waiting.get(level.ordinal()).add(waiter);
+                    break;
+                }
+            }
+        }
+        dispatch();
+    }
+
+    /**
+     * Starts queued requests while there is room, highest class first.
+     */
+    private void dispatch() {
+        final List<CompletableFuture<Slot>> granted = new ArrayList<>();
+        final List<Slot> slots = new ArrayList<>();
+
+        synchronized (this) {
+            for (final Priority.Level level : LEVELS) {
+                final Queue<CompletableFuture<Slot>> queue = waiting.get(level.ordinal());
+                while (!queue.isEmpty() && fits(level.ordinal())) {
+                    final CompletableFuture<Slot> waiter = queue.poll();
+                    if (waiter.isDone()) continue;
+                    inFlight[level.ordinal()]++;
+                    started[level.ordinal()]++;
+                    granted.add(waiter);
+                    slots.add(new Slot(level));
+                }
+            }
+        }
+
+        // Outside the lock, as completing runs the waiting requests
+        for (int i = 0; i < granted.size(); i++) {
+            if (!granted.get(i).complete(slots.get(i))) {
+                slots.get(i).release();
+            }
+        }
+    }
+
+    private boolean fits(final int level) {
+        if (inFlight[level] >= limit[level]) return false;
+        if (inFlight[level] < reserved[level]) return true;
+
+        int sharedInUse = 0;
+        for (int i = 0; i < LEVELS.length; i++) {
+            sharedInUse += Math.max(0, inFlight[i] - reserved[i]);
+        }
+        return sharedInUse < shared;
+    }
+
+    /**
+     * One slot held by a request of a given class. Released exactly once.
+     */
+    class Slot {
+        private final Priority.Level level;
+        private boolean released;
+
+        Slot(final Priority.Level level) {
+            this.level = level;
+        }
+
+        void release() {
+            synchronized (PriorityScheduler.this) {
+                if (released) return;
+                released = true;
+                inFlight[level.ordinal()]--;
+            }
+            dispatch();
+        }
+    }
+
+    /**
+     * The class of one request that several callers may share. A caller
+     * that joins with a higher class raises the request to it, also
+     * while it is queued, so an interactive read is not held back by a
+     * background read it joined.
+     */
+    static class Ticket {
+        private Priority.Level level;
+        private PriorityScheduler scheduler;
+        private CompletableFuture<Slot> waiter;
+
+        Ticket(final Priority.Level level) {
+            this.level = level;
+        }
+
+        synchronized Priority.Level getLevel() {
+            return level;
+        }
+
+        /**
+         * Queues the request in the highest class it has been raised to.
+         */
+        CompletableFuture<Slot> acquire(final PriorityScheduler scheduler) {
+            final Priority.Level queued = getLevel();
+            final CompletableFuture<Slot> waiter = scheduler.acquire(queued);
+
+            final Priority.Level raised;
+            synchronized (this) {
+                this.scheduler = scheduler;
+                this.waiter = waiter;
+                raised = level;
+            }
+
+            // Raised while it was being queued
+            if (raised != queued) scheduler.promote(waiter, raised);
+            return waiter;
+        }
+
+        /**
+         * Raises the request to the given class if that is higher than
+         * its own.
+         */
+        void raise(final Priority.Level level) {
+            final PriorityScheduler scheduler;
+            final CompletableFuture<Slot> waiter;
+            synchronized (this) {
+                if (level.compareTo(this.level) >= 0) return;
+                this.level = level;
+                scheduler = this.scheduler;
+                waiter = this.waiter;
+            }
+
+            // Outside the lock, as promoting may start the request
+            if (waiter != null) scheduler.promote(waiter, level);
+        }
+    }
+
+    public static class Builder {
+        private int concurrency = 256;
+        private final Map<Priority.Level, Integer> reserved = new EnumMap<>(Priority.Level.class);
+        private final Map<Priority.Level, Integer> limits = new EnumMap<>(Priority.Level.class);
+
+        public Builder() {
+            reserved.put(Priority.Level.INTERACTIVE, 32);
+            reserved.put(Priority.Level.BACKGROUND, 4);
+        }
+
+        /**
+         * Sets the total number of requests in flight across all classes.
+         * Defaults to {@code 256}.
+         */
+        public Builder concurrency(final int concurrency) {
+            if (concurrency < 1) throw new IllegalArgumentException("concurrency must be at least 1: " + concurrency);
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Sets the slots only requests of the given class may use.
+         * Defaults to {@code 32} for {@code INTERACTIVE}, {@code 4} for
+         * {@code BACKGROUND} and none for {@code NORMAL}.
+         */
+        public Builder reserve(final Priority.Level level, final int slots) {
+            if (slots < 0) throw new IllegalArgumentException("slots must not be negative: " + slots);
+            this.reserved.put(level, slots);
+            return this;
+        }
+
+        /**
+         * Caps the slots requests of the given class may hold at once,
+         * leaving the rest to other classes even when they are idle.
+         * Unlimited by default.
+         */
+        public Builder limit(final Priority.Level level, final int slots) {
+            if (slots < 1) throw new IllegalArgumentException("slots must be at least 1: " + slots);
+            this.limits.put(level, slots);
+            return this;
+        }
+
+        public PriorityScheduler build() {
+            final int total = reserved.values().stream().mapToInt(Integer::intValue).sum();
+            if (total > concurrency) {
+                throw new IllegalArgumentException(String.format("Reserved slots (%s) exceed the concurrency (%s)",
+                        total, concurrency));
+            }
+            return new PriorityScheduler(this);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.tomitribe.util.reflect.Generics;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * What {@link S3Handler} needs to know about a proxied interface,
+ * computed once per interface rather than once per proxy: the annotation
+ * metadata of each abstract method, the interface's {@link Priority},
+ * the constructor of its proxy class, and the compiled plan of each
+ * method that has been called.
+ *
+ * <p>If the {@code jaws-s3-processor} generated an implementation of the
+ * interface, that class is instantiated instead of a {@link Proxy}.
+ *
+ * <p>Invalid annotations are reported when the first proxy of an
+ * interface is created, and again on every later attempt, as a failed
+ * computation is not cached. {@link #warmUp} reports them for a whole
+ * graph of interfaces at once.
+ */
+final class ProxyType {
+
+    private static final ClassValue<ProxyType> TYPES = new ClassValue<ProxyType>() {
+        @Override
+        protected ProxyType computeValue(final Class<?> type) {
+            return new ProxyType(type);
+        }
+    };
+
+    private static final Logger LOGGER = Logger.getLogger(ProxyType.class.getName());
+
+    private final Class<?> iface;
+    private final Map<Method, MethodAnnotations> methodAnnotations;
+    private final Priority priority;
+    private final Constructor<?> constructor;
+    private final MethodHandle generated;
+    private final Class<?> proxyClass;
+    private final ConcurrentMap<Method, S3Handler.Plan> plans = new ConcurrentHashMap<>();
+    private volatile boolean warm;
+
+    private ProxyType(final Class<?> iface) {
+        this.iface = iface;
+        this.methodAnnotations = buildMethodAnnotations(iface);
+        this.priority = iface.getAnnotation(Priority.class);
+        final Class<?> generatedClass = generatedClass(iface);
+        this.generated = generatedClass != null ? generatedConstructor(generatedClass) : null;
+        this.proxyClass = generatedClass != null ? generatedClass : proxyClass(iface);
+        this.constructor = generatedClass == null ? proxyConstructor(proxyClass) : null;
+    }
+
+    static ProxyType of(final Class<?> iface) {
+        return TYPES.get(iface);
+    }
+
+    /**
+     * Prepares the interface and every interface reachable from it
+     * through the return types of its methods, element types of streams,
+     * collections, arrays, publishers and futures included. Each method
+     * has its plan compiled, and its listing filters and child
+     * validations built, so no reflection is left for the first call.
+     *
+     * <p>Only interfaces extending {@link S3} are followed. Once a graph
+     * has been prepared its interfaces are marked and later calls return
+     * at once; a graph that failed is walked again on the next call.
+     *
+     * @param iface the interface at the root of the graph
+     * @return the type of that interface
+     * @throws InvalidAnnotationException if any interface in the graph
+     *                                    has invalid annotations
+     */
+    static ProxyType warmUp(final Class<?> iface) {
+        final ProxyType root = of(iface);
+        if (root.warm) return root;
+
+        final List<ProxyType> prepared = new ArrayList<>();
+        final Set<Class<?>> seen = new HashSet<>();
+        final Deque<Class<?>> pending = new ArrayDeque<>();
+        seen.add(iface);
+        pending.add(iface);
+
+        while (!pending.isEmpty()) {
+            final Class<?> next = pending.poll();
+            final ProxyType type = of(next);
+            if (type.warm) continue;
+
+            prepared.add(type);
+            for (final Class<?> reached : type.prepare(next)) {
+                if (seen.add(reached)) pending.add(reached);
+            }
+        }
+
+        for (final ProxyType type : prepared) {
+            type.warm = true;
+        }
+        return root;
+    }
+
+    /**
+     * Compiles everything a call to a method of the interface would.
+     *
+     * @return the interfaces the methods return proxies of
+     */
+    private List<Class<?>> prepare(final Class<?> iface) {
+        final List<Class<?>> reached = new ArrayList<>();
+        for (final Method method : iface.getMethods()) {
+            if (method.getDeclaringClass() == Object.class) continue;
+            if (Modifier.isStatic(method.getModifiers())) continue;
+
+            plan(method);
+
+            final MethodAnnotations annotations = methodAnnotations.get(method);
+            if (annotations == null) continue;
+
+            final Class<?> elementType = elementType(method);
+            if (elementType != null) {
+                annotations.listingTemplate(elementType);
+                if (isS3(elementType)) reached.add(elementType);
+                continue;
+            }
+
+            final Class<?> valueType = valueType(method);
+            if (!isS3(valueType)) continue;
+
+            if (method.getParameterCount() == 1) annotations.childValidation(valueType);
+            reached.add(valueType);
+        }
+        return reached;
+    }
+
+    /**
+     * Element types that are not plain classes, such as wildcards, are
+     * left to fail when the method is called.
+     */
+    private static Class<?> elementType(final Method method) {
+        try {
+            return S3Handler.getElementType(method);
+        } catch (final ClassCastException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The type a method returns, or that its future completes with.
+     */
+    private static Class<?> valueType(final Method method) {
+        if (!CompletableFuture.class.equals(method.getReturnType())) return method.getReturnType();
+
+        final Type type = Generics.getReturnType(method);
+        return type instanceof Class ? (Class<?>) type : null;
+    }
+
+    private static boolean isS3(final Class<?> type) {
+        return type != null && type.isInterface() && S3.class.isAssignableFrom(type);
+    }
+
+    Map<Method, MethodAnnotations> getMethodAnnotations() {
+        return methodAnnotations;
+    }
+
+    Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Returns the compiled {@link S3Handler.Plan plan} for a method of the
+     * proxy, compiling it on first use.
+     */
+    S3Handler.Plan plan(final Method method) {
+        final S3Handler.Plan plan = plans.get(method);
+        if (plan != null) return plan;
+        return plans.computeIfAbsent(method, m -> S3Handler.compile(m, this));
+    }
+
+    /**
+     * Whether the object was created by {@link #newProxy} of this type.
+     */
+    boolean isProxy(final Object object) {
+        return object.getClass() == proxyClass;
+    }
+
+    /**
+     * Creates a proxy of the interface with the given handler, without
+     * looking up the proxy class again.
+     */
+    Object newProxy(final S3Handler handler) {
+        if (generated != null) {
+            try {
+                return (Object) generated.invokeExact(handler);
+            } catch (final RuntimeException | Error e) {
+                throw e;
+            } catch (final Throwable t) {
+                throw new IllegalStateException("Cannot create proxy", t);
+            }
+        }
+
+        // The proxy class of a non-public interface could not be opened to us
+        if (constructor == null) {
+            return Proxy.newProxyInstance(iface.getClassLoader(), new Class[]{iface}, handler);
+        }
+
+        try {
+            return constructor.newInstance(handler);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create proxy", e.getCause());
+        } catch (final InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("Cannot create proxy", e);
+        }
+    }
+
+    private static Map<Method, MethodAnnotations> buildMethodAnnotations(final Class<?> iface) {
+        final Map<Method, MethodAnnotations> map = new HashMap<>();
+        for (final Method method : iface.getMethods()) {
+            if (method.getDeclaringClass() == Object.class) continue;
+            if (method.isDefault()) continue;
+            if (Modifier.isStatic(method.getModifiers())) continue;
+            map.put(method, MethodAnnotations.of(method));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Looks for the class the annotation processor generated for the
+     * interface.
+     */
+    private static Class<?> generatedClass(final Class<?> iface) {
+        final Class<?> type;
+        try {
+            type = Class.forName(iface.getName() + GeneratedProxy.SUFFIX, false, iface.getClassLoader());
+        } catch (final ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+
+        // Not ours, or generated for another interface of the same name
+        if (!GeneratedProxy.class.isAssignableFrom(type) || !iface.isAssignableFrom(type)) return null;
+
+        if (!implementsExactly(type, iface)) {
+            LOGGER.warning(String.format("Ignoring %s, which was generated for an older version of %s."
+                    + " Recompile the interface with jaws-s3-processor.", type.getName(), iface.getName()));
+            return null;
+        }
+        return type;
+    }
+
+    /**
+     * A generated class left over from an earlier version of the
+     * interface still implements it, but lacks the methods added since,
+     * which would fail with an {@link AbstractMethodError} when called,
+     * and resolves methods removed since, which fails when the class is
+     * initialized. The methods it declares must be exactly the abstract
+     * methods of the interface, as the processor writes them.
+     */
+    private static boolean implementsExactly(final Class<?> type, final Class<?> iface) {
+        if (Modifier.isAbstract(type.getModifiers())) return false;
+
+        final Set<String> declared = new HashSet<>();
+        for (final Method method : type.getDeclaredMethods()) {
+            if (method.isSynthetic() || Modifier.isStatic(method.getModifiers())) continue;
+            declared.add(signature(method));
+        }
+
+        final Set<String> required = new HashSet<>();
+        for (final Method method : iface.getMethods()) {
+            if (!Modifier.isAbstract(method.getModifiers()) || isObjectMethod(method)) continue;
+            required.add(signature(method));
+        }
+
+        return declared.equals(required);
+    }
+
+    private static String signature(final Method method) {
+        return method.getName() + Arrays.toString(method.getParameterTypes());
+    }
+
+    /**
+     * An interface may redeclare the public methods of {@code Object};
+     * the generated class inherits those from {@link GeneratedProxy}.
+     */
+    private static boolean isObjectMethod(final Method method) {
+        try {
+            Object.class.getMethod(method.getName(), method.getParameterTypes());
+            return true;
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The constructor of the generated class is bound to a method handle
+     * so that creating an instance involves no reflection.
+     */
+    private static MethodHandle generatedConstructor(final Class<?> type) {
+        try {
+            return MethodHandles.publicLookup()
+                    .findConstructor(type, MethodType.methodType(void.class, S3Handler.class))
+                    .asType(MethodType.methodType(Object.class, S3Handler.class));
+        } catch (final NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Generated class has no handler constructor: " + type.getName(), e);
+        }
+    }
+
+    /**
+     * The proxy class is defined by the first call to
+     * {@link Proxy#newProxyInstance}.
+     */
+    private static Class<?> proxyClass(final Class<?> iface) {
+        final InvocationHandler unused = (proxy, method, args) -> {
+            throw new UnsupportedOperationException();
+        };
+        return Proxy.newProxyInstance(iface.getClassLoader(), new Class[]{iface}, unused).getClass();
+    }
+
+    /**
+     * The constructor of the proxy class is kept so later proxies skip
+     * the lookup of the class by interfaces and loader.
+     *
+     * <p>The proxy class of a package-private interface is itself
+     * package-private and defined in the package of the interface, so
+     * its constructor must be made accessible. Where a module does not
+     * allow that, {@code null} is returned and proxies are created with
+     * {@link Proxy#newProxyInstance} instead.
+     */
+    private static Constructor<?> proxyConstructor(final Class<?> proxyClass) {
+        final Constructor<?> constructor;
+        try {
+            constructor = proxyClass.getConstructor(InvocationHandler.class);
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException("Proxy class has no handler constructor: " + proxyClass, e);
+        }
+
+        if (Modifier.isPublic(proxyClass.getModifiers())) return constructor;
+
+        try {
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (final RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The outcome of reading one object as part of a bulk read such as
+ * {@link S3Bucket#read(java.util.stream.Stream)}. A failed read does not
+ * stop the others; its exception is kept here instead.
+ */
+public class ReadResult {
+
+    private final S3File file;
+    private final byte[] bytes;
+    private final Throwable error;
+
+    ReadResult(final S3File file, final byte[] bytes, final Throwable error) {
+        this.file = file;
+        this.bytes = bytes;
+        this.error = error;
+    }
+
+    /**
+     * Returns the file that was read. After a successful read the file
+     * holds the metadata of the GET response, so size, ETag and
+     * lastModified are available without another request.
+     *
+     * @return the file that was read
+     */
+    public S3File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns {@code true} if the content was read.
+     *
+     * @return {@code true} if the read succeeded
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * Returns the exception that failed the read, for example a
+     * {@link NoSuchS3ObjectException} if the object does not exist.
+     *
+     * @return the failure, or {@code null} if the read succeeded
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Returns the object content.
+     *
+     * @return the content bytes
+     * @throws RuntimeException the read failure if the read did not succeed
+     */
+    public byte[] getBytes() {
+        if (error instanceof RuntimeException) throw (RuntimeException) error;
+        if (error instanceof Error) throw (Error) error;
+        if (error != null) throw new IllegalStateException("Cannot read " + file.getAbsoluteName(), error);
+        return bytes;
+    }
+
+    /**
+     * Returns the object content decoded as UTF-8.
+     *
+     * @return the content as a string
+     * @throws RuntimeException the read failure if the read did not succeed
+     */
+    public String getValueAsString() {
+        return new String(getBytes(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "ReadResult{" +
+                "file='" + file.getAbsoluteName() +
+                "', " + (error == null ? "bytes=" + bytes.length : "error=" + error) +
+                "}";
+    }
+}
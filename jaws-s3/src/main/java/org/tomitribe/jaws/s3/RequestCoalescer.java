@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight for idempotent reads. While a request for a given
+ * bucket, key, operation and range is in flight, identical requests
+ * share its result instead of issuing their own.
+ *
+ * <p>Only requests that overlap in time are shared. The entry is removed
+ * before the shared future completes, so a request made after a response
+ * has arrived always goes to S3 and sees fresh data. Writes and deletes
+ * {@link #invalidate} the entries of their key when they start and when
+ * they complete, so a read made after a write has completed never joins
+ * a request that was sent before it.
+ *
+ * <p>Every caller receives its own copy of the shared future, so one
+ * caller cancelling or completing its future does not affect the others.
+ * Results must therefore be treated as immutable.
+ *
+ * <p>A shared request is scheduled in the highest priority class among
+ * the callers that joined it, see {@link PriorityScheduler.Ticket}.
+ */
+class RequestCoalescer {
+
+    private final ConcurrentMap<Key, Flight<?>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    <T> CompletableFuture<T> execute(final Key key, final Supplier<CompletableFuture<T>> request) {
+        return execute(key, ticket -> request.get());
+    }
+
+    /**
+     * Sends the request, or joins an identical one in flight. The request
+     * is given the {@link PriorityScheduler.Ticket} it is scheduled with,
+     * which starts in the first caller's {@link Priority.Scope class}. A
+     * caller that joins with a higher class raises the shared request to
+     * it, so it does not wait behind the class of the caller it joined.
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> execute(final Key key, final Function<PriorityScheduler.Ticket, CompletableFuture<T>> request) {
+        final Flight<T> created = new Flight<>(Priority.Scope.current());
+        final Flight<T> existing = (Flight<T>) inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            existing.ticket.raise(Priority.Scope.current());
+            return existing.future.copy();
+        }
+
+        issued.increment();
+        try {
+            request.apply(created.ticket).whenComplete((value, throwable) -> {
+                inFlight.remove(key, created);
+                if (throwable != null) {
+                    created.future.completeExceptionally(S3Client.unwrap(throwable));
+                } else {
+                    created.future.complete(value);
+                }
+            });
+        } catch (final RuntimeException | Error e) {
+            inFlight.remove(key, created);
+            created.future.completeExceptionally(e);
+        }
+        return created.future.copy();
+    }
+
+    /**
+     * Stops new requests for the key from joining those in flight, for
+     * any operation and range. The requests themselves carry on and
+     * complete their existing callers.
+     */
+    void invalidate(final String bucket, final String key) {
+        if (inFlight.isEmpty()) return;
+        inFlight.keySet().removeIf(entry -> entry.key.equals(key) && entry.bucket.equals(bucket));
+    }
+
+    /**
+     * @return the number of requests actually sent
+     */
+    long getIssued() {
+        return issued.sum();
+    }
+
+    /**
+     * @return the number of requests that shared an in-flight request
+     */
+    long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of distinct requests currently in flight
+     */
+    int getInFlight() {
+        return inFlight.size();
+    }
+
+    private static class Flight<T> {
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final PriorityScheduler.Ticket ticket;
+
+        Flight(final Priority.Level level) {
+            this.ticket = new PriorityScheduler.Ticket(level);
+        }
+    }
+
+    static class Key {
+        private final String bucket;
+        private final String key;
+        private final Operation operation;
+        private final String range;
+
+        Key(final String bucket, final String key, final Operation operation, final String range) {
+            this.bucket = bucket;
+            this.key = key;
+            this.operation = operation;
+            this.range = range;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final Key that = (Key) o;
+            return bucket.equals(that.bucket)
+                    && key.equals(that.key)
+                    && operation.equals(that.operation)
+                    && Objects.equals(range, that.range);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(bucket, key, operation, range);
+        }
+
+        @Override
+        public String toString() {
+            return operation + " " + bucket + "/" + key + (range != null ? " " + range : "");
+        }
+    }
+}
@@ -21,6 +21,7 @@ import software.amazon.awssdk.transfer.s3.progress.TransferListener;
 
 import java.io.InputStream;
 import java.time.Instant;
+import java.util.Map;
 import java.util.stream.Stream;
 
 /**
@@ -116,6 +117,37 @@ public interface S3 {
          */
         Stream<S3File> list();
 
+        /**
+         * Reads the children with the given names concurrently. Names may
+         * contain slashes to reach deeper descendants, as with
+         * {@link #file(String)}.
+         *
+         * <p>Equivalent to {@code file().getBucket().read(names.map(this::file))}.
+         * See {@link S3Bucket#read(Stream, int, long)} for the limits that apply.
+         *
+         * @param names the child names to read
+         * @return a stream of results in the order the reads complete
+         */
+        default Stream<ReadResult> read(final Stream<String> names) {
+            return file().getBucket().read(names.map(this::file));
+        }
+
+        /**
+         * Reads the children with the given names concurrently and collects
+         * the results, keyed by the name each was requested with.
+         *
+         * <pre>{@code
+         * Map<String, ReadResult> metas = project.readAll(
+         *         project.versions().map(version -> version.file().getName() + "/upload.meta"));
+         * }</pre>
+         *
+         * @param names the child names to read
+         * @return the results keyed by name, in the order the reads completed
+         */
+        default Map<String, ReadResult> readAll(final Stream<String> names) {
+            return file().getBucket().readAll(file(), names);
+        }
+
         /**
          * Uploads a local file into this directory using the file's name
          * as the object key. Content type and metadata are derived
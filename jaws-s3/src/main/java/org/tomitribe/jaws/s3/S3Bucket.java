@@ -16,13 +16,14 @@
  */
 package org.tomitribe.jaws.s3;
 
-import org.tomitribe.util.IO;
+import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.core.async.AsyncResponseTransformer;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.Bucket;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
@@ -42,11 +43,20 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
@@ -68,9 +78,15 @@ import java.util.stream.Stream;
  * @see S3File
  */
 public class S3Bucket {
+    static final int DEFAULT_READ_CONCURRENCY = 32;
+    static final long DEFAULT_READ_BYTES = 32L * 1024 * 1024;
+    static final long UNKNOWN_SIZE_ESTIMATE = 64L * 1024;
+
     private final S3Client client;
     private final Bucket bucket;
     private final S3AsyncClient s3;
+    private final AtomicLong writes;
+    private volatile S3File root;
 
     /**
      * Creates a new S3Bucket wrapping the given AWS bucket.
@@ -82,6 +98,15 @@ public class S3Bucket {
         this.client = client;
         this.bucket = bucket;
         s3 = client.getS3();
+        writes = client.writes(bucket.name());
+    }
+
+    /**
+     * @return the number of writes and deletes completed in this bucket,
+     *         see {@link S3Client#writes(String)}
+     */
+    long writes() {
+        return writes.get();
     }
 
     /**
@@ -99,7 +124,13 @@ public class S3Bucket {
      * @return the root S3File
      */
     public S3File root() {
-        return S3File.rootFile(this);
+        // Kept so that navigation from the root reuses its cached children
+        S3File root = this.root;
+        if (root == null) {
+            root = S3File.rootFile(this);
+            this.root = root;
+        }
+        return root;
     }
 
     /**
@@ -107,11 +138,19 @@ public class S3Bucket {
      * class should be an interface extending {@link S3}, {@link S3.Dir},
      * or {@link S3.File}.
      *
+     * <p>The first call for an interface also prepares every interface
+     * reachable from it through method return types, so that invalid
+     * annotations anywhere in the graph are reported here and the first
+     * calls through the proxy do no reflection.
+     *
      * @param clazz the interface class to proxy
      * @param <T>   the proxy type
      * @return a proxy instance backed by the bucket root
+     * @throws InvalidAnnotationException if an interface reachable from
+     *                                    {@code clazz} has invalid annotations
      */
     public <T> T as(final Class<T> clazz) {
+        ProxyType.warmUp(clazz);
         return root().as(clazz);
     }
 
@@ -123,11 +162,11 @@ public class S3Bucket {
     public Stream<S3File> objects() {
         final ObjectListingIterator iterator = new ObjectListingIterator(bucket.name());
         return S3Client.asStream(iterator)
-                .map(s3Object -> new S3File(this, s3Object));
+                .map(S3File.fromListing(this));
     }
 
     public S3Bucket put(String key, byte[] bytes) {
-        S3Client.join(s3.putObject(
+        S3Client.join(send(
                 PutObjectRequest.builder().bucket(bucket.name()).key(key).build(),
                 AsyncRequestBody.fromBytes(bytes)));
         return this;
@@ -166,7 +205,24 @@ public class S3Bucket {
                 .build();
         final ObjectListingIterator iterator = new ObjectListingIterator(adjusted);
         return S3Client.asStream(iterator)
-                .map(s3Object -> new S3File(this, s3Object));
+                .map(S3File.fromListing(this));
+    }
+
+    /**
+     * Returns the objects matching the given request whose keys pass the
+     * filter. Keys are checked before an S3File is created.
+     */
+    Stream<S3File> objects(final ListObjectsRequest request, final KeyFilter keys) {
+        if (keys == KeyFilter.ALL) return objects(request);
+        if (!keys.includesFiles()) return Stream.empty();
+
+        final ListObjectsRequest adjusted = request.toBuilder()
+                .bucket(bucket.name())
+                .build();
+        final ObjectListingIterator iterator = new ObjectListingIterator(adjusted);
+        return S3Client.asStream(iterator)
+                .filter(s3Object -> keys.acceptsFile(s3Object.key()))
+                .map(S3File.fromListing(this));
     }
 
     /**
@@ -177,7 +233,7 @@ public class S3Bucket {
      * @return the put response
      */
     public PutObjectResponse putObject(final String key, final File file) {
-        return S3Client.join(s3.putObject(
+        return S3Client.join(send(
                 PutObjectRequest.builder()
                         .bucket(bucket.name())
                         .key(key)
@@ -193,7 +249,7 @@ public class S3Bucket {
      * @return the put response
      */
     public PutObjectResponse putObject(final String key, final java.nio.file.Path file) {
-        return S3Client.join(s3.putObject(
+        return S3Client.join(send(
                 PutObjectRequest.builder()
                         .bucket(bucket.name())
                         .key(key)
@@ -210,7 +266,7 @@ public class S3Bucket {
      * @return the put response
      */
     public PutObjectResponse putObject(final String key, final InputStream inputStream, final long contentLength) {
-        return S3Client.join(s3.putObject(
+        return S3Client.join(send(
                 PutObjectRequest.builder().bucket(bucket.name()).key(key).contentLength(contentLength).build(),
                 AsyncRequestBody.fromInputStream(inputStream, contentLength, client.getExecutor())));
     }
@@ -223,7 +279,7 @@ public class S3Bucket {
      * @return the put response
      */
     public PutObjectResponse putObject(final String key, final String content) {
-        return S3Client.join(s3.putObject(
+        return S3Client.join(send(
                 PutObjectRequest.builder().bucket(bucket.name()).key(key).build(),
                 AsyncRequestBody.fromString(content)));
     }
@@ -236,8 +292,7 @@ public class S3Bucket {
      * @return a response input stream with the object content and metadata
      */
     public ResponseInputStream<GetObjectResponse> getObject(final String key) {
-        return S3Client.join(s3.getObject(GetObjectRequest.builder().bucket(bucket.name()).key(key).build(),
-                AsyncResponseTransformer.toBlockingInputStream()));
+        return S3Client.join(stream(key));
     }
 
     /**
@@ -248,7 +303,7 @@ public class S3Bucket {
      * @return the head-object response containing metadata
      */
     public HeadObjectResponse getObjectMetadata(final String key) {
-        return S3Client.join(s3.headObject(HeadObjectRequest.builder().bucket(bucket.name()).key(key).build()));
+        return S3Client.join(getObjectMetadataAsync(key));
     }
 
     /**
@@ -276,8 +331,7 @@ public class S3Bucket {
      */
     public InputStream getObjectAsStream(final String key) {
         try {
-            return S3Client.join(s3.getObject(GetObjectRequest.builder().bucket(bucket.name()).key(key).build(),
-                    AsyncResponseTransformer.toBlockingInputStream()));
+            return S3Client.join(stream(key));
         } catch (S3Exception e) {
             if (e.statusCode() == 404) {
                 throw new NoSuchS3ObjectException(bucket.name(), key, e);
@@ -299,21 +353,239 @@ public class S3Bucket {
      * just 1 request.
      */
     public String getObjectAsString(final String key) {
-        try {
-            final ResponseInputStream<GetObjectResponse> stream = S3Client.join(s3.getObject(
-                    GetObjectRequest.builder().bucket(bucket.name()).key(key).build(),
-                    AsyncResponseTransformer.toBlockingInputStream()));
-            try (stream) {
-                return IO.slurp(stream);
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
-        } catch (S3Exception e) {
-            if (e.statusCode() == 404) {
-                throw new NoSuchS3ObjectException(bucket.name(), key, e);
+        return S3Client.join(getObjectAsStringAsync(key));
+    }
+
+    /**
+     * Asynchronously fetches the metadata for the object with the given
+     * key via a HEAD request. A missing object completes the future
+     * exceptionally with the underlying 404 {@link S3Exception}.
+     * Identical requests in flight at the same time on this client share
+     * a single HEAD.
+     *
+     * @param key the object key
+     * @return a future for the head-object response
+     */
+    public CompletableFuture<HeadObjectResponse> getObjectMetadataAsync(final String key) {
+        return client.getCoalescer().execute(new RequestCoalescer.Key(bucket.name(), key, Operation.HEAD, null),
+                ticket -> client.execute(Operation.HEAD, bucket.name(), key, ticket,
+                        () -> s3.headObject(HeadObjectRequest.builder().bucket(bucket.name()).key(key).build())));
+    }
+
+    /**
+     * Asynchronously reads the full content of the object with the given
+     * key into memory. A missing object completes the future exceptionally
+     * with a {@link NoSuchS3ObjectException}. Identical requests in flight
+     * at the same time on this client share a single GET, so the returned
+     * bytes must not be modified.
+     *
+     * @param key the object key
+     * @return a future for the content and response metadata
+     */
+    public CompletableFuture<ResponseBytes<GetObjectResponse>> getObjectAsBytesAsync(final String key) {
+        return notFound(key, client.getCoalescer().execute(new RequestCoalescer.Key(bucket.name(), key, Operation.GET, null),
+                ticket -> client.execute(Operation.GET, bucket.name(), key, ticket,
+                        () -> s3.getObject(GetObjectRequest.builder().bucket(bucket.name()).key(key).build(),
+                                throttle(new BudgetedBytesTransformer(client.getBufferPool()))))));
+    }
+
+    /**
+     * Asynchronously reads the content of the object with the given key
+     * as a UTF-8 string. Favor {@link S3File#getValueAsStringAsync()},
+     * which also keeps the response metadata.
+     *
+     * @param key the object key
+     * @return a future for the object content
+     */
+    public CompletableFuture<String> getObjectAsStringAsync(final String key) {
+        return getObjectAsBytesAsync(key)
+                .thenApply(bytes -> new String(bytes.asByteArrayUnsafe(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Asynchronously uploads a string as an S3 object with the given key.
+     *
+     * @param key     the object key
+     * @param content the string content to upload
+     * @return a future for the put response
+     */
+    public CompletableFuture<PutObjectResponse> putObjectAsync(final String key, final String content) {
+        return send(
+                PutObjectRequest.builder().bucket(bucket.name()).key(key).build(),
+                AsyncRequestBody.fromString(content));
+    }
+
+    /**
+     * Asynchronously deletes the object with the given key from this bucket.
+     *
+     * @param key the object key to delete
+     * @return a future that completes once the object is deleted
+     */
+    public CompletableFuture<Void> deleteObjectAsync(final String key) {
+        return send(DeleteObjectRequest.builder().bucket(bucket.name()).key(key).build())
+                .thenApply(response -> null);
+    }
+
+    /**
+     * Reads the content of many objects concurrently, with the default
+     * limits of {@value #DEFAULT_READ_CONCURRENCY} reads in flight and
+     * {@value #DEFAULT_READ_BYTES} bytes in flight.
+     *
+     * @param files the objects to read
+     * @return a stream of results in the order the reads complete
+     * @see #read(Stream, int, long)
+     */
+    public Stream<ReadResult> read(final Stream<S3File> files) {
+        return read(files, DEFAULT_READ_CONCURRENCY, DEFAULT_READ_BYTES);
+    }
+
+    /**
+     * Reads the content of many objects concurrently. This is intended
+     * for large numbers of small objects, where issuing one
+     * {@code getValueAsString()} after the other is dominated by latency.
+     *
+     * <p>Before each read, the object's size is reserved against
+     * {@code maxBytesInFlight}. The size comes from the listing or from
+     * earlier metadata when the file has them, and is otherwise
+     * estimated at {@value #UNKNOWN_SIZE_ESTIMATE} bytes. When the budget
+     * is exhausted no further reads are issued until earlier ones
+     * complete. An object larger than the whole budget is read alone.
+     *
+     * <p>A failed read, such as a missing object, produces a
+     * {@link ReadResult} holding the exception and does not affect the
+     * other reads. Files are read as they are pulled from {@code files},
+     * so the stream may be a listing that is still paging. Closing the
+     * returned stream cancels outstanding reads.
+     *
+     * @param files            the objects to read
+     * @param concurrency      the maximum number of reads in flight
+     * @param maxBytesInFlight the maximum number of bytes reserved for reads in flight
+     * @return a stream of results in the order the reads complete
+     */
+    public Stream<ReadResult> read(final Stream<S3File> files, final int concurrency, final long maxBytesInFlight) {
+        final ByteBudget budget = new ByteBudget(maxBytesInFlight);
+        return S3Streams.mapAsync(files, concurrency, false, file -> read(file, budget));
+    }
+
+    /**
+     * Reads the content of the objects with the given keys concurrently
+     * and collects the results. See {@link #read(Stream, int, long)}
+     * for the limits that apply.
+     *
+     * @param keys the object keys to read
+     * @return the results keyed by object key, in the order the reads completed
+     */
+    public Map<String, ReadResult> readAll(final Stream<String> keys) {
+        return readAll(root(), keys);
+    }
+
+    /**
+     * Reads the children of {@code directory} with the given names and
+     * keys each result by the name it was requested with.
+     *
+     * <p>Names that resolve to the same object key, such as a name given
+     * twice, are read once and the result is stored under each of them.
+     */
+    Map<String, ReadResult> readAll(final S3File directory, final Stream<String> names) {
+        // Keyed by object key rather than by S3File, as the child cache
+        // may hand out a new instance for a name it has since dropped
+        final Map<String, List<String>> requested = new LinkedHashMap<>();
+        final List<S3File> files = new ArrayList<>();
+        names.forEach(name -> {
+            final S3File file = directory.getFile(name);
+            final List<String> aliases = requested.get(file.getAbsoluteName());
+            if (aliases != null) {
+                aliases.add(name);
+            } else {
+                requested.put(file.getAbsoluteName(), new ArrayList<>(List.of(name)));
+                files.add(file);
             }
-            throw e;
+        });
+
+        final Map<String, ReadResult> results = new LinkedHashMap<>();
+        try (final Stream<ReadResult> stream = read(files.stream())) {
+            stream.forEach(result -> {
+                for (final String name : requested.get(result.getFile().getAbsoluteName())) {
+                    results.put(name, result);
+                }
+            });
         }
+        return results;
+    }
+
+    private CompletableFuture<ReadResult> read(final S3File file, final ByteBudget budget) {
+        final long knownSize = file.getKnownSize();
+        final long reserved = knownSize >= 0 ? knownSize : UNKNOWN_SIZE_ESTIMATE;
+
+        budget.acquire(reserved);
+        return file.getValueAsBytesAsync().handle((bytes, throwable) -> {
+            budget.release(reserved);
+            if (throwable != null) return new ReadResult(file, null, S3Client.unwrap(throwable));
+            return new ReadResult(file, bytes, null);
+        });
+    }
+
+    /**
+     * Fetches a single page of a listing. The request must already
+     * carry this bucket's name.
+     */
+    CompletableFuture<ListObjectsResponse> listObjectsAsync(final ListObjectsRequest request) {
+        return client.execute(Operation.LIST, request.bucket(), request.prefix(), () -> s3.listObjects(request));
+    }
+
+    /**
+     * Fetches a page of a listing in the priority class the listing was
+     * started in, rather than that of the thread consuming it.
+     */
+    CompletableFuture<ListObjectsResponse> listObjectsAsync(final ListObjectsRequest request, final Priority.Level priority) {
+        return Priority.Scope.call(priority, () -> listObjectsAsync(request));
+    }
+
+    /**
+     * Returns the marker for the page following the given truncated
+     * response. S3 only sends {@code nextMarker} when a delimiter is
+     * used, otherwise the last key of the page is the marker.
+     */
+    static String nextMarker(final ListObjectsResponse response) {
+        final String marker = response.nextMarker();
+        if (marker != null) return marker;
+
+        final List<S3Object> contents = response.contents();
+        if (contents.isEmpty()) return null;
+        return contents.get(contents.size() - 1).key();
+    }
+
+    private CompletableFuture<PutObjectResponse> send(final PutObjectRequest request, final AsyncRequestBody body) {
+        return client.execute(Operation.PUT, bucket.name(), request.key(), () -> s3.putObject(request, ThrottledPublisher.body(body, client.bandwidth(bucket.name()))));
+    }
+
+    private CompletableFuture<DeleteObjectResponse> send(final DeleteObjectRequest request) {
+        return client.execute(Operation.DELETE, bucket.name(), request.key(), () -> s3.deleteObject(request));
+    }
+
+    private CompletableFuture<ResponseInputStream<GetObjectResponse>> stream(final String key) {
+        return client.execute(Operation.STREAM, bucket.name(), key,
+                () -> s3.getObject(GetObjectRequest.builder().bucket(bucket.name()).key(key).build(),
+                        throttle(AsyncResponseTransformer.toBlockingInputStream())))
+                .thenApply(client::track);
+    }
+
+    private <T> AsyncResponseTransformer<GetObjectResponse, T> throttle(final AsyncResponseTransformer<GetObjectResponse, T> transformer) {
+        return ThrottledPublisher.transformer(transformer, client.bandwidth(bucket.name()));
+    }
+
+    private <T> CompletableFuture<T> notFound(final String key, final CompletableFuture<T> future) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        future.whenComplete((value, throwable) -> {
+            if (throwable == null) {
+                result.complete(value);
+            } else if (S3Client.isNotFound(throwable)) {
+                result.completeExceptionally(new NoSuchS3ObjectException(bucket.name(), key, S3Client.unwrap(throwable)));
+            } else {
+                result.completeExceptionally(S3Client.unwrap(throwable));
+            }
+        });
+        return result;
     }
 
     /**
@@ -325,7 +597,7 @@ public class S3Bucket {
      * @return the in-progress upload
      */
     public Upload upload(final String key, final InputStream input, final long size) {
-        return client.getTransferManager().upload(UploadRequest.builder()
+        return client.upload(UploadRequest.builder()
                 .putObjectRequest(PutObjectRequest.builder()
                         .bucket(bucket.name())
                         .key(key)
@@ -343,7 +615,7 @@ public class S3Bucket {
      * @return the in-progress upload
      */
     public Upload upload(final String key, final File file) {
-        return client.getTransferManager().upload(UploadRequest.builder()
+        return client.upload(UploadRequest.builder()
                 .putObjectRequest(PutObjectRequest.builder()
                         .bucket(bucket.name())
                         .key(key)
@@ -360,7 +632,7 @@ public class S3Bucket {
      * @return the in-progress file download
      */
     public FileDownload download(final String key, final File destination) {
-        return client.getTransferManager().downloadFile(DownloadFileRequest.builder()
+        return client.downloadFile(DownloadFileRequest.builder()
                 .getObjectRequest(GetObjectRequest.builder()
                         .bucket(bucket.name())
                         .key(key)
@@ -377,7 +649,7 @@ public class S3Bucket {
      * @return the put response
      */
     public PutObjectResponse setObjectAsString(final String key, final String value) {
-        return S3Client.join(s3.putObject(
+        return S3Client.join(send(
                 PutObjectRequest.builder().bucket(bucket.name()).key(key).build(),
                 AsyncRequestBody.fromString(value)));
     }
@@ -390,27 +662,63 @@ public class S3Bucket {
      * @return the put response
      */
     public PutObjectResponse setObjectAsFile(final String key, final File value) {
-        return S3Client.join(s3.putObject(
+        return S3Client.join(send(
                 PutObjectRequest.builder().bucket(bucket.name()).key(key).build(),
                 AsyncRequestBody.fromFile(value)));
     }
 
     /**
      * Replaces the object content by reading from the given input stream.
+     * The stream's length is not known up front, so it is read into
+     * buffers from the client's {@link BufferPool} before being sent.
      *
      * @param key   the object key
      * @param value the input stream to read from
      * @return the put response
      */
     public PutObjectResponse setObjectAsStream(final String key, final InputStream value) {
+        final BufferPool pool = client.getBufferPool();
+        final List<ByteBuffer> buffers = new ArrayList<>();
+        boolean completed = false;
         try {
-            final byte[] bytes = value.readAllBytes();
-            return S3Client.join(s3.putObject(
+            final ReadableByteChannel channel = Channels.newChannel(value);
+            for (;;) {
+                final ByteBuffer buffer = buffers.isEmpty() ? pool.take() : pool.takeMore();
+                buffers.add(buffer);
+                final boolean end = fill(channel, buffer);
+                buffer.flip();
+                if (end) break;
+            }
+
+            final PutObjectResponse response = S3Client.join(send(
                     PutObjectRequest.builder().bucket(bucket.name()).key(key).build(),
-                    AsyncRequestBody.fromBytes(bytes)));
+                    AsyncRequestBody.fromByteBuffersUnsafe(buffers.toArray(new ByteBuffer[0]))));
+            completed = true;
+            return response;
         } catch (IOException e) {
             throw new UncheckedIOException(e);
+        } finally {
+            for (final ByteBuffer buffer : buffers) {
+                if (completed) {
+                    pool.give(buffer);
+                } else {
+                    // The request may have failed while still reading the buffer
+                    pool.discard(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads until the buffer is full or the channel is exhausted.
+     *
+     * @return {@code true} if the end of the channel was reached
+     */
+    private static boolean fill(final ReadableByteChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) return true;
         }
+        return false;
     }
 
     /**
@@ -419,7 +727,7 @@ public class S3Bucket {
      * @param key the object key to delete
      */
     public void deleteObject(final String key) {
-        S3Client.join(s3.deleteObject(DeleteObjectRequest.builder().bucket(bucket.name()).key(key).build()));
+        S3Client.join(send(DeleteObjectRequest.builder().bucket(bucket.name()).key(key).build()));
     }
 
     /**
@@ -442,19 +750,20 @@ public class S3Bucket {
 
     class ObjectListingIterator implements Iterator<S3Object> {
 
+        private final Priority.Level priority = Priority.Scope.current();
         private Iterator<S3Object> iterator;
         private ListObjectsResponse response;
         private ListObjectsRequest request;
 
         public ObjectListingIterator(final String bucketName) {
             this.request = ListObjectsRequest.builder().bucket(bucketName).build();
-            this.response = S3Client.join(s3.listObjects(request));
+            this.response = S3Client.join(listObjectsAsync(request));
             this.iterator = response.contents().iterator();
         }
 
         public ObjectListingIterator(final ListObjectsRequest request) {
             this.request = request;
-            this.response = S3Client.join(s3.listObjects(request));
+            this.response = S3Client.join(listObjectsAsync(request));
             this.iterator = response.contents().iterator();
         }
 
@@ -463,15 +772,8 @@ public class S3Bucket {
             if (iterator.hasNext()) return true;
             if (!response.isTruncated()) return false;
 
-            String marker = response.nextMarker();
-            if (marker == null) {
-                final List<S3Object> contents = response.contents();
-                if (!contents.isEmpty()) {
-                    marker = contents.get(contents.size() - 1).key();
-                }
-            }
-            request = request.toBuilder().marker(marker).build();
-            response = S3Client.join(s3.listObjects(request));
+            request = request.toBuilder().marker(nextMarker(response)).build();
+            response = S3Client.join(listObjectsAsync(request, priority));
             iterator = response.contents().iterator();
 
             return hasNext();
@@ -17,22 +17,51 @@
 package org.tomitribe.jaws.s3;
 
 import org.tomitribe.jaws.NoSuchBucketException;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.Bucket;
 import software.amazon.awssdk.services.s3.model.CreateBucketRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadBucketRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.DownloadFileRequest;
+import software.amazon.awssdk.transfer.s3.model.FileDownload;
+import software.amazon.awssdk.transfer.s3.model.Upload;
+import software.amazon.awssdk.transfer.s3.model.UploadRequest;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -50,39 +79,109 @@ import java.util.stream.StreamSupport;
  * S3Bucket bucket = s3.getBucket("my-bucket");
  * Catalog catalog = bucket.as(Catalog.class);
  * }</pre>
+ *
+ * <p>Closing the client waits for requests and transfers in flight, then
+ * shuts down the resources it created. Resources passed to the
+ * {@link Builder} are left open. Resources shared with other clients are
+ * shut down once all of those clients are closed.
  */
-public class S3Client {
+public class S3Client implements AutoCloseable {
+    static final Duration DEFAULT_CLOSE_TIMEOUT = Duration.ofSeconds(30);
+    static final int DEFAULT_THREADS = 10;
+
     private final S3AsyncClient s3;
     private final S3TransferManager transferManager;
     private final ExecutorService executor;
+    private final Executor callbackExecutor;
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final Hedging hedging;
+    private final ConcurrencyLimits limits;
+    private final BufferPool bufferPool;
+    private final PriorityScheduler priorities;
+    private final Bandwidth bandwidth;
+    private final Map<String, Bandwidth> bucketBandwidth;
+    private final boolean ownsS3;
+    private final boolean ownsExecutor;
+    private final boolean ownsTransferManager;
+    private final Shared shared;
+    private final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+    private final Set<CompletableFuture<?>> waiting = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, S3Bucket> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicLong> writes = new ConcurrentHashMap<>();
+    private volatile boolean closed;
 
     /**
      * Creates a new S3Client backed by the given async client.
      * A default thread pool and {@link S3TransferManager} are
-     * created automatically.
+     * created automatically. Use {@link #builder()} to supply
+     * your own.
      *
      * @param s3 the AWS async S3 client
      */
     public S3Client(final S3AsyncClient s3) {
-        this.s3 = s3;
-        this.executor = createDefaultExecutorService();
-        this.transferManager = S3TransferManager.builder()
-                .s3Client(s3)
-                .build();
+        this(builder().s3(s3));
+    }
+
+    private S3Client(final Builder builder) {
+        this.s3 = Objects.requireNonNull(builder.s3, "s3");
+        this.hedging = builder.hedging;
+        this.limits = builder.limits != null ? builder.limits : ConcurrencyLimits.builder().build();
+        this.bufferPool = builder.bufferPool != null ? builder.bufferPool : BufferPool.builder().build();
+        this.priorities = builder.priorities;
+        this.bandwidth = builder.bandwidth;
+        this.bucketBandwidth = new HashMap<>(builder.bucketBandwidth);
+        this.callbackExecutor = builder.callbackExecutor;
+        this.executor = builder.executor != null ? builder.executor : createExecutorService(builder);
+        this.transferManager = builder.transferManager != null ? builder.transferManager : createTransferManager(builder);
+        this.ownsS3 = builder.closeS3;
+        this.ownsExecutor = builder.executor == null;
+        this.ownsTransferManager = builder.transferManager == null;
+        this.shared = builder.shared != null ? builder.shared.retain() : new Shared();
     }
 
-    private static ThreadPoolExecutor createDefaultExecutorService() {
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private static ExecutorService createExecutorService(final Builder builder) {
+        if (builder.virtualThreads) return newVirtualThreadPerTaskExecutor();
+
         final ThreadFactory threadFactory = new ThreadFactory() {
-            private int threadCount = 1;
+            private final AtomicInteger threadCount = new AtomicInteger(1);
 
+            @Override
             public Thread newThread(final Runnable r) {
                 final Thread thread = new Thread(r);
                 thread.setDaemon(true);
-                thread.setName("s3-transfer-manager-worker-" + threadCount++);
+                thread.setName("s3-transfer-manager-worker-" + threadCount.getAndIncrement());
                 return thread;
             }
         };
-        return (ThreadPoolExecutor) Executors.newFixedThreadPool(10, threadFactory);
+
+        return Executors.newFixedThreadPool(builder.threads, threadFactory);
+    }
+
+    /**
+     * Looked up reflectively so the library still runs on Java 11.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            final Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (final NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+        } catch (final IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create a virtual thread executor", e);
+        }
+    }
+
+    private S3TransferManager createTransferManager(final Builder builder) {
+        final S3TransferManager.Builder transferManager = S3TransferManager.builder()
+                .s3Client(s3);
+        if (builder.transferManagerCustomizer != null) {
+            builder.transferManagerCustomizer.accept(transferManager);
+        }
+        return transferManager.build();
     }
 
     /**
@@ -105,13 +204,16 @@ public class S3Client {
      * @return the newly created bucket
      */
     public S3Bucket createBucket(final String s) {
-        join(s3.createBucket(CreateBucketRequest.builder().bucket(s).build()));
-        final Bucket bucket = Bucket.builder().name(s).build();
-        return new S3Bucket(this, bucket);
+        call(() -> s3.createBucket(CreateBucketRequest.builder().bucket(s).build()));
+        final S3Bucket bucket = new S3Bucket(this, Bucket.builder().name(s).build());
+        buckets.put(s, bucket);
+        return bucket;
     }
 
     /**
-     * Returns the bucket with the given name.
+     * Returns the bucket with the given name. The first call for a name
+     * checks that the bucket exists; later calls return the same handle
+     * without a request.
      *
      * @param name the bucket name
      * @return the matching bucket
@@ -119,16 +221,40 @@ public class S3Client {
      *         that name exists
      */
     public S3Bucket getBucket(final String name) {
+        checkOpen();
+        final S3Bucket cached = buckets.get(name);
+        if (cached != null) return cached;
+
         try {
-            join(s3.headBucket(HeadBucketRequest.builder().bucket(name).build()));
+            call(() -> s3.headBucket(HeadBucketRequest.builder().bucket(name).build()));
         } catch (S3Exception e) {
             if (e.statusCode() == 404) {
-                throw new NoSuchBucketException(name);
+                throw new NoSuchBucketException(name, e);
             }
             throw e;
         }
-        final Bucket bucket = Bucket.builder().name(name).build();
-        return new S3Bucket(this, bucket);
+        return buckets.computeIfAbsent(name, this::newBucket);
+    }
+
+    /**
+     * Returns a handle for the bucket with the given name without checking
+     * that it exists. If it does not, the first request made through the
+     * handle fails with a {@link NoSuchBucketException}.
+     *
+     * <p>Use this where the bucket is known to exist, such as in request
+     * handlers, to save a round trip before the first real request.
+     *
+     * @param name the bucket name
+     * @return a handle for the bucket
+     */
+    public S3Bucket bucket(final String name) {
+        checkOpen();
+        final S3Bucket cached = buckets.get(name);
+        return cached != null ? cached : newBucket(name);
+    }
+
+    private S3Bucket newBucket(final String name) {
+        return new S3Bucket(this, Bucket.builder().name(name).build());
     }
 
     /**
@@ -137,7 +263,7 @@ public class S3Client {
      * @return a stream of buckets
      */
     public Stream<S3Bucket> buckets() {
-        return join(s3.listBuckets()).buckets().stream()
+        return call(s3::listBuckets).buckets().stream()
                 .map(bucket -> new S3Bucket(this, bucket));
 
     }
@@ -162,7 +288,9 @@ public class S3Client {
     }
 
     /**
-     * Returns the shared executor service used for async transfers.
+     * Returns the executor service that pumps {@link java.io.InputStream}
+     * uploads. Each stream upload occupies one of its threads while the
+     * stream is read.
      *
      * @return the executor service
      */
@@ -170,6 +298,502 @@ public class S3Client {
         return executor;
     }
 
+    /**
+     * Returns the single-flight layer that HEAD and in-memory GET
+     * requests from all buckets of this client go through.
+     *
+     * @return the request coalescer
+     */
+    RequestCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Returns the hedging policy and statistics of this client.
+     *
+     * @return the hedging policy, or {@code null} if requests are not hedged
+     */
+    public Hedging getHedging() {
+        return hedging;
+    }
+
+    /**
+     * Returns the per-partition concurrency limits and throttle counts
+     * of this client.
+     *
+     * @return the concurrency limits
+     */
+    public ConcurrencyLimits getConcurrencyLimits() {
+        return limits;
+    }
+
+    /**
+     * Returns the budget for bytes held in memory by requests in flight
+     * and its pool of reusable buffers.
+     *
+     * @return the buffer pool
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Returns the priority scheduler and its per-class statistics.
+     *
+     * @return the scheduler, or {@code null} if requests are not scheduled by priority
+     */
+    public PriorityScheduler getPriorities() {
+        return priorities;
+    }
+
+    /**
+     * Returns the bandwidth limit shared by all buckets of this client.
+     *
+     * @return the limit, or {@code null} if the client is not limited
+     */
+    public Bandwidth getBandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * Returns the bandwidth limit of a single bucket.
+     *
+     * @param bucket the bucket name
+     * @return the limit, or {@code null} if the bucket has no limit of its own
+     */
+    public Bandwidth getBandwidth(final String bucket) {
+        return bucketBandwidth.get(bucket);
+    }
+
+    /**
+     * The limits a body to or from the given bucket passes through,
+     * bucket first.
+     */
+    List<Bandwidth> bandwidth(final String bucket) {
+        final Bandwidth own = bucketBandwidth.get(bucket);
+        if (own == null) return bandwidth == null ? List.of() : List.of(bandwidth);
+        return bandwidth == null ? List.of(own) : List.of(own, bandwidth);
+    }
+
+    /**
+     * Sends a request once the priority scheduler lets its class start
+     * and its partition has room under the concurrency limit. When
+     * hedging is enabled for the operation the request may be answered
+     * by either of two copies. Every object-level request of this client
+     * goes through here.
+     *
+     * @param operation the kind of request
+     * @param bucket    the bucket name
+     * @param key       the object key or listing prefix
+     * @param request   sends the request; may be called twice when hedged
+     * @return a future for the response
+     */
+    <T> CompletableFuture<T> execute(final Operation operation, final String bucket, final String key,
+                                     final Supplier<CompletableFuture<T>> request) {
+        return execute(operation, bucket, key, new PriorityScheduler.Ticket(Priority.Scope.current()), request);
+    }
+
+    /**
+     * Sends a request scheduled with the given ticket, whose class may
+     * be raised while the request waits. Used for requests that several
+     * callers share.
+     */
+    <T> CompletableFuture<T> execute(final Operation operation, final String bucket, final String key,
+                                     final PriorityScheduler.Ticket ticket,
+                                     final Supplier<CompletableFuture<T>> request) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        if (!register(result)) return CompletableFuture.failedFuture(closedException());
+
+        final boolean write = operation == Operation.PUT || operation == Operation.DELETE;
+        if (write) coalescer.invalidate(bucket, key);
+
+        // The partition permit comes first, so a request held back by a
+        // throttled prefix does not occupy a scheduler slot that requests
+        // to other prefixes could use
+        final CompletableFuture<ConcurrencyLimits.Permit> permit = await(limits.acquire(bucket, key));
+
+        permit.whenComplete((granted, refused) -> {
+            if (refused != null) {
+                complete(result, null, refused);
+                return;
+            }
+            if (result.isDone()) {
+                granted.discard();
+                return;
+            }
+
+            final CompletableFuture<PriorityScheduler.Slot> slot = await(schedule(ticket));
+
+            slot.whenComplete((scheduled, unscheduled) -> {
+                if (unscheduled != null) {
+                    granted.discard();
+                    complete(result, null, unscheduled);
+                    return;
+                }
+                if (result.isDone()) {
+                    release(scheduled);
+                    granted.discard();
+                    return;
+                }
+
+                final CompletableFuture<T> response;
+                try {
+                    response = hedging != null ? hedging.execute(operation, request) : request.get();
+                } catch (final RuntimeException | Error e) {
+                    granted.discard();
+                    release(scheduled);
+                    result.completeExceptionally(e);
+                    return;
+                }
+
+                response.whenComplete((value, throwable) -> {
+                    granted.release(throwable);
+                    release(scheduled);
+                    if (write) written(bucket, key);
+                    complete(result, value, noSuchBucket(bucket, throwable));
+                });
+                result.whenComplete((value, throwable) -> {
+                    if (result.isCancelled()) response.cancel(true);
+                });
+            });
+
+            result.whenComplete((value, throwable) -> {
+                if (result.isCancelled()) slot.cancel(false);
+            });
+        });
+
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) permit.cancel(false);
+        });
+
+        return result;
+    }
+
+    /**
+     * Waits for the priority scheduler, if there is one, to let a request
+     * of the ticket's {@link Priority.Scope class} start.
+     */
+    private CompletableFuture<PriorityScheduler.Slot> schedule(final PriorityScheduler.Ticket ticket) {
+        if (priorities == null) return CompletableFuture.completedFuture(null);
+        return ticket.acquire(priorities);
+    }
+
+    /**
+     * Reports a missing bucket as a {@link NoSuchBucketException}, and
+     * forgets the bucket so that {@link #getBucket} checks it again.
+     */
+    private Throwable noSuchBucket(final String bucket, final Throwable throwable) {
+        if (throwable == null) return null;
+
+        final Throwable cause = unwrap(throwable);
+        if (!(cause instanceof S3Exception)) return throwable;
+
+        final AwsErrorDetails details = ((S3Exception) cause).awsErrorDetails();
+        if (details == null || !"NoSuchBucket".equals(details.errorCode())) return throwable;
+
+        buckets.remove(bucket);
+        return new NoSuchBucketException(bucket, cause);
+    }
+
+    private static void release(final PriorityScheduler.Slot slot) {
+        if (slot != null) slot.release();
+    }
+
+    /**
+     * Completes the caller's future, on the callback executor when one
+     * is configured so that dependent stages do not run on SDK threads.
+     */
+    private <T> void complete(final CompletableFuture<T> result, final T value, final Throwable throwable) {
+        final Runnable completion = () -> {
+            if (throwable != null) {
+                result.completeExceptionally(unwrap(throwable));
+            } else {
+                result.complete(value);
+            }
+        };
+
+        if (callbackExecutor == null) {
+            completion.run();
+            return;
+        }
+
+        try {
+            callbackExecutor.execute(completion);
+        } catch (final RejectedExecutionException e) {
+            completion.run();
+        }
+    }
+
+    /**
+     * Starts a transfer manager upload once the destination partition
+     * has room. Unlike single requests this blocks the caller while the
+     * partition is at its limit, as an {@link Upload} cannot exist before
+     * it has started.
+     */
+    Upload upload(final UploadRequest request) {
+        final PutObjectRequest put = request.putObjectRequest();
+        final List<Bandwidth> bandwidth = bandwidth(put.bucket());
+        final UploadRequest throttled = bandwidth.isEmpty() ? request : request.toBuilder()
+                .requestBody(ThrottledPublisher.body(request.requestBody(), bandwidth))
+                .build();
+        written(put.bucket(), put.key());
+        final Upload upload = transfer(put.bucket(), put.key(), () -> transferManager.upload(throttled), Upload::completionFuture);
+        upload.completionFuture().whenComplete((value, throwable) -> written(put.bucket(), put.key()));
+        return upload;
+    }
+
+    /**
+     * Called when a write or delete of the key starts and again when it
+     * has completed, before its caller sees the result. Reads already in
+     * flight for the key can no longer be joined, and lookups cached
+     * before the write are dropped.
+     */
+    private void written(final String bucket, final String key) {
+        coalescer.invalidate(bucket, key);
+        writes(bucket).incrementAndGet();
+    }
+
+    /**
+     * The number of writes and deletes made through this client to the
+     * bucket, counted once each has completed, whether it succeeded or
+     * not. Uploads count once more when they start. Cached lookups
+     * compare it to tell whether they may be stale.
+     */
+    AtomicLong writes(final String bucket) {
+        final AtomicLong count = writes.get(bucket);
+        if (count != null) return count;
+        return writes.computeIfAbsent(bucket, name -> new AtomicLong());
+    }
+
+    /**
+     * Starts a transfer manager download once the source partition has
+     * room. See {@link #upload(UploadRequest)}. File downloads are written
+     * by the transfer manager itself and are not subject to bandwidth
+     * limits.
+     */
+    FileDownload downloadFile(final DownloadFileRequest request) {
+        final GetObjectRequest get = request.getObjectRequest();
+        return transfer(get.bucket(), get.key(), () -> transferManager.downloadFile(request), FileDownload::completionFuture);
+    }
+
+    private <T> T transfer(final String bucket, final String key, final Supplier<T> start,
+                           final Function<T, CompletableFuture<?>> completion) {
+        final CompletableFuture<Void> tracker = new CompletableFuture<>();
+        if (!register(tracker)) throw closedException();
+
+        // Permit before slot, as in execute
+        final ConcurrencyLimits.Permit permit;
+        final PriorityScheduler.Slot slot;
+        try {
+            permit = join(await(limits.acquire(bucket, key)));
+        } catch (final RuntimeException | Error e) {
+            tracker.complete(null);
+            throw e;
+        }
+        try {
+            slot = join(await(schedule(new PriorityScheduler.Ticket(Priority.Scope.current()))));
+        } catch (final RuntimeException | Error e) {
+            permit.discard();
+            tracker.complete(null);
+            throw e;
+        }
+
+        // Closed and timed out while waiting for a permit or slot
+        if (tracker.isDone()) {
+            permit.discard();
+            release(slot);
+            throw closedException();
+        }
+
+        final T transfer;
+        try {
+            transfer = start.get();
+        } catch (final RuntimeException | Error e) {
+            permit.discard();
+            release(slot);
+            tracker.complete(null);
+            throw e;
+        }
+
+        final CompletableFuture<?> done = completion.apply(transfer);
+        done.whenComplete((value, throwable) -> {
+            permit.release(throwable);
+            release(slot);
+            tracker.complete(null);
+        });
+        tracker.whenComplete((value, throwable) -> {
+            if (tracker.isCancelled()) done.cancel(true);
+        });
+        return transfer;
+    }
+
+    /**
+     * Tracks work so that {@link #close(Duration)} can wait for it. The
+     * future is added before {@code closed} is checked, so work is either
+     * refused or seen by a concurrent close, never neither.
+     */
+    private boolean register(final CompletableFuture<?> future) {
+        inFlight.add(future);
+        if (closed) {
+            inFlight.remove(future);
+            return false;
+        }
+        future.whenComplete((value, throwable) -> inFlight.remove(future));
+        return true;
+    }
+
+    /**
+     * Tracks a wait for a partition permit or a scheduler slot, so that
+     * {@link #close(Duration)} can fail work that has not started rather
+     * than wait for room that may not come before the timeout.
+     */
+    private <T> CompletableFuture<T> await(final CompletableFuture<T> wait) {
+        if (wait.isDone()) return wait;
+
+        waiting.add(wait);
+        wait.whenComplete((value, throwable) -> waiting.remove(wait));
+        if (closed) wait.completeExceptionally(closedException());
+        return wait;
+    }
+
+    /**
+     * Sends a request that bypasses the scheduler and limits, such as a
+     * bucket operation, tracked like any other so that
+     * {@link #close(Duration)} waits for it.
+     */
+    private <T> T call(final Supplier<CompletableFuture<T>> request) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        if (!register(result)) throw closedException();
+
+        final CompletableFuture<T> response;
+        try {
+            response = request.get();
+        } catch (final RuntimeException | Error e) {
+            result.completeExceptionally(e);
+            throw e;
+        }
+
+        response.whenComplete((value, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(unwrap(throwable));
+            } else {
+                result.complete(value);
+            }
+        });
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) response.cancel(true);
+        });
+        return join(result);
+    }
+
+    /**
+     * Tracks the body of a streamed response until the caller closes it,
+     * so that {@link #close(Duration)} waits for the body to be read and
+     * aborts it once the timeout has expired.
+     */
+    <R> ResponseInputStream<R> track(final ResponseInputStream<R> stream) {
+        final CompletableFuture<Void> body = new CompletableFuture<>();
+        if (!register(body)) {
+            stream.abort();
+            throw closedException();
+        }
+
+        body.whenComplete((value, throwable) -> {
+            if (body.isCancelled()) stream.abort();
+        });
+        return new TrackedStream<>(stream, body);
+    }
+
+    private void checkOpen() {
+        if (closed) throw closedException();
+    }
+
+    private static IllegalStateException closedException() {
+        return new IllegalStateException("S3Client is closed");
+    }
+
+    /**
+     * Closes this client, waiting up to 30 seconds for requests and
+     * transfers in flight. See {@link #close(Duration)}.
+     */
+    @Override
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT);
+    }
+
+    /**
+     * Stops accepting new work, waits up to {@code timeout} for requests
+     * and transfers in flight to finish, then shuts down the executor and
+     * transfer manager this client created. The {@link S3AsyncClient} is
+     * only closed if the builder was told to with
+     * {@link Builder#closeS3(boolean)}.
+     *
+     * <p>Streams returned by {@link S3Bucket#getObject(String)} and
+     * {@link S3File#getValueAsStream()} count as in flight until they are
+     * closed. Requests still waiting for room under the
+     * {@link ConcurrencyLimits} or the {@link PriorityScheduler} have not
+     * started and fail at once with an {@link IllegalStateException}.
+     *
+     * <p>Work still in flight when the timeout expires is cancelled, and
+     * open streams are aborted. After closing, new requests fail with an
+     * {@link IllegalStateException}. When other clients were built with
+     * {@link Builder#shareResourcesWith(S3Client)}, the shutdown waits
+     * until they have been closed as well. Closing an already closed
+     * client has no further effect.
+     *
+     * @param timeout how long to wait for work in flight
+     * @return {@code true} if all work finished before the timeout
+     */
+    public synchronized boolean close(final Duration timeout) {
+        if (closed) return inFlight.isEmpty();
+        closed = true;
+
+        for (final CompletableFuture<?> wait : waiting) {
+            wait.completeExceptionally(closedException());
+        }
+
+        boolean drained = true;
+        try {
+            CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0]))
+                    .get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (final ExecutionException e) {
+            // All finished; individual failures were reported to their callers
+        } catch (final TimeoutException e) {
+            drained = false;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drained = false;
+        }
+
+        if (!drained) {
+            for (final CompletableFuture<?> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+
+        final boolean finished = drained;
+        shared.release(() -> {
+            if (ownsTransferManager) transferManager.close();
+            if (ownsExecutor) {
+                if (finished) {
+                    executor.shutdown();
+                } else {
+                    executor.shutdownNow();
+                }
+            }
+            if (ownsS3) s3.close();
+        });
+
+        return drained;
+    }
+
+    /**
+     * @return {@code true} once {@link #close()} has been called
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
     static <T> T join(final CompletableFuture<T> future) {
         try {
             return future.join();
@@ -181,7 +805,277 @@ public class S3Client {
         }
     }
 
+    /**
+     * Strips the {@link CompletionException} wrappers that dependent
+     * stages add, returning the exception that actually failed the call.
+     */
+    static Throwable unwrap(final Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Returns {@code true} if the given failure is an S3 404 response.
+     */
+    static boolean isNotFound(final Throwable throwable) {
+        final Throwable cause = unwrap(throwable);
+        return cause instanceof S3Exception && ((S3Exception) cause).statusCode() == 404;
+    }
+
     public static S3Client from(final S3AsyncClient client) {
         return new S3Client(client);
     }
+
+    /**
+     * Counts the clients using one set of resources: the client that
+     * created them and those built with
+     * {@link Builder#shareResourcesWith}. Each client hands over the
+     * shutdown of what it owns when it is closed, and the shutdowns run
+     * once the last of the clients is closed.
+     */
+    private static class Shared {
+        private final List<Runnable> shutdowns = new ArrayList<>();
+        private int users = 1;
+
+        synchronized Shared retain() {
+            if (users == 0) throw closedException();
+            users++;
+            return this;
+        }
+
+        void release(final Runnable shutdown) {
+            final List<Runnable> run;
+            synchronized (this) {
+                shutdowns.add(shutdown);
+                if (--users > 0) return;
+                run = new ArrayList<>(shutdowns);
+                shutdowns.clear();
+            }
+            run.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * A streamed response body that tells the client when the caller has
+     * closed or aborted it.
+     */
+    private static class TrackedStream<R> extends ResponseInputStream<R> {
+        private final ResponseInputStream<R> stream;
+        private final CompletableFuture<Void> body;
+
+        TrackedStream(final ResponseInputStream<R> stream, final CompletableFuture<Void> body) {
+            super(stream.response(), stream);
+            this.stream = stream;
+            this.body = body;
+        }
+
+        @Override
+        public void abort() {
+            try {
+                stream.abort();
+            } finally {
+                body.complete(null);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                body.complete(null);
+            }
+        }
+    }
+
+    public static class Builder {
+        private S3AsyncClient s3;
+        private Hedging hedging;
+        private ConcurrencyLimits limits;
+        private BufferPool bufferPool;
+        private PriorityScheduler priorities;
+        private Bandwidth bandwidth;
+        private final Map<String, Bandwidth> bucketBandwidth = new HashMap<>();
+        private ExecutorService executor;
+        private int threads = DEFAULT_THREADS;
+        private boolean virtualThreads;
+        private Executor callbackExecutor;
+        private S3TransferManager transferManager;
+        private Consumer<S3TransferManager.Builder> transferManagerCustomizer;
+        private boolean closeS3;
+        private Shared shared;
+
+        /**
+         * Sets the AWS async S3 client. Required.
+         */
+        public Builder s3(final S3AsyncClient s3) {
+            this.s3 = s3;
+            return this;
+        }
+
+        /**
+         * Enables hedged requests. Off by default.
+         *
+         * @see Hedging
+         */
+        public Builder hedging(final Hedging hedging) {
+            this.hedging = hedging;
+            return this;
+        }
+
+        /**
+         * Sets the per-partition concurrency limits. Defaults to
+         * {@code ConcurrencyLimits.builder().build()}.
+         *
+         * @see ConcurrencyLimits
+         */
+        public Builder concurrencyLimits(final ConcurrencyLimits limits) {
+            this.limits = limits;
+            return this;
+        }
+
+        /**
+         * Sets the budget for bytes held in memory by requests in flight.
+         * Defaults to {@code BufferPool.builder().build()}.
+         *
+         * @see BufferPool
+         */
+        public Builder bufferPool(final BufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        /**
+         * Schedules requests by {@link Priority} class. Off by default, in
+         * which case all classes are treated alike.
+         *
+         * @see PriorityScheduler
+         */
+        public Builder priorities(final PriorityScheduler priorities) {
+            this.priorities = priorities;
+            return this;
+        }
+
+        /**
+         * Limits the bytes per second of request bodies and response
+         * streams across all buckets. Unlimited by default.
+         *
+         * @see Bandwidth
+         */
+        public Builder bandwidth(final Bandwidth bandwidth) {
+            this.bandwidth = bandwidth;
+            return this;
+        }
+
+        /**
+         * Limits the bytes per second to and from one bucket. Applies in
+         * addition to the client-wide {@link #bandwidth(Bandwidth)}.
+         */
+        public Builder bucketBandwidth(final String bucket, final Bandwidth bandwidth) {
+            this.bucketBandwidth.put(Objects.requireNonNull(bucket, "bucket"), Objects.requireNonNull(bandwidth, "bandwidth"));
+            return this;
+        }
+
+        /**
+         * Sets the executor that pumps {@link java.io.InputStream} uploads.
+         * Each stream upload occupies one thread of it while the stream is
+         * read, so a fixed-size pool limits concurrent stream uploads.
+         * Defaults to a pool of 10 daemon threads.
+         */
+        public Builder executor(final ExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads in the default pool, which is
+         * 10 unless set. Ignored when an
+         * {@link #executor} is set.
+         */
+        public Builder threads(final int threads) {
+            if (threads < 1) throw new IllegalArgumentException("threads must be at least 1: " + threads);
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Pumps stream uploads on a new virtual thread per upload. Requires
+         * Java 21 or later. Ignored when an {@link #executor} is set.
+         */
+        public Builder virtualThreads(final boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Sets the executor on which the futures returned by the
+         * {@code *Async} methods complete, so that dependent stages do not
+         * run on SDK threads. By default they complete on the thread that
+         * received the response.
+         */
+        public Builder callbackExecutor(final Executor callbackExecutor) {
+            this.callbackExecutor = callbackExecutor;
+            return this;
+        }
+
+        /**
+         * Uses an existing transfer manager, which must be built on the
+         * same {@link S3AsyncClient}.
+         */
+        public Builder transferManager(final S3TransferManager transferManager) {
+            this.transferManager = transferManager;
+            return this;
+        }
+
+        /**
+         * Customizes the transfer manager created for this client. The
+         * async client is already set on the builder passed in.
+         */
+        public Builder transferManager(final Consumer<S3TransferManager.Builder> customizer) {
+            this.transferManagerCustomizer = customizer;
+            return this;
+        }
+
+        /**
+         * Closes the {@link S3AsyncClient} when this client is closed.
+         * Off by default, as the async client is usually created and
+         * owned by the caller.
+         */
+        public Builder closeS3(final boolean closeS3) {
+            this.closeS3 = closeS3;
+            return this;
+        }
+
+        /**
+         * Uses the async client, transfer manager, executors and buffer
+         * pool of an existing client rather than creating new ones. Hedging and
+         * concurrency limits are not shared unless the same instances are
+         * passed explicitly.
+         *
+         * <p>The clients may be closed in any order. Resources are shut
+         * down, as {@link S3Client#close(Duration)} describes for the
+         * client that created them, once every client sharing them has
+         * been closed.
+         *
+         * @throws IllegalStateException if {@code client} is already closed
+         */
+        public Builder shareResourcesWith(final S3Client client) {
+            client.checkOpen();
+            this.shared = client.shared;
+            this.s3 = client.s3;
+            this.transferManager = client.transferManager;
+            this.executor = client.executor;
+            this.callbackExecutor = client.callbackExecutor;
+            this.bufferPool = client.bufferPool;
+            this.closeS3 = false;
+            return this;
+        }
+
+        public S3Client build() {
+            return new S3Client(this);
+        }
+    }
 }
@@ -16,10 +16,9 @@
  */
 package org.tomitribe.jaws.s3;
 
-import org.tomitribe.util.IO;
+import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.ResponseInputStream;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
-import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.CommonPrefix;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
@@ -37,17 +36,21 @@ import software.amazon.awssdk.transfer.s3.model.UploadRequest;
 import software.amazon.awssdk.transfer.s3.progress.TransferListener;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.UncheckedIOException;
-import java.lang.reflect.Proxy;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 import static org.tomitribe.jaws.s3.S3Client.asStream;
@@ -74,9 +77,23 @@ import static org.tomitribe.jaws.s3.S3Client.asStream;
  */
 public class S3File {
 
+    static final int DELETE_WINDOW = 32;
+
+    private static final VarHandle NODE;
+
+    static {
+        try {
+            NODE = MethodHandles.lookup().findVarHandle(S3File.class, "node", Node.class);
+        } catch (final ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private final S3Bucket bucket;
     private final Path path;
-    private final AtomicReference<Node> node = new AtomicReference<>();
+    private volatile Node node;
+    private volatile ChildCache children;
+    private volatile Object proxy;
 
     static String stripQuotes(final String eTag) {
         if (eTag == null) return null;
@@ -87,21 +104,25 @@ public class S3File {
     }
 
     S3File(final S3Bucket bucket, final S3Object summary) {
+        this(bucket, Path.fromKey(summary.key()), summary);
+    }
+
+    S3File(final S3Bucket bucket, final Path path, final S3Object summary) {
         this.bucket = bucket;
-        this.path = Path.fromKey(summary.key());
-        this.node.set(new ObjectSummary(summary));
+        this.path = path;
+        this.node = new ObjectSummary(summary);
     }
 
     S3File(final S3Bucket bucket, final String key, final HeadObjectResponse response) {
         this.bucket = bucket;
         this.path = Path.fromKey(key);
-        this.node.set(new Metadata(ObjectMetadata.fromHead(response)));
+        this.node = new Metadata(ObjectMetadata.fromHead(response));
     }
 
     S3File(final S3Bucket bucket, final Path path, final Class<? extends Node> type) {
         this.bucket = bucket;
         this.path = path;
-        this.node.set(nodeInstance(type));
+        this.node = nodeInstance(type);
     }
 
     private Node nodeInstance(final Class<? extends Node> type) {
@@ -112,10 +133,39 @@ public class S3File {
         throw new IllegalArgumentException("Unsupported node type: " + type.getSimpleName());
     }
 
+    /**
+     * Swaps in a new node if no other thread has replaced the expected
+     * one in the meantime. Children looked up under the old state are
+     * forgotten, as they may not apply to the new one.
+     */
+    private boolean compareAndSet(final Node expected, final Node replacement) {
+        if (!NODE.compareAndSet(this, expected, replacement)) return false;
+        children = null;
+        return true;
+    }
+
     static S3File rootFile(final S3Bucket bucket) {
         return new S3File(bucket, Path.ROOT, Directory.class);
     }
 
+    static S3File directory(final S3Bucket bucket, final String prefix) {
+        return directory(bucket, Path.fromKey(prefix));
+    }
+
+    static S3File directory(final S3Bucket bucket, final Path path) {
+        return new S3File(bucket, path, Directory.class);
+    }
+
+    /**
+     * Creates files for the objects of one listing in the order they
+     * are listed, letting entries of the same directory share a parent.
+     * The returned function is not thread-safe.
+     */
+    static Function<S3Object, S3File> fromListing(final S3Bucket bucket) {
+        final Path.Siblings siblings = new Path.Siblings();
+        return object -> new S3File(bucket, siblings.fromKey(object.key()), object);
+    }
+
     /**
      * Returns the parsed path of this S3 object within its bucket.
      *
@@ -131,7 +181,7 @@ public class S3File {
      * @return {@code true} if the object exists
      */
     public boolean exists() {
-        return node.get().exists();
+        return node.exists();
     }
 
     /**
@@ -141,7 +191,7 @@ public class S3File {
      * @return {@code true} if this is a file
      */
     public boolean isFile() {
-        return node.get().isFile();
+        return node.isFile();
     }
 
     /**
@@ -151,7 +201,7 @@ public class S3File {
      * @return {@code true} if this is a directory
      */
     public boolean isDirectory() {
-        return node.get().isDirectory();
+        return node.isDirectory();
     }
 
     /**
@@ -174,7 +224,31 @@ public class S3File {
      * @return the child S3File
      */
     public S3File getFile(final String name) {
-        return node.get().getFile(name);
+        final long writes = bucket.writes();
+
+        final ChildCache cache = children;
+        if (cache != null) {
+            final S3File cached = cache.get(name, writes);
+            if (cached != null) return cached;
+        }
+
+        final S3File child = node.getFile(name);
+        children().put(name, child, writes);
+        return child;
+    }
+
+    private ChildCache children() {
+        ChildCache cache = children;
+        if (cache == null) {
+            synchronized (this) {
+                cache = children;
+                if (cache == null) {
+                    cache = new ChildCache();
+                    children = cache;
+                }
+            }
+        }
+        return cache;
     }
 
     /**
@@ -185,7 +259,7 @@ public class S3File {
      */
     @Recursive
     public Stream<S3File> files() {
-        return node.get().files();
+        return node.files();
     }
 
     /**
@@ -196,7 +270,20 @@ public class S3File {
      * @return a stream of matching S3Files
      */
     public Stream<S3File> files(final ListObjectsRequest request) {
-        return node.get().files(request);
+        return node.files(request, KeyFilter.ALL);
+    }
+
+    /**
+     * Returns the objects matching the given {@link ListObjectsRequest}
+     * whose keys pass the filter. Objects that do not pass are skipped
+     * before an S3File is created for them.
+     *
+     * @param request the listing request with prefix, delimiter, etc.
+     * @param keys    the filter applied to each key
+     * @return a stream of matching S3Files
+     */
+    Stream<S3File> files(final ListObjectsRequest request, final KeyFilter keys) {
+        return node.files(request, keys);
     }
 
     /**
@@ -206,7 +293,7 @@ public class S3File {
      * @return a stream of all descendant S3Files including directories
      */
     public Stream<S3File> walk() {
-        return node.get().walk(WalkingIterator.INFINITE, "/");
+        return node.walk(WalkingIterator.INFINITE, "/");
     }
 
     /**
@@ -217,7 +304,7 @@ public class S3File {
      * @return a stream of descendant S3Files up to the specified depth
      */
     public Stream<S3File> walk(final int maxDepth) {
-        return node.get().walk(maxDepth, "/");
+        return node.walk(maxDepth, "/");
     }
 
     /**
@@ -228,7 +315,7 @@ public class S3File {
      * @return a stream of all descendant S3Files including directories
      */
     Stream<S3File> walk(final String delimiter) {
-        return node.get().walk(WalkingIterator.INFINITE, delimiter);
+        return node.walk(WalkingIterator.INFINITE, delimiter);
     }
 
     /**
@@ -240,7 +327,7 @@ public class S3File {
      * @return a stream of descendant S3Files up to the specified depth
      */
     Stream<S3File> walk(final int maxDepth, final String delimiter) {
-        return node.get().walk(maxDepth, delimiter);
+        return node.walk(maxDepth, delimiter);
     }
 
     /**
@@ -252,7 +339,7 @@ public class S3File {
      * @return a stream of all descendant S3Files including directories
      */
     Stream<S3File> walk(final ListObjectsRequest request, final String delimiter) {
-        return node.get().walk(request, WalkingIterator.INFINITE, delimiter);
+        return node.walk(request, WalkingIterator.INFINITE, delimiter, KeyFilter.ALL);
     }
 
     /**
@@ -265,7 +352,21 @@ public class S3File {
      * @return a stream of descendant S3Files up to the specified depth
      */
     Stream<S3File> walk(final ListObjectsRequest request, final int maxDepth, final String delimiter) {
-        return node.get().walk(request, maxDepth, delimiter);
+        return node.walk(request, maxDepth, delimiter, KeyFilter.ALL);
+    }
+
+    /**
+     * Walks the directory tree with no depth limit, emitting only the
+     * entries whose keys pass the filter. Directories that do not pass
+     * are still descended into.
+     *
+     * @param request   the base listing request (prefix, etc.)
+     * @param delimiter the delimiter for splitting the key hierarchy
+     * @param keys      the filter applied to each key
+     * @return a stream of the matching descendant S3Files
+     */
+    Stream<S3File> walk(final ListObjectsRequest request, final String delimiter, final KeyFilter keys) {
+        return node.walk(request, WalkingIterator.INFINITE, delimiter, keys);
     }
 
     /**
@@ -275,7 +376,7 @@ public class S3File {
      * @return a stream of immediate child S3Files
      */
     Stream<S3File> list() {
-        return node.get().list();
+        return node.list();
     }
 
     /**
@@ -287,7 +388,18 @@ public class S3File {
      * @return a stream of matching immediate child S3Files
      */
     Stream<S3File> list(final ListObjectsRequest request) {
-        return node.get().list(request);
+        return node.list(request, KeyFilter.ALL);
+    }
+
+    /**
+     * Returns the immediate children whose keys pass the filter.
+     *
+     * @param request the listing request with prefix, marker, etc.
+     * @param keys    the filter applied to each key and common prefix
+     * @return a stream of matching immediate child S3Files
+     */
+    Stream<S3File> list(final ListObjectsRequest request, final KeyFilter keys) {
+        return node.list(request, keys);
     }
 
     /**
@@ -325,7 +437,7 @@ public class S3File {
      * @return an input stream of the object content
      */
     public InputStream getValueAsStream() {
-        return node.get().getValueAsStream();
+        return node.getValueAsStream();
     }
 
     /**
@@ -334,7 +446,7 @@ public class S3File {
      * @return the object content
      */
     public String getValueAsString() {
-        return node.get().getValueAsString();
+        return node.getValueAsString();
     }
 
     /**
@@ -343,7 +455,7 @@ public class S3File {
      * @param inputStream the input stream to read from
      */
     public void setValueAsStream(final InputStream inputStream) {
-        node.get().setValueAsStream(inputStream);
+        node.setValueAsStream(inputStream);
     }
 
     /**
@@ -352,7 +464,7 @@ public class S3File {
      * @param file the local file whose content will be uploaded
      */
     public void setValueAsFile(final File file) {
-        node.get().setValueAsFile(file);
+        node.setValueAsFile(file);
     }
 
     /**
@@ -361,7 +473,7 @@ public class S3File {
      * @param value the new content
      */
     public void setValueAsString(final String value) {
-        node.get().setValueAsString(value);
+        node.setValueAsString(value);
     }
 
     /**
@@ -379,7 +491,7 @@ public class S3File {
      * @return the ETag, or {@code null} if not yet fetched
      */
     public String getETag() {
-        return node.get().getETag();
+        return node.getETag();
     }
 
     /**
@@ -388,7 +500,7 @@ public class S3File {
      * @return the content length in bytes
      */
     public long getSize() {
-        return node.get().getSize();
+        return node.getSize();
     }
 
     /**
@@ -397,7 +509,7 @@ public class S3File {
      * @return the last modified instant, or {@code null} if not available
      */
     public Instant getLastModified() {
-        return node.get().getLastModified();
+        return node.getLastModified();
     }
 
     /**
@@ -407,7 +519,99 @@ public class S3File {
      * @return the object metadata
      */
     public ObjectMetadata getObjectMetadata() {
-        return node.get().getObjectMetadata();
+        return node.getObjectMetadata();
+    }
+
+    /**
+     * Returns the size of this object if it is already known from a
+     * listing or an earlier request, without issuing a request.
+     *
+     * @return the size in bytes, or {@code -1} if not known
+     */
+    long getKnownSize() {
+        final Node current = node;
+        if (current instanceof ObjectSummary || current instanceof Metadata) {
+            return current.getSize();
+        }
+        return -1;
+    }
+
+    /**
+     * The current state of this file, only to be compared by identity.
+     * It changes once a request has resolved or replaced what was known,
+     * so comparing it before and after a call tells whether that call
+     * made a request for this file.
+     */
+    Object state() {
+        return node;
+    }
+
+    /**
+     * Replaces listing data with the full metadata of a HEAD request.
+     * Files that already hold HEAD or GET metadata, directories and
+     * objects known not to exist are left as they are.
+     *
+     * @return a future that completes with this file once its node is updated
+     */
+    CompletableFuture<S3File> loadMetadataAsync() {
+        final Node current = node;
+        if (current instanceof Metadata || current instanceof Directory || current instanceof NewObject) {
+            return CompletableFuture.completedFuture(this);
+        }
+        return resolveAsync(current).thenApply(resolved -> this);
+    }
+
+    /**
+     * Asynchronous variant of {@link #exists()}. If the state of this
+     * object is not yet known a HEAD request is issued and the result
+     * is kept once the request completes.
+     *
+     * @return a future that completes with {@code true} if the object exists
+     */
+    public CompletableFuture<Boolean> existsAsync() {
+        return node.existsAsync();
+    }
+
+    /**
+     * Asynchronous variant of {@link #getValueAsString()}. The content is
+     * decoded as UTF-8 and the response metadata is kept once the request
+     * completes.
+     *
+     * @return a future for the object content
+     */
+    public CompletableFuture<String> getValueAsStringAsync() {
+        return getValueAsBytesAsync().thenApply(bytes -> new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the full object content into memory without blocking the
+     * calling thread. The response metadata is kept once the request
+     * completes.
+     *
+     * @return a future for the object content
+     */
+    public CompletableFuture<byte[]> getValueAsBytesAsync() {
+        return node.getValueAsBytesAsync();
+    }
+
+    /**
+     * Asynchronous variant of {@link #getObjectMetadata()}.
+     *
+     * @return a future for the object metadata
+     */
+    public CompletableFuture<ObjectMetadata> getObjectMetadataAsync() {
+        return node.getObjectMetadataAsync();
+    }
+
+    /**
+     * Returns immediate child files and directories (one level deep)
+     * without blocking the calling thread. All pages of the listing are
+     * fetched before the future completes.
+     *
+     * @return a future for the immediate child S3Files
+     */
+    public CompletableFuture<List<S3File>> listAsync() {
+        return node.listAsync();
     }
 
     /**
@@ -424,11 +628,15 @@ public class S3File {
      * @return a proxy instance backed by this S3File
      */
     public <T> T as(final Class<T> clazz) {
-        return (T) Proxy.newProxyInstance(
-                Thread.currentThread().getContextClassLoader(),
-                new Class[]{clazz},
-                new S3Handler(this, clazz)
-        );
+        final ProxyType type = ProxyType.of(clazz);
+
+        // Proxies hold no state of their own, so the last one is reused
+        final Object cached = proxy;
+        if (cached != null && type.isProxy(cached)) return (T) cached;
+
+        final Object created = type.newProxy(new S3Handler(this, type));
+        proxy = created;
+        return (T) created;
     }
 
     @Override
@@ -452,7 +660,7 @@ public class S3File {
      * Deletes this object from S3.
      */
     public void delete() {
-        node.get().delete();
+        node.delete();
     }
 
     /**
@@ -462,7 +670,34 @@ public class S3File {
      *              when this is a directory
      */
     public void delete(final boolean force) {
-        node.get().delete(force);
+        node.delete(force);
+    }
+
+    /**
+     * Asynchronous variant of {@link #delete()}.
+     *
+     * @return a future that completes once the object is deleted
+     */
+    public CompletableFuture<Void> deleteAsync() {
+        return node.deleteAsync();
+    }
+
+    /**
+     * Asynchronous variant of {@link #delete(boolean)}.
+     *
+     * <p>A forced delete of a directory works through the listing one
+     * page at a time and issues up to 32 deletes at a time. If one of them fails the future fails with its exception
+     * and no further deletes are issued. Objects deleted before the
+     * failure stay deleted, the failure does not say which they were,
+     * and this file still refers to the directory; list it again to
+     * see what is left.
+     *
+     * @param force if {@code true}, recursively deletes all children
+     *              when this is a directory
+     * @return a future that completes once the object is deleted
+     */
+    public CompletableFuture<Void> deleteAsync(final boolean force) {
+        return node.deleteAsync(force);
     }
 
     /**
@@ -639,7 +874,7 @@ public class S3File {
             builder.addTransferListener(listener);
         }
 
-        return node.get().upload(builder.build());
+        return node.upload(builder.build());
     }
 
     /**
@@ -662,14 +897,14 @@ public class S3File {
      */
     public Upload upload(final UploadRequest uploadRequest, final TransferListener listener) {
         if (listener == null) {
-            return node.get().upload(uploadRequest);
+            return node.upload(uploadRequest);
         }
 
         final UploadRequest withListener = uploadRequest.toBuilder()
                 .addTransferListener(listener)
                 .build();
 
-        return node.get().upload(withListener);
+        return node.upload(withListener);
     }
 
     /**
@@ -701,7 +936,7 @@ public class S3File {
             builder.addTransferListener(listener);
         }
 
-        return node.get().download(builder.build());
+        return node.download(builder.build());
     }
 
     /**
@@ -733,7 +968,7 @@ public class S3File {
             builder.addTransferListener(listener);
         }
 
-        return node.get().download(builder.build());
+        return node.download(builder.build());
     }
 
     /**
@@ -765,7 +1000,7 @@ public class S3File {
             return Stream.of();
         }
 
-        default Stream<S3File> files(final ListObjectsRequest request) {
+        default Stream<S3File> files(final ListObjectsRequest request, final KeyFilter keys) {
             return Stream.of();
         }
 
@@ -773,7 +1008,8 @@ public class S3File {
             return Stream.of();
         }
 
-        default Stream<S3File> walk(final ListObjectsRequest request, final int maxDepth, final String delimiter) {
+        default Stream<S3File> walk(final ListObjectsRequest request, final int maxDepth, final String delimiter,
+                                    final KeyFilter keys) {
             return Stream.of();
         }
 
@@ -781,7 +1017,7 @@ public class S3File {
             return Stream.of();
         }
 
-        default Stream<S3File> list(final ListObjectsRequest request) {
+        default Stream<S3File> list(final ListObjectsRequest request, final KeyFilter keys) {
             return Stream.of();
         }
 
@@ -812,6 +1048,22 @@ public class S3File {
         FileDownload download(DownloadFileRequest request);
 
         ObjectMetadata getObjectMetadata();
+
+        CompletableFuture<Boolean> existsAsync();
+
+        CompletableFuture<byte[]> getValueAsBytesAsync();
+
+        CompletableFuture<ObjectMetadata> getObjectMetadataAsync();
+
+        default CompletableFuture<List<S3File>> listAsync() {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        default CompletableFuture<Void> deleteAsync() {
+            return deleteAsync(false);
+        }
+
+        CompletableFuture<Void> deleteAsync(final boolean force);
     }
 
     /**
@@ -847,8 +1099,8 @@ public class S3File {
         }
 
         @Override
-        public Stream<S3File> files(final ListObjectsRequest request) {
-            return listRequest(request);
+        public Stream<S3File> files(final ListObjectsRequest request, final KeyFilter keys) {
+            return listRequest(request, keys);
         }
 
         @Override
@@ -863,8 +1115,9 @@ public class S3File {
         }
 
         @Override
-        public Stream<S3File> walk(final ListObjectsRequest request, final int maxDepth, final String delimiter) {
-            return performWalk(request, maxDepth, delimiter);
+        public Stream<S3File> walk(final ListObjectsRequest request, final int maxDepth, final String delimiter,
+                                   final KeyFilter keys) {
+            return performWalk(request, maxDepth, delimiter, keys);
         }
 
         @Override
@@ -873,8 +1126,8 @@ public class S3File {
         }
 
         @Override
-        public Stream<S3File> list(final ListObjectsRequest request) {
-            return performSingleLevelListing(request);
+        public Stream<S3File> list(final ListObjectsRequest request, final KeyFilter keys) {
+            return performSingleLevelListing(request, keys);
         }
 
         @Override
@@ -928,7 +1181,7 @@ public class S3File {
 
             } else {
                 files().forEach(S3File::delete);
-                node.compareAndSet(this, new NewObject());
+                compareAndSet(this, new NewObject());
 
             }
         }
@@ -947,6 +1200,82 @@ public class S3File {
         public ObjectMetadata getObjectMetadata() {
             throw new UnsupportedOperationException("S3File refers to a directory");
         }
+
+        @Override
+        public CompletableFuture<Boolean> existsAsync() {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public CompletableFuture<byte[]> getValueAsBytesAsync() {
+            return CompletableFuture.failedFuture(new UnsupportedOperationException("S3File refers to a directory"));
+        }
+
+        @Override
+        public CompletableFuture<ObjectMetadata> getObjectMetadataAsync() {
+            return CompletableFuture.failedFuture(new UnsupportedOperationException("S3File refers to a directory"));
+        }
+
+        @Override
+        public CompletableFuture<List<S3File>> listAsync() {
+            return performSingleLevelListingAsync();
+        }
+
+        /**
+         * A single key is enough to tell the directory is not empty. A
+         * forced delete deletes each page of the listing before fetching
+         * the next, so only one page of files is held at a time.
+         */
+        @Override
+        public CompletableFuture<Void> deleteAsync(final boolean force) {
+            final ListObjectsRequest request = ListObjectsRequest.builder()
+                    .bucket(bucket.getName())
+                    .prefix(path.getSearchPrefix())
+                    .build();
+
+            final Priority.Level priority = Priority.Scope.current();
+            if (!force) {
+                final ListObjectsRequest first = request.toBuilder().maxKeys(1).build();
+                return bucket.listObjectsAsync(first, priority).thenAccept(response -> {
+                    if (!response.contents().isEmpty()) {
+                        throw new UnsupportedOperationException("S3File refers to a non empty directory. Use force delete flag.");
+                    }
+                });
+            }
+
+            return deletePagesAsync(request, priority).thenAccept(deleted -> {
+                if (deleted) compareAndSet(this, new NewObject());
+            });
+        }
+
+        /**
+         * Deletes the objects of this page of the listing, then moves on
+         * to the next page.
+         *
+         * @return a future for whether any object was deleted
+         */
+        private CompletableFuture<Boolean> deletePagesAsync(final ListObjectsRequest request, final Priority.Level priority) {
+            return bucket.listObjectsAsync(request, priority).thenCompose(response -> {
+                final Path.Siblings siblings = new Path.Siblings();
+                final List<S3File> files = new ArrayList<>();
+                for (final S3Object object : response.contents()) {
+                    files.add(new S3File(bucket, siblings.fromKey(object.key()), object));
+                }
+
+                final CompletableFuture<Void> deleted = S3Streams.forEachAsync(files, DELETE_WINDOW, file -> {
+                    try (Priority.Scope scope = priority.scope()) {
+                        return file.deleteAsync();
+                    }
+                });
+
+                if (!response.isTruncated()) {
+                    return deleted.thenApply(ignored -> !files.isEmpty());
+                }
+
+                final ListObjectsRequest next = request.toBuilder().marker(S3Bucket.nextMarker(response)).build();
+                return deleted.thenCompose(ignored -> deletePagesAsync(next, priority)).thenApply(ignored -> true);
+            });
+        }
     }
 
     /**
@@ -1026,7 +1355,7 @@ public class S3File {
         @Override
         public void delete(final boolean ignore) {
             bucket.deleteObject(getAbsoluteName());
-            node.compareAndSet(this, new NewObject());
+            compareAndSet(this, new NewObject());
         }
 
         @Override
@@ -1034,6 +1363,26 @@ public class S3File {
             return metadata;
         }
 
+        @Override
+        public CompletableFuture<Boolean> existsAsync() {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public CompletableFuture<byte[]> getValueAsBytesAsync() {
+            return readAndReplaceAsync(this);
+        }
+
+        @Override
+        public CompletableFuture<ObjectMetadata> getObjectMetadataAsync() {
+            return CompletableFuture.completedFuture(metadata);
+        }
+
+        @Override
+        public CompletableFuture<Void> deleteAsync(final boolean ignore) {
+            return deleteAndReplaceAsync(this, getAbsoluteName());
+        }
+
         @Override
         public Upload upload(final UploadRequest request) {
             return uploadAndReplace(this, request);
@@ -1041,7 +1390,7 @@ public class S3File {
 
         @Override
         public FileDownload download(final DownloadFileRequest request) {
-            return bucket.getClient().getTransferManager().downloadFile(request);
+            return bucket.getClient().downloadFile(request);
         }
     }
 
@@ -1052,11 +1401,23 @@ public class S3File {
      */
     private class ObjectSummary implements Node {
         private final S3Object summary;
+        private volatile ObjectMetadata metadata;
 
         public ObjectSummary(final S3Object summary) {
             this.summary = summary;
         }
 
+        /**
+         * Called at most once by the listing metadata, the first time the
+         * content type or user metadata is needed. If another call has
+         * already replaced this node with full metadata, no request is made.
+         */
+        private ObjectMetadata loadObjectMetadata() {
+            final Node current = node;
+            if (current instanceof Metadata) return current.getObjectMetadata();
+            return resolve(this).getObjectMetadata();
+        }
+
         @Override
         public boolean exists() {
             return true;
@@ -1121,12 +1482,50 @@ public class S3File {
         @Override
         public void delete(final boolean ignore) {
             bucket.deleteObject(summary.key());
-            node.compareAndSet(this, new NewObject());
+            compareAndSet(this, new NewObject());
         }
 
+        /**
+         * Most listed files never have their metadata read, so it is only
+         * created when first asked for. It must be created once, as its
+         * loader may run at most once.
+         */
         @Override
         public ObjectMetadata getObjectMetadata() {
-            return ObjectMetadata.fromListing(summary);
+            final ObjectMetadata metadata = this.metadata;
+            if (metadata != null) return metadata;
+
+            synchronized (this) {
+                if (this.metadata == null) {
+                    this.metadata = ObjectMetadata.fromListing(summary, this::loadObjectMetadata);
+                }
+                return this.metadata;
+            }
+        }
+
+        @Override
+        public CompletableFuture<Boolean> existsAsync() {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public CompletableFuture<byte[]> getValueAsBytesAsync() {
+            return readAndReplaceAsync(this);
+        }
+
+        /**
+         * The listing metadata loads the rest with a blocking HEAD the
+         * first time it is read, which must not happen on the thread of
+         * an asynchronous caller. The HEAD is made here instead.
+         */
+        @Override
+        public CompletableFuture<ObjectMetadata> getObjectMetadataAsync() {
+            return resolveAsync(this).thenCompose(Node::getObjectMetadataAsync);
+        }
+
+        @Override
+        public CompletableFuture<Void> deleteAsync(final boolean ignore) {
+            return deleteAndReplaceAsync(this, summary.key());
         }
 
         @Override
@@ -1136,7 +1535,7 @@ public class S3File {
 
         @Override
         public FileDownload download(final DownloadFileRequest request) {
-            return bucket.getClient().getTransferManager().downloadFile(request);
+            return bucket.getClient().downloadFile(request);
         }
 
     }
@@ -1219,7 +1618,7 @@ public class S3File {
         @Override
         public void delete(final boolean ignore) {
             bucket.deleteObject(path.getAbsoluteName());
-            node.compareAndSet(this, new NewObject());
+            compareAndSet(this, new NewObject());
         }
 
         @Override
@@ -1227,6 +1626,26 @@ public class S3File {
             return ObjectMetadata.fromPut(result, contentLength);
         }
 
+        @Override
+        public CompletableFuture<Boolean> existsAsync() {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public CompletableFuture<byte[]> getValueAsBytesAsync() {
+            return readAndReplaceAsync(this);
+        }
+
+        @Override
+        public CompletableFuture<ObjectMetadata> getObjectMetadataAsync() {
+            return CompletableFuture.completedFuture(getObjectMetadata());
+        }
+
+        @Override
+        public CompletableFuture<Void> deleteAsync(final boolean ignore) {
+            return deleteAndReplaceAsync(this, path.getAbsoluteName());
+        }
+
         @Override
         public Upload upload(final UploadRequest request) {
             return uploadAndReplace(this, request);
@@ -1234,7 +1653,7 @@ public class S3File {
 
         @Override
         public FileDownload download(final DownloadFileRequest request) {
-            return bucket.getClient().getTransferManager().downloadFile(request);
+            return bucket.getClient().downloadFile(request);
         }
     }
 
@@ -1310,7 +1729,7 @@ public class S3File {
         @Override
         public void delete(final boolean ignore) {
             bucket.deleteObject(path.getAbsoluteName());
-            node.compareAndSet(this, new NewObject());
+            compareAndSet(this, new NewObject());
         }
 
         @Override
@@ -1318,6 +1737,26 @@ public class S3File {
             return resolve(this).getObjectMetadata();
         }
 
+        @Override
+        public CompletableFuture<Boolean> existsAsync() {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public CompletableFuture<byte[]> getValueAsBytesAsync() {
+            return readAndReplaceAsync(this);
+        }
+
+        @Override
+        public CompletableFuture<ObjectMetadata> getObjectMetadataAsync() {
+            return resolveAsync(this).thenCompose(Node::getObjectMetadataAsync);
+        }
+
+        @Override
+        public CompletableFuture<Void> deleteAsync(final boolean ignore) {
+            return deleteAndReplaceAsync(this, path.getAbsoluteName());
+        }
+
         @Override
         public Upload upload(final UploadRequest request) {
             return uploadAndReplace(this, request);
@@ -1325,7 +1764,7 @@ public class S3File {
 
         @Override
         public FileDownload download(final DownloadFileRequest request) {
-            return bucket.getClient().getTransferManager().downloadFile(request);
+            return bucket.getClient().downloadFile(request);
         }
     }
 
@@ -1363,8 +1802,8 @@ public class S3File {
         }
 
         @Override
-        public Stream<S3File> files(final ListObjectsRequest request) {
-            return listRequest(request);
+        public Stream<S3File> files(final ListObjectsRequest request, final KeyFilter keys) {
+            return listRequest(request, keys);
         }
 
         @Override
@@ -1373,8 +1812,9 @@ public class S3File {
         }
 
         @Override
-        public Stream<S3File> walk(final ListObjectsRequest request, final int maxDepth, final String delimiter) {
-            return performWalk(request, maxDepth, delimiter);
+        public Stream<S3File> walk(final ListObjectsRequest request, final int maxDepth, final String delimiter,
+                                   final KeyFilter keys) {
+            return performWalk(request, maxDepth, delimiter, keys);
         }
 
         @Override
@@ -1383,8 +1823,8 @@ public class S3File {
         }
 
         @Override
-        public Stream<S3File> list(final ListObjectsRequest request) {
-            return performSingleLevelListing(request);
+        public Stream<S3File> list(final ListObjectsRequest request, final KeyFilter keys) {
+            return performSingleLevelListing(request, keys);
         }
 
         @Override
@@ -1443,6 +1883,31 @@ public class S3File {
             return resolve(this).getObjectMetadata();
         }
 
+        @Override
+        public CompletableFuture<Boolean> existsAsync() {
+            return resolveAsync(this).thenCompose(Node::existsAsync);
+        }
+
+        @Override
+        public CompletableFuture<byte[]> getValueAsBytesAsync() {
+            return readAndReplaceAsync(this);
+        }
+
+        @Override
+        public CompletableFuture<ObjectMetadata> getObjectMetadataAsync() {
+            return resolveAsync(this).thenCompose(Node::getObjectMetadataAsync);
+        }
+
+        @Override
+        public CompletableFuture<List<S3File>> listAsync() {
+            return performSingleLevelListingAsync();
+        }
+
+        @Override
+        public CompletableFuture<Void> deleteAsync(final boolean force) {
+            return resolveAsync(this).thenCompose(resolved -> resolved.deleteAsync(force));
+        }
+
         @Override
         public Upload upload(final UploadRequest request) {
             return uploadAndReplace(this, request);
@@ -1541,6 +2006,26 @@ public class S3File {
             throw new NoSuchS3ObjectException(getBucketName(), getAbsoluteName());
         }
 
+        @Override
+        public CompletableFuture<Boolean> existsAsync() {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        @Override
+        public CompletableFuture<byte[]> getValueAsBytesAsync() {
+            return CompletableFuture.failedFuture(new NoSuchS3ObjectException(getBucketName(), getAbsoluteName()));
+        }
+
+        @Override
+        public CompletableFuture<ObjectMetadata> getObjectMetadataAsync() {
+            return CompletableFuture.failedFuture(new NoSuchS3ObjectException(getBucketName(), getAbsoluteName()));
+        }
+
+        @Override
+        public CompletableFuture<Void> deleteAsync(final boolean ignore) {
+            return CompletableFuture.failedFuture(new NoSuchS3ObjectException(getBucketName(), getAbsoluteName()));
+        }
+
         @Override
         public Upload upload(final UploadRequest request) {
             return uploadAndReplace(this, request);
@@ -1554,24 +2039,24 @@ public class S3File {
 
     private void writeStringAndReplace(final Node current, final String value) {
         final PutObjectResponse result = bucket.setObjectAsString(path.getAbsoluteName(), value);
-        node.compareAndSet(current, new UpdatedObject(result, 0));
+        compareAndSet(current, new UpdatedObject(result, 0));
     }
 
     private void writeFileAndReplace(final Node current, final File value) {
         final PutObjectResponse result = bucket.setObjectAsFile(path.getAbsoluteName(), value);
-        node.compareAndSet(current, new UpdatedObject(result, 0));
+        compareAndSet(current, new UpdatedObject(result, 0));
     }
 
     private void writeStreamAndReplace(final Node current, final InputStream inputStream) {
         final PutObjectResponse result = bucket.setObjectAsStream(path.getAbsoluteName(), inputStream);
-        node.compareAndSet(current, new UpdatedObject(result, 0));
+        compareAndSet(current, new UpdatedObject(result, 0));
     }
 
     private Upload uploadAndReplace(final Node current, final UploadRequest request) {
         try {
-            return bucket.getClient().getTransferManager().upload(request);
+            return bucket.getClient().upload(request);
         } finally {
-            node.compareAndSet(current, new UploadingObject());
+            compareAndSet(current, new UploadingObject());
         }
     }
 
@@ -1595,34 +2080,87 @@ public class S3File {
         }
         final GetObjectResponse response = responseStream.response();
         final Metadata metadata = new Metadata(ObjectMetadata.fromGet(response));
-        node.compareAndSet(current, metadata);
+        compareAndSet(current, metadata);
         return responseStream;
     }
 
+    /**
+     * Reads through the in-memory GET rather than a stream so that
+     * concurrent reads of the same key share one request.
+     */
     private String readAndReplace(final Node current) {
-        try {
-            try (final InputStream in = openStreamAndReplace(current)) {
-                return IO.slurp(in);
-            }
-        } catch (IOException e) {
-            throw new UncheckedIOException("Cannot read content for " + path.getAbsoluteName(), e);
-        }
+        return S3Client.join(readBytesAndReplaceAsync(current)).asUtf8String();
+    }
+
+    private CompletableFuture<byte[]> readAndReplaceAsync(final Node current) {
+        // The response may be shared with other readers, so hand out a copy
+        return readBytesAndReplaceAsync(current).thenApply(ResponseBytes::asByteArray);
+    }
+
+    private CompletableFuture<ResponseBytes<GetObjectResponse>> readBytesAndReplaceAsync(final Node current) {
+        return bucket.getObjectAsBytesAsync(path.getAbsoluteName()).thenApply(bytes -> {
+            compareAndSet(current, new Metadata(ObjectMetadata.fromGet(bytes.response())));
+            return bytes;
+        });
+    }
+
+    private CompletableFuture<Void> deleteAndReplaceAsync(final Node current, final String key) {
+        return bucket.deleteObjectAsync(key)
+                .thenRun(() -> compareAndSet(current, new NewObject()));
     }
 
     private Stream<S3File> performWalk(final int depth, final String delimiter) {
         return asStream(new WalkingIterator(this, depth, delimiter));
     }
 
-    private Stream<S3File> performWalk(final ListObjectsRequest request, final int depth, final String delimiter) {
-        return asStream(new WalkingIterator(request, this, depth, delimiter));
+    private Stream<S3File> performWalk(final ListObjectsRequest request, final int depth, final String delimiter,
+                                       final KeyFilter keys) {
+        return asStream(new WalkingIterator(request, this, depth, delimiter, keys));
     }
 
     private Stream<S3File> performSingleLevelListing() {
         return asStream(new SingleLevelIterator(this));
     }
 
-    private Stream<S3File> performSingleLevelListing(final ListObjectsRequest request) {
-        return asStream(new SingleLevelIterator(request));
+    private Stream<S3File> performSingleLevelListing(final ListObjectsRequest request, final KeyFilter keys) {
+        return asStream(new SingleLevelIterator(request, keys));
+    }
+
+    private CompletableFuture<List<S3File>> performSingleLevelListingAsync() {
+        final ListObjectsRequest request = ListObjectsRequest.builder()
+                .delimiter("/")
+                .prefix(path.getSearchPrefix())
+                .bucket(bucket.getName())
+                .build();
+        return listAllAsync(request, true, new ArrayList<>(), Priority.Scope.current());
+    }
+
+    /**
+     * Fetches every page of the listing, one page after the other,
+     * without blocking a thread between pages. Later pages are fetched
+     * from completion callbacks, so the priority class of the first
+     * page is carried along.
+     */
+    private CompletableFuture<List<S3File>> listAllAsync(final ListObjectsRequest request, final boolean directories,
+                                                         final List<S3File> files, final Priority.Level priority) {
+        return bucket.listObjectsAsync(request, priority).thenCompose(response -> {
+            final Path.Siblings siblings = new Path.Siblings();
+            for (final S3Object object : response.contents()) {
+                files.add(new S3File(bucket, siblings.fromKey(object.key()), object));
+            }
+            if (directories) {
+                for (final CommonPrefix prefix : response.commonPrefixes()) {
+                    files.add(new S3File(bucket, siblings.fromKey(prefix.prefix()), Directory.class));
+                }
+            }
+
+            if (!response.isTruncated()) {
+                return CompletableFuture.completedFuture(files);
+            }
+
+            final ListObjectsRequest next = request.toBuilder().marker(S3Bucket.nextMarker(response)).build();
+            return listAllAsync(next, directories, files, priority);
+        });
     }
 
     private Node resolve(final Node current) {
@@ -1633,32 +2171,44 @@ public class S3File {
             response = bucket.getObjectMetadata(absoluteName);
         } catch (final S3Exception e) {
             if (e.statusCode() == 404) {
-                final NewObject newObject = new NewObject();
-                if (node.compareAndSet(current, newObject)) {
-                    return newObject;
-                } else {
-                    return node.get();
-                }
+                return replace(current, new NewObject());
             }
             throw e;
         }
 
+        return replace(current, new Metadata(ObjectMetadata.fromHead(response)));
+    }
 
-        final Metadata newNode = new Metadata(ObjectMetadata.fromHead(response));
+    /**
+     * Asynchronous variant of {@link #resolve(Node)}. The node is replaced
+     * when the HEAD request completes, not when it is issued.
+     */
+    private CompletableFuture<Node> resolveAsync(final Node current) {
+        return bucket.getObjectMetadataAsync(path.getAbsoluteName()).handle((response, throwable) -> {
+            if (throwable == null) {
+                return replace(current, new Metadata(ObjectMetadata.fromHead(response)));
+            }
+            if (S3Client.isNotFound(throwable)) {
+                return replace(current, new NewObject());
+            }
+            throw new CompletionException(S3Client.unwrap(throwable));
+        });
+    }
 
-        if (node.compareAndSet(current, newNode)) {
-            return newNode;
+    private Node replace(final Node current, final Node replacement) {
+        if (compareAndSet(current, replacement)) {
+            return replacement;
         } else {
-            return node.get();
+            return node;
         }
     }
 
-    private Stream<S3File> listRequest(final ListObjectsRequest request) {
+    private Stream<S3File> listRequest(final ListObjectsRequest request, final KeyFilter keys) {
         Objects.requireNonNull(request);
         if (request.prefix() == null) {
-            return bucket.objects(request.toBuilder().prefix(path.getSearchPrefix()).build());
+            return bucket.objects(request.toBuilder().prefix(path.getSearchPrefix()).build(), keys);
         } else {
-            return bucket.objects(request);
+            return bucket.objects(request, keys);
         }
     }
 
@@ -1667,24 +2217,27 @@ public class S3File {
         return "S3File{" +
                 "bucket='" + bucket.getName() +
                 "', path='" + path.getAbsoluteName() +
-                "', node='" + node.get().getClass().getSimpleName() +
+                "', node='" + node.getClass().getSimpleName() +
                 "'}";
     }
 
     class WalkingIterator implements Iterator<S3File> {
 
         static final int INFINITE = Integer.MAX_VALUE;
+        private final Priority.Level priority = Priority.Scope.current();
         private final int remaining;
+        private final KeyFilter keys;
         private Iterator<S3File> iterator;
         private final List<Iterator<S3File>> children = new ArrayList<>();
 
         private final ListObjectsRequest request;
 
         public WalkingIterator(final S3File file, final int depth, final String delimiter) {
-            this(ListObjectsRequest.builder().build(), file, depth, delimiter);
+            this(ListObjectsRequest.builder().build(), file, depth, delimiter, KeyFilter.ALL);
         }
 
-        public WalkingIterator(final ListObjectsRequest request, final S3File file, final int depth, final String delimiter) {
+        public WalkingIterator(final ListObjectsRequest request, final S3File file, final int depth, final String delimiter,
+                               final KeyFilter keys) {
             final ListObjectsRequest.Builder builder = request.toBuilder()
                     .delimiter(delimiter)
                     .bucket(bucket.getName());
@@ -1694,27 +2247,57 @@ public class S3File {
             }
 
             this.request = builder.build();
+            this.keys = keys;
 
-            iterator = new Listing(S3Client.join(getS3().listObjects(this.request)));
+            iterator = new Listing(S3Client.join(bucket.listObjectsAsync(this.request)));
             remaining = depth == INFINITE ? INFINITE : depth - 1;
         }
 
         class Listing implements Iterator<S3File> {
 
             private final ListObjectsResponse response;
-            private final Iterator<S3File> objectListingIterator;
+            private final Iterator<S3File> objects;
+            private final Iterator<CommonPrefix> prefixes;
+            private final Path.Siblings siblings = new Path.Siblings();
+            private S3File next;
 
             public Listing(final ListObjectsResponse response) {
                 this.response = response;
-                this.objectListingIterator = iterator(response);
+                this.objects = new ObjectSummaryIterator(response.contents().iterator(), keys);
+                this.prefixes = response.commonPrefixes().iterator();
             }
 
-            private Iterator<S3File> iterator(final ListObjectsResponse response) {
-                return new IteratorIterator<>(
-                        new ObjectSummaryIterator(response.contents().iterator()),
-                        new DirectoryIterator(response.commonPrefixes().stream()
-                                .map(CommonPrefix::prefix).iterator())
-                );
+            /**
+             * Every common prefix is descended into while depth remains,
+             * whether or not the filter lets it through; only those that
+             * pass are emitted.
+             */
+            private boolean advance() {
+                if (next != null) return true;
+
+                if (objects.hasNext()) {
+                    next = objects.next();
+                    return true;
+                }
+
+                final boolean descend = remaining == INFINITE || remaining > 0;
+                while (prefixes.hasNext()) {
+                    final String prefix = prefixes.next().prefix();
+                    final boolean emit = keys.acceptsDirectory(prefix);
+                    if (!emit && !descend) continue;
+
+                    final S3File directory = new S3File(bucket, siblings.fromKey(prefix), Directory.class);
+                    if (descend) {
+                        children.add(Priority.Scope.call(priority, () -> new WalkingIterator(
+                                request.toBuilder().prefix(null).build(), directory, remaining, request.delimiter(), keys)));
+                    }
+                    if (emit) {
+                        next = directory;
+                        return true;
+                    }
+                }
+
+                return false;
             }
 
             @Override
@@ -1722,7 +2305,7 @@ public class S3File {
                 /*
                  * Drain out anything from the current response
                  */
-                if (objectListingIterator.hasNext()) {
+                if (advance()) {
                     return true;
                 }
 
@@ -1730,15 +2313,8 @@ public class S3File {
                  * Replace this iterator with one for the next response
                  */
                 if (response.isTruncated()) {
-                    String marker = response.nextMarker();
-                    if (marker == null) {
-                        final java.util.List<S3Object> contents = response.contents();
-                        if (!contents.isEmpty()) {
-                            marker = contents.get(contents.size() - 1).key();
-                        }
-                    }
-                    final ListObjectsRequest nextRequest = request.toBuilder().marker(marker).build();
-                    iterator = new Listing(S3Client.join(getS3().listObjects(nextRequest)));
+                    final ListObjectsRequest nextRequest = request.toBuilder().marker(S3Bucket.nextMarker(response)).build();
+                    iterator = new Listing(S3Client.join(bucket.listObjectsAsync(nextRequest, priority)));
                     return iterator.hasNext();
                 }
 
@@ -1758,13 +2334,11 @@ public class S3File {
 
             @Override
             public S3File next() {
-                final S3File next = objectListingIterator.next();
-
-                if (next.isDirectory() && (remaining == INFINITE || remaining > 0)) {
-                    children.add(new WalkingIterator(request.toBuilder().prefix(null).build(), next, remaining, request.delimiter()));
-                }
+                if (!advance()) throw new NoSuchElementException();
 
-                return next;
+                final S3File file = next;
+                next = null;
+                return file;
             }
         }
 
@@ -1777,14 +2351,12 @@ public class S3File {
         public S3File next() {
             return iterator.next();
         }
-
-        private S3AsyncClient getS3() {
-            return bucket.getClient().getS3();
-        }
     }
 
     class SingleLevelIterator implements Iterator<S3File> {
 
+        private final Priority.Level priority = Priority.Scope.current();
+        private final KeyFilter keys;
         private Iterator<S3File> iterator;
         private ListObjectsResponse response;
         private ListObjectsRequest request;
@@ -1794,10 +2366,10 @@ public class S3File {
                     .delimiter("/")
                     .prefix(file.getPath().getSearchPrefix())
                     .bucket(bucket.getName())
-                    .build());
+                    .build(), KeyFilter.ALL);
         }
 
-        public SingleLevelIterator(final ListObjectsRequest request) {
+        public SingleLevelIterator(final ListObjectsRequest request, final KeyFilter keys) {
             final ListObjectsRequest.Builder builder = request.toBuilder()
                     .bucket(bucket.getName());
             if (request.delimiter() == null) {
@@ -1807,16 +2379,16 @@ public class S3File {
                 builder.prefix(path.getSearchPrefix());
             }
             this.request = builder.build();
+            this.keys = keys;
 
-            this.response = S3Client.join(bucket.getClient().getS3().listObjects(this.request));
+            this.response = S3Client.join(bucket.listObjectsAsync(this.request));
             this.iterator = iteratorForResponse(this.response);
         }
 
         private Iterator<S3File> iteratorForResponse(final ListObjectsResponse response) {
             return new IteratorIterator<>(
-                    new ObjectSummaryIterator(response.contents().iterator()),
-                    new DirectoryIterator(response.commonPrefixes().stream()
-                            .map(CommonPrefix::prefix).iterator())
+                    new ObjectSummaryIterator(response.contents().iterator(), keys),
+                    new DirectoryIterator(response.commonPrefixes().iterator(), keys)
             );
         }
 
@@ -1825,15 +2397,8 @@ public class S3File {
             if (iterator.hasNext()) return true;
             if (!response.isTruncated()) return false;
 
-            String marker = response.nextMarker();
-            if (marker == null) {
-                final java.util.List<S3Object> contents = response.contents();
-                if (!contents.isEmpty()) {
-                    marker = contents.get(contents.size() - 1).key();
-                }
-            }
-            request = request.toBuilder().marker(marker).build();
-            response = S3Client.join(bucket.getClient().getS3().listObjects(request));
+            request = request.toBuilder().marker(S3Bucket.nextMarker(response)).build();
+            response = S3Client.join(bucket.listObjectsAsync(request, priority));
             iterator = iteratorForResponse(response);
 
             return hasNext();
@@ -1845,39 +2410,70 @@ public class S3File {
         }
     }
 
+    /**
+     * Creates directories only for the common prefixes that pass the
+     * filter.
+     */
     class DirectoryIterator implements Iterator<S3File> {
-        private final Iterator<String> iterator;
+        private final Iterator<CommonPrefix> iterator;
+        private final KeyFilter keys;
+        private final Path.Siblings siblings = new Path.Siblings();
+        private String next;
 
-        public DirectoryIterator(final Iterator<String> iterator) {
-            this.iterator = iterator;
+        public DirectoryIterator(final Iterator<CommonPrefix> iterator, final KeyFilter keys) {
+            this.iterator = keys.includesDirectories() ? iterator : Collections.emptyIterator();
+            this.keys = keys;
         }
 
         @Override
         public boolean hasNext() {
-            return iterator.hasNext();
+            while (next == null && iterator.hasNext()) {
+                final String prefix = iterator.next().prefix();
+                if (keys.acceptsDirectory(prefix)) next = prefix;
+            }
+            return next != null;
         }
 
         @Override
         public S3File next() {
-            return new S3File(bucket, Path.fromKey(iterator.next()), Directory.class);
+            if (!hasNext()) throw new NoSuchElementException();
+
+            final String prefix = next;
+            next = null;
+            return new S3File(bucket, siblings.fromKey(prefix), Directory.class);
         }
     }
 
+    /**
+     * Creates files only for the objects whose keys pass the filter.
+     */
     class ObjectSummaryIterator implements Iterator<S3File> {
         private final Iterator<S3Object> iterator;
+        private final KeyFilter keys;
+        private final Path.Siblings siblings = new Path.Siblings();
+        private S3Object next;
 
-        public ObjectSummaryIterator(final Iterator<S3Object> iterator) {
-            this.iterator = iterator;
+        public ObjectSummaryIterator(final Iterator<S3Object> iterator, final KeyFilter keys) {
+            this.iterator = keys.includesFiles() ? iterator : Collections.emptyIterator();
+            this.keys = keys;
         }
 
         @Override
         public boolean hasNext() {
-            return iterator.hasNext();
+            while (next == null && iterator.hasNext()) {
+                final S3Object object = iterator.next();
+                if (keys.acceptsFile(object.key())) next = object;
+            }
+            return next != null;
         }
 
         @Override
         public S3File next() {
-            return new S3File(bucket, iterator.next());
+            if (!hasNext()) throw new NoSuchElementException();
+
+            final S3Object object = next;
+            next = null;
+            return new S3File(bucket, siblings.fromKey(object.key()), object);
         }
     }
 
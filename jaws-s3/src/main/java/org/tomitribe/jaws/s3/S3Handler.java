@@ -17,6 +17,7 @@ import org.tomitribe.util.reflect.Generics;
 import software.amazon.awssdk.services.s3.model.ListObjectsRequest;
 
 import java.io.FileNotFoundException;
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.AnnotatedElement;
@@ -24,118 +25,207 @@ import java.lang.reflect.Array;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Predicate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class S3Handler implements InvocationHandler {
+
+    /**
+     * HEAD requests kept in flight for a listing whose filters need
+     * metadata that {@code ListObjects} does not return.
+     */
+    static final int METADATA_WINDOW = 32;
+
     private final S3File dir;
-    private final Map<Method, MethodAnnotations> methodAnnotations;
+    private final ProxyType type;
 
     public S3Handler(final S3File dir, final Class<?> iface) {
-        this.dir = dir;
-        this.methodAnnotations = buildMethodAnnotations(iface);
+        this(dir, ProxyType.of(iface));
     }
 
-    private static Map<Method, MethodAnnotations> buildMethodAnnotations(final Class<?> iface) {
-        final Map<Method, MethodAnnotations> map = new HashMap<>();
-        for (final Method method : iface.getMethods()) {
-            if (method.getDeclaringClass() == Object.class) continue;
-            if (method.isDefault()) continue;
-            if (Modifier.isStatic(method.getModifiers())) continue;
-            map.put(method, MethodAnnotations.of(method));
-        }
-        return Collections.unmodifiableMap(map);
+    S3Handler(final S3File dir, final ProxyType type) {
+        this.dir = dir;
+        this.type = type;
     }
 
     private AnnotatedElement element(final Method method, final Object[] args) {
-        final MethodAnnotations ma = methodAnnotations.get(method);
+        final MethodAnnotations ma = type.getMethodAnnotations().get(method);
         return ma != null ? ma.asAnnotatedElement(args) : method;
     }
 
+    private Validation listingFilter(final Method method, final Object[] args) {
+        return annotations(method).listingFilter(getElementType(method), args);
+    }
+
+    private Validation childValidation(final Method method, final Class<?> childType) {
+        return annotations(method).childValidation(childType);
+    }
+
+    private MethodAnnotations annotations(final Method method) {
+        final MethodAnnotations ma = type.getMethodAnnotations().get(method);
+        return ma != null ? ma : MethodAnnotations.of(method);
+    }
+
     @Override
     public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        return type.plan(method).invoke(this, proxy, args);
+    }
+
+    /**
+     * What a call to one proxy method does, worked out once per method by
+     * {@link #compile}. Checks that depend only on the method, such as its
+     * declaring class, return type and annotations, are made when the plan
+     * is compiled; a call only does the work that depends on its handler
+     * and arguments.
+     */
+    interface Plan {
+        Object invoke(S3Handler handler, Object proxy, Object[] args) throws Throwable;
+    }
+
+    static Plan compile(final Method method, final ProxyType type) {
+        final Plan plan = target(method);
+
+        final Priority priority = priority(method, type);
+        if (priority == null) return plan;
+
+        final Priority.Level level = priority.value();
+        return (handler, proxy, args) -> {
+            try (Priority.Scope scope = level.scope()) {
+                return plan.invoke(handler, proxy, args);
+            }
+        };
+    }
+
+    /**
+     * The {@link Priority} of a method, else of the proxied interface,
+     * else of the interface declaring the method.
+     */
+    private static Priority priority(final Method method, final ProxyType type) {
+        final Priority annotation = method.getAnnotation(Priority.class);
+        if (annotation != null) return annotation;
+        if (type.getPriority() != null) return type.getPriority();
+        return method.getDeclaringClass().getAnnotation(Priority.class);
+    }
+
+    private static Plan target(final Method method) {
         if (method.isDefault()) {
-            return invokeDefault(proxy, method, args);
+            final MethodHandle handle = defaultMethod(method);
+            return (handler, proxy, args) -> (Object) handle.invokeExact(proxy, args);
         }
 
+        final String methodName = method.getName();
+
         if (method.getDeclaringClass().equals(Object.class)) {
-            if (method.getName().equals("toString")) return toString();
-            if (method.getName().equals("equals")) return equals(proxy, args);
-            if (method.getName().equals("hashCode")) return hashCode();
+            if (methodName.equals("toString")) return (handler, proxy, args) -> handler.toString();
+            if (methodName.equals("equals")) return (handler, proxy, args) -> handler.equals(proxy, args);
+            if (methodName.equals("hashCode")) return (handler, proxy, args) -> handler.hashCode();
         }
         if (method.getDeclaringClass().equals(S3.class)) {
-            if (method.getName().equals("file")) return dir;
-            if (method.getName().equals("parent")) return dir.getParentFile();
-            throw new IllegalStateException("Unknown method " + method);
+            if (methodName.equals("file")) return (handler, proxy, args) -> handler.dir;
+            if (methodName.equals("parent")) return (handler, proxy, args) -> handler.dir.getParentFile();
+            return unknown(method);
         }
         if (method.getDeclaringClass().equals(S3.Dir.class)) {
-            if (method.getName().equals("file") && hasStringArg(method)) return file(args);
-            if (method.getName().equals("files")) return files();
-            if (method.getName().equals("list")) return list();
-            throw new IllegalStateException("Unknown method " + method);
+            if (methodName.equals("file") && hasStringArg(method)) return (handler, proxy, args) -> handler.file(args);
+            if (methodName.equals("files")) return (handler, proxy, args) -> handler.files();
+            if (methodName.equals("list")) return (handler, proxy, args) -> handler.list();
+            return unknown(method);
         }
 
-        final S3File file = getFile(method);
-
+        final Parent parent = method.getAnnotation(Parent.class);
+        final String name = name(method);
         final Class<?> returnType = method.getReturnType();
+        final boolean noArgs = method.getParameterCount() == 0;
 
         if (returnType.isArray()) {
-            return returnArray(method, args);
+            return (handler, proxy, args) -> {
+                handler.checkParent(method, parent);
+                return handler.returnArray(method, args);
+            };
+        }
+
+        if (CompletableFuture.class.equals(returnType)) {
+            return (handler, proxy, args) -> handler.returnFuture(method, args, handler.getFile(method, parent, name));
+        }
+
+        if (Flow.Publisher.class.equals(returnType)) {
+            return (handler, proxy, args) -> {
+                handler.checkParent(method, parent);
+                return handler.returnPublisher(method, args);
+            };
         }
 
         if (Stream.class.equals(returnType)) {
-            return returnStream(method, args);
+            return (handler, proxy, args) -> {
+                handler.checkParent(method, parent);
+                return handler.returnStream(method, args);
+            };
         }
 
-        if (List.class.equals(returnType)) {
-            return returnList(method, args);
+        if (List.class.equals(returnType) || Collection.class.equals(returnType)) {
+            return (handler, proxy, args) -> {
+                handler.checkParent(method, parent);
+                return handler.returnList(method, args);
+            };
         }
 
         if (Set.class.equals(returnType)) {
-            return returnSet(method, args);
+            return (handler, proxy, args) -> {
+                handler.checkParent(method, parent);
+                return handler.returnSet(method, args);
+            };
         }
 
-        if (Collection.class.equals(returnType)) {
-            return returnList(method, args);
+        if (S3File.class.equals(returnType) && noArgs) {
+            final boolean notFound = exceptionTypes(method).contains(FileNotFoundException.class);
+            return (handler, proxy, args) -> returnFile(handler.getFile(method, parent, name), notFound);
         }
 
-        if (S3File.class.equals(returnType) && args == null) {
-            return returnFile(method, file);
+        if (returnType.isInterface() && method.getParameterCount() == 1) {
+            return (handler, proxy, args) -> {
+                handler.checkParent(method, parent);
+                if (!(args[0] instanceof String)) throw new UnsupportedOperationException(method.toGenericString());
+
+                final String child = (String) args[0];
+                final S3File target = handler.dir.getFile(child);
+                if (!handler.childValidation(method, returnType).test(target)) {
+                    throw new IllegalArgumentException(
+                            String.format("\"%s\" does not match the naming constraints of %s",
+                                    child, returnType.getSimpleName()));
+                }
+                return target.as(returnType);
+            };
         }
 
-        if (returnType.isInterface() && args != null && args.length == 1 && args[0] instanceof String) {
-            final String name = (String) args[0];
-            final S3File target = dir.getFile(name);
-            final Validation validation = Validation.builder()
-                    .type(returnType)
-                    .element(method)
-                    .build();
-            if (!validation.test(target)) {
-                throw new IllegalArgumentException(
-                        String.format("\"%s\" does not match the naming constraints of %s",
-                                name, returnType.getSimpleName()));
-            }
-            return target.as(returnType);
+        if (returnType.isInterface() && noArgs) {
+            return (handler, proxy, args) -> handler.getFile(method, parent, name).as(returnType);
         }
 
-        if (returnType.isInterface() && args == null) {
-            return file.as(returnType);
-        }
+        return (handler, proxy, args) -> {
+            handler.checkParent(method, parent);
+            throw new UnsupportedOperationException(method.toGenericString());
+        };
+    }
 
-        throw new UnsupportedOperationException(method.toGenericString());
+    private static Plan unknown(final Method method) {
+        return (handler, proxy, args) -> {
+            throw new IllegalStateException("Unknown method " + method);
+        };
     }
 
-    private S3File getFile(final Method method) {
-        final Parent parent = method.getAnnotation(Parent.class);
+    private S3File getFile(final Method method, final Parent parent, final String name) {
         if (parent != null) {
             S3File parentFile = dir;
             for (int depth = parent.value(); depth > 0; depth--) {
@@ -146,10 +236,19 @@ public class S3Handler implements InvocationHandler {
             return parentFile;
         }
 
-        return dir.getFile(name(method));
+        return dir.getFile(name);
+    }
+
+    /**
+     * Fails the same way {@link #getFile} would when a {@link Parent}
+     * annotation climbs above the root, for return types that do not
+     * otherwise use the file.
+     */
+    private void checkParent(final Method method, final Parent parent) {
+        if (parent != null) getFile(method, parent, null);
     }
 
-    private boolean hasStringArg(final Method method) {
+    private static boolean hasStringArg(final Method method) {
         final Class<?>[] types = method.getParameterTypes();
         if (types.length != 1) return false;
         return types[0].equals(String.class);
@@ -171,7 +270,7 @@ public class S3Handler implements InvocationHandler {
         return dir.getFile(name);
     }
 
-    private String name(final Method method) {
+    private static String name(final Method method) {
         if (method.isAnnotationPresent(Name.class)) {
             return method.getAnnotation(Name.class).value();
         }
@@ -200,20 +299,33 @@ public class S3Handler implements InvocationHandler {
         return dir.hashCode();
     }
 
-    private static Object invokeDefault(final Object proxy, final Method method, final Object[] args) throws Throwable {
-        return MethodHandles.lookup()
-                .findSpecial(
-                        method.getDeclaringClass(),
-                        method.getName(),
-                        MethodType.methodType(method.getReturnType(), method.getParameterTypes()),
-                        method.getDeclaringClass()
-                ).bindTo(proxy)
-                .invokeWithArguments(args);
+    /**
+     * Looks up the default method's body once, adapted to take the proxy
+     * and the argument array as passed to {@link #invoke}.
+     */
+    private static MethodHandle defaultMethod(final Method method) {
+        final Class<?> type = method.getDeclaringClass();
+        try {
+            // A package-private interface is only reachable through a lookup in its own package
+            final MethodHandles.Lookup lookup = Modifier.isPublic(type.getModifiers())
+                    ? MethodHandles.lookup()
+                    : MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            final MethodHandle handle = lookup
+                    .findSpecial(
+                            method.getDeclaringClass(),
+                            method.getName(),
+                            MethodType.methodType(method.getReturnType(), method.getParameterTypes()),
+                            method.getDeclaringClass());
+            return handle.asType(handle.type().generic())
+                    .asSpreader(Object[].class, method.getParameterCount());
+        } catch (final NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Cannot invoke default method " + method, e);
+        }
     }
 
-    private Object returnFile(final Method method, final S3File file) throws FileNotFoundException {
+    private static Object returnFile(final S3File file, final boolean notFound) throws FileNotFoundException {
         // They want an exception if the file isn't found
-        if (exceptions(method).contains(FileNotFoundException.class) && !file.exists()) {
+        if (notFound && !file.exists()) {
             throw new FileNotFoundException(file.getAbsoluteName());
         }
 
@@ -221,31 +333,29 @@ public class S3Handler implements InvocationHandler {
     }
 
     public List<Class<?>> exceptions(final Method method) {
+        return exceptionTypes(method);
+    }
+
+    private static List<Class<?>> exceptionTypes(final Method method) {
         final Class<?>[] exceptionTypes = method.getExceptionTypes();
         return Arrays.asList(exceptionTypes);
     }
 
     private Object returnArray(final Method method, final Object[] args) {
         final AnnotatedElement element = element(method, args);
-        final Predicate<S3File> filter = Validation.builder()
-                .type(getElementType(method))
-                .element(element)
-                .prefix(false)
-                .build();
+        final Validation filter = listingFilter(method, args);
 
         final Class<?> arrayType = method.getReturnType().getComponentType();
 
         if (S3File.class.equals(arrayType)) {
 
-            return stream(method, element)
-                    .filter(filter)
+            return stream(method, element, filter)
                     .toArray(S3File[]::new);
 
         } else if (arrayType.isInterface()) {
 
             // will be an array of type Object[]
-            final Object[] src = stream(method, element)
-                    .filter(filter)
+            final Object[] src = stream(method, element, filter)
                     .map(child -> child.as(arrayType))
                     .toArray();
 
@@ -263,22 +373,16 @@ public class S3Handler implements InvocationHandler {
     private Object returnList(final Method method, final Object[] args) {
         final AnnotatedElement element = element(method, args);
         final Class<?> listType = (Class<?>) Generics.getReturnType(method);
-        final Predicate<S3File> filter = Validation.builder()
-                .type(getElementType(method))
-                .element(element)
-                .prefix(false)
-                .build();
+        final Validation filter = listingFilter(method, args);
 
         if (S3File.class.equals(listType)) {
 
-            return stream(method, element)
-                    .filter(filter)
+            return stream(method, element, filter)
                     .collect(Collectors.toList());
 
         } else if (listType.isInterface()) {
 
-            return stream(method, element)
-                    .filter(filter)
+            return stream(method, element, filter)
                     .map(child -> child.as(listType))
                     .collect(Collectors.toList());
         }
@@ -289,22 +393,16 @@ public class S3Handler implements InvocationHandler {
     private Object returnSet(final Method method, final Object[] args) {
         final AnnotatedElement element = element(method, args);
         final Class<?> listType = (Class<?>) Generics.getReturnType(method);
-        final Predicate<S3File> filter = Validation.builder()
-                .type(getElementType(method))
-                .element(element)
-                .prefix(false)
-                .build();
+        final Validation filter = listingFilter(method, args);
 
         if (S3File.class.equals(listType)) {
 
-            return stream(method, element)
-                    .filter(filter)
+            return stream(method, element, filter)
                     .collect(Collectors.toSet());
 
         } else if (listType.isInterface()) {
 
-            return stream(method, element)
-                    .filter(filter)
+            return stream(method, element, filter)
                     .map(child -> child.as(listType))
                     .collect(Collectors.toSet());
         }
@@ -315,58 +413,174 @@ public class S3Handler implements InvocationHandler {
     private Object returnStream(final Method method, final Object[] args) {
         final AnnotatedElement element = element(method, args);
         final Class returnType = (Class) Generics.getReturnType(method);
-        final Predicate<S3File> filter = Validation.builder()
-                .type(getElementType(method))
-                .element(element)
-                .prefix(false)
-                .build();
+        final Validation filter = listingFilter(method, args);
 
         if (returnType.isInterface()) {
-            return stream(method, element)
-                    .filter(filter)
+            return stream(method, element, filter)
                     .map(child -> child.as(returnType));
         }
         if (S3File.class.equals(returnType)) {
-            return stream(method, element)
-                    .filter(filter);
+            return stream(method, element, filter);
+        }
+        throw new UnsupportedOperationException(method.toGenericString());
+    }
+
+    /**
+     * A {@code CompletableFuture<List<X>>} completes with the full listing
+     * once every page has been read. A {@code CompletableFuture<X>} resolves
+     * a single child the same way the synchronous return types do; if the
+     * child is an object rather than a directory its HEAD is issued first so
+     * the returned file or proxy has its state already resolved.
+     */
+    private Object returnFuture(final Method method, final Object[] args, final S3File file) {
+        final Type futureType = Generics.getReturnType(method);
+
+        if (isList(futureType)) {
+            return publisher(method, args).toList();
+        }
+
+        if (!(futureType instanceof Class)) {
+            throw new UnsupportedOperationException(method.toGenericString());
+        }
+
+        final Class<?> valueType = (Class<?>) futureType;
+
+        if (S3File.class.equals(valueType) && args == null) {
+            return resolved(method, file, valueType);
+        }
+
+        if (valueType.isInterface() && args != null && args.length == 1 && args[0] instanceof String) {
+            final String name = (String) args[0];
+            final S3File target = dir.getFile(name);
+            if (!childValidation(method, valueType).test(target)) {
+                return CompletableFuture.failedFuture(new IllegalArgumentException(
+                        String.format("\"%s\" does not match the naming constraints of %s",
+                                name, valueType.getSimpleName())));
+            }
+            return resolved(method, target, valueType);
+        }
+
+        if (valueType.isInterface() && args == null) {
+            return resolved(method, file, valueType);
+        }
+
+        throw new UnsupportedOperationException(method.toGenericString());
+    }
+
+    private CompletableFuture<Object> resolved(final Method method, final S3File file, final Class<?> type) {
+        final Function<S3File, Object> convert = S3File.class.equals(type) ? s3File -> s3File : s3File -> s3File.as(type);
+
+        // A HEAD on a directory would 404 and turn it into a NewObject
+        if (!S3File.class.equals(type) && !S3.File.class.isAssignableFrom(type)) {
+            return CompletableFuture.completedFuture(convert.apply(file));
+        }
+
+        return file.existsAsync().thenApply(exists -> {
+            if (!exists && exceptions(method).contains(FileNotFoundException.class)) {
+                throw new CompletionException(new FileNotFoundException(file.getAbsoluteName()));
+            }
+            return convert.apply(file);
+        });
+    }
+
+    private Object returnPublisher(final Method method, final Object[] args) {
+        return publisher(method, args);
+    }
+
+    private ListingPublisher<Object> publisher(final Method method, final Object[] args) {
+        final AnnotatedElement element = element(method, args);
+        final Class<?> elementType = getElementType(method);
+        final Validation filter = listingFilter(method, args);
+
+        if (S3File.class.equals(elementType)) {
+            return publisher(method, element, filter, file -> file);
         }
+        if (elementType != null && elementType.isInterface()) {
+            return publisher(method, element, filter, child -> child.as(elementType));
+        }
+
         throw new UnsupportedOperationException(method.toGenericString());
     }
 
-    private Class<?> getElementType(final Method method) {
+    /**
+     * The asynchronous counterpart of {@link #stream(Method, AnnotatedElement, Validation)}.
+     * It issues the same listing requests and selects the same kind of
+     * entries, but pages are fetched as the subscriber requests them.
+     */
+    private <T> ListingPublisher<T> publisher(final Method method, final AnnotatedElement element,
+                                              final Validation filter, final Function<S3File, T> mapper) {
+        final Class<?> elementType = getElementType(method);
+        final boolean directories = elementType != null && S3.Dir.class.isAssignableFrom(elementType);
+        final boolean recursive = method.isAnnotationPresent(Recursive.class);
+
+        final String searchPrefix = dir.getPath().getSearchPrefix();
+        final ListObjectsRequest.Builder builder = ListObjectsRequest.builder()
+                .bucket(dir.getBucketName())
+                .prefix(searchPrefix);
+
+        if (element.isAnnotationPresent(Prefix.class)) {
+            final Prefix prefix = element.getAnnotation(Prefix.class);
+            builder.prefix((searchPrefix != null ? searchPrefix : "") + prefix.value());
+        }
+
+        if (method.isAnnotationPresent(Marker.class)) {
+            final Marker marker = method.getAnnotation(Marker.class);
+            builder.marker((searchPrefix != null ? searchPrefix : "") + marker.value());
+        }
+
+        final String delimiter = method.isAnnotationPresent(Delimiter.class)
+                ? method.getAnnotation(Delimiter.class).value()
+                : null;
+
+        // Recursive files are a flat listing of every descendant object
+        if (recursive && !directories) {
+            final ListObjectsRequest request = builder.delimiter(delimiter).build();
+            return new ListingPublisher<>(dir.getBucket(), request, KeyFilter.files(filter), false, mapper);
+        }
+
+        final ListObjectsRequest request = builder.delimiter(delimiter != null ? delimiter : "/").build();
+        final KeyFilter keys = directories ? KeyFilter.directories(filter) : KeyFilter.files(filter);
+        return new ListingPublisher<>(dir.getBucket(), request, keys, recursive, mapper);
+    }
+
+    static Class<?> getElementType(final Method method) {
         final Class<?> returnType = method.getReturnType();
         if (returnType.isArray()) {
             return returnType.getComponentType();
         }
         if (Stream.class.equals(returnType) || List.class.equals(returnType)
-                || Set.class.equals(returnType) || Collection.class.equals(returnType)) {
+                || Set.class.equals(returnType) || Collection.class.equals(returnType)
+                || Flow.Publisher.class.equals(returnType)) {
             return (Class<?>) Generics.getReturnType(method);
         }
+        if (CompletableFuture.class.equals(returnType)) {
+            final Type futureType = Generics.getReturnType(method);
+            if (isList(futureType)) {
+                return (Class<?>) ((ParameterizedType) futureType).getActualTypeArguments()[0];
+            }
+        }
         return null;
     }
 
-    private Stream<S3File> stream(final Method method, final AnnotatedElement element) {
+    private static boolean isList(final Type type) {
+        return type instanceof ParameterizedType && List.class.equals(((ParameterizedType) type).getRawType());
+    }
+
+    /**
+     * Lists the entries of the method's element type that pass the filter.
+     * Names are checked against the raw keys of each listing page, so only
+     * the entries that pass become S3File instances.
+     */
+    private Stream<S3File> stream(final Method method, final AnnotatedElement element, final Validation filter) {
 
         final Class<?> elementType = getElementType(method);
         final boolean recursive = method.isAnnotationPresent(Recursive.class);
+        final boolean directories = elementType != null && S3.Dir.class.isAssignableFrom(elementType);
 
-        final boolean hasListAnnotations = element.isAnnotationPresent(Prefix.class)
-                || method.isAnnotationPresent(Marker.class)
-                || method.isAnnotationPresent(Delimiter.class);
-
-        // Simple case: no listing annotations, just filter by type
-        if (!hasListAnnotations && !recursive) {
-            if (elementType != null && S3.Dir.class.isAssignableFrom(elementType)) {
-                return dir.list().filter(S3File::isDirectory);
-            }
-            if (elementType != null && S3.File.class.isAssignableFrom(elementType)) {
-                return dir.list().filter(S3File::isFile);
-            }
-            // Plain T (not S3.Dir, not S3.File): default is immediate, files only
-            return dir.list().filter(S3File::isFile);
-        }
+        // S3.Dir lists directories; S3.File and plain T (the default) list files only
+        final KeyFilter keys = directories ? KeyFilter.directories(filter) : KeyFilter.files(filter);
 
-        ListObjectsRequest.Builder builder = ListObjectsRequest.builder();
+        final ListObjectsRequest.Builder builder = ListObjectsRequest.builder();
 
         if (element.isAnnotationPresent(Prefix.class)) {
             final Prefix prefix = element.getAnnotation(Prefix.class);
@@ -387,27 +601,26 @@ public class S3Handler implements InvocationHandler {
 
         final ListObjectsRequest request = builder.build();
 
-        if (recursive) {
-            if (elementType != null && S3.Dir.class.isAssignableFrom(elementType)) {
-                final String delimiter = method.isAnnotationPresent(Delimiter.class)
-                        ? method.getAnnotation(Delimiter.class).value()
-                        : "/";
-                return dir.walk(request, delimiter).filter(S3File::isDirectory);
-            }
-
-            Stream<S3File> result = dir.files(request);
-            if (elementType != null && S3.File.class.isAssignableFrom(elementType)) {
-                result = result.filter(S3File::isFile);
-            }
-            return result;
+        final Stream<S3File> listing;
+        if (recursive && directories) {
+            final String delimiter = method.isAnnotationPresent(Delimiter.class)
+                    ? method.getAnnotation(Delimiter.class).value()
+                    : "/";
+            listing = dir.walk(request, delimiter, keys);
+        } else if (recursive) {
+            listing = dir.files(request, keys);
+        } else {
+            // Immediate listing
+            listing = dir.list(request, keys);
         }
 
-        // Non-recursive with listing annotations: immediate listing
-        if (elementType != null && S3.Dir.class.isAssignableFrom(elementType)) {
-            return dir.list(request).filter(S3File::isDirectory);
+        if (keys.needsMetadata()) {
+            // Files deleted since they were listed have nothing to filter on
+            return S3Streams.enrich(listing, METADATA_WINDOW)
+                    .filter(S3File::exists)
+                    .filter(keys::accepts);
         }
-
-        return dir.list(request).filter(S3File::isFile);
+        return listing.filter(keys::accepts);
     }
 
     @Override
@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Stream operators for overlapping per-element S3 work.
+ *
+ * <p>Proxy streams are sequential, so {@code versions().map(v -> v.changelog().getValueAsString())}
+ * waits for each request before issuing the next. The operators here keep
+ * up to {@code window} elements in flight while the source stream (often
+ * a listing that is still paging) continues to be read:
+ *
+ * <pre>{@code
+ * Stream<String> changelogs = S3Streams.mapAsync(project.versions(), 32, true,
+ *         version -> version.changelog().file().getValueAsStringAsync());
+ * }</pre>
+ *
+ * <p>The returned streams are lazy. Nothing is submitted until the first
+ * element is requested, and the source is never read more than
+ * {@code window} elements ahead of the consumer. Closing the returned
+ * stream cancels any work still in flight and closes the source stream.
+ *
+ * <p>If an element fails, its exception is rethrown when that element is
+ * reached and the remaining in-flight work is cancelled.
+ */
+public final class S3Streams {
+
+    private S3Streams() {
+    }
+
+    /**
+     * Applies a blocking function to each element with up to {@code window}
+     * calls running at once, preserving the order of the source stream.
+     *
+     * @param stream   the source stream
+     * @param window   the maximum number of calls in flight
+     * @param function the function to apply, typically one that calls S3
+     * @return a lazy stream of the results in source order
+     */
+    public static <T, R> Stream<R> mapConcurrent(final Stream<T> stream, final int window,
+                                                 final Function<? super T, ? extends R> function) {
+        return mapConcurrent(stream, window, true, function);
+    }
+
+    /**
+     * Applies a blocking function to each element with up to {@code window}
+     * calls running at once. Calls run on a shared pool of daemon threads.
+     *
+     * @param stream   the source stream
+     * @param window   the maximum number of calls in flight
+     * @param ordered  {@code true} to emit results in source order,
+     *                 {@code false} to emit them as they complete
+     * @param function the function to apply, typically one that calls S3
+     * @return a lazy stream of the results
+     */
+    public static <T, R> Stream<R> mapConcurrent(final Stream<T> stream, final int window, final boolean ordered,
+                                                 final Function<? super T, ? extends R> function) {
+        return mapConcurrent(stream, window, ordered, function, DefaultExecutor.INSTANCE);
+    }
+
+    /**
+     * Applies a blocking function to each element with up to {@code window}
+     * calls running at once on the given executor.
+     *
+     * @param stream   the source stream
+     * @param window   the maximum number of calls in flight
+     * @param ordered  {@code true} to emit results in source order,
+     *                 {@code false} to emit them as they complete
+     * @param function the function to apply, typically one that calls S3
+     * @param executor the executor the calls run on
+     * @return a lazy stream of the results
+     */
+    public static <T, R> Stream<R> mapConcurrent(final Stream<T> stream, final int window, final boolean ordered,
+                                                 final Function<? super T, ? extends R> function,
+                                                 final Executor executor) {
+        return mapAsync(stream, window, ordered, item -> CompletableFuture.supplyAsync(() -> function.apply(item), executor));
+    }
+
+    /**
+     * Applies an asynchronous function to each element with up to
+     * {@code window} futures outstanding at once. No thread is held
+     * while a future is outstanding, which makes this the natural
+     * companion to the {@code *Async} methods of {@link S3File}.
+     *
+     * @param stream   the source stream
+     * @param window   the maximum number of futures outstanding
+     * @param ordered  {@code true} to emit results in source order,
+     *                 {@code false} to emit them as they complete
+     * @param function the function that starts the work for an element
+     * @return a lazy stream of the results
+     */
+    public static <T, R> Stream<R> mapAsync(final Stream<T> stream, final int window, final boolean ordered,
+                                            final Function<? super T, ? extends CompletionStage<? extends R>> function) {
+        if (window < 1) throw new IllegalArgumentException("window must be at least 1: " + window);
+
+        final WindowIterator<T, R> iterator = new WindowIterator<>(stream.iterator(), window, ordered, function);
+        return S3Client.asStream(iterator)
+                .onClose(iterator::close)
+                .onClose(stream::close);
+    }
+
+    /**
+     * Issues a HEAD request for each listed file, with up to {@code window}
+     * requests in flight, preserving the order of the source stream.
+     *
+     * @param files  the files to enrich, typically from a listing
+     * @param window the maximum number of HEAD requests in flight
+     * @return a lazy stream of the same files with full metadata
+     * @see #enrich(Stream, int, boolean)
+     */
+    public static Stream<S3File> enrich(final Stream<S3File> files, final int window) {
+        return enrich(files, window, true);
+    }
+
+    /**
+     * Issues a HEAD request for each listed file, with up to {@code window}
+     * requests in flight.
+     *
+     * <p>Listed files only carry what {@code ListObjects} returns: key,
+     * size, ETag and last-modified. When each HEAD response arrives the file
+     * switches to the full metadata, so content type and user metadata can be
+     * read downstream without blocking. Files that already have full metadata
+     * and directories pass through without a request. A file that was deleted
+     * after it was listed comes through with {@code exists()} returning
+     * {@code false}.
+     *
+     * @param files   the files to enrich, typically from a listing
+     * @param window  the maximum number of HEAD requests in flight
+     * @param ordered {@code true} to emit files in source order,
+     *                {@code false} to emit them as their HEAD completes
+     * @return a lazy stream of the same files with full metadata
+     */
+    public static Stream<S3File> enrich(final Stream<S3File> files, final int window, final boolean ordered) {
+        return mapAsync(files, window, ordered, S3File::loadMetadataAsync);
+    }
+
+    /**
+     * Starts the asynchronous work for each item with up to
+     * {@code window} futures outstanding, without blocking the caller.
+     * The returned future completes once all of them have. After the
+     * first failure it completes exceptionally and no further items are
+     * started; work already started runs to completion.
+     *
+     * @param items    the items to process
+     * @param window   the maximum number of futures outstanding
+     * @param function the function that starts the work for an item
+     * @return a future that completes once every item is done
+     */
+    static <T> CompletableFuture<Void> forEachAsync(final List<T> items, final int window,
+                                                    final Function<? super T, ? extends CompletionStage<?>> function) {
+        if (window < 1) throw new IllegalArgumentException("window must be at least 1: " + window);
+
+        return new AsyncWindow<>(items, window, function).start();
+    }
+
+    /**
+     * The state of one {@link #forEachAsync} call. Each completion
+     * starts the next item from {@link #pump()}, which only one thread
+     * runs at a time, so futures that are already complete do not
+     * recurse.
+     */
+    private static class AsyncWindow<T> {
+        private final List<T> items;
+        private final int window;
+        private final Function<? super T, ? extends CompletionStage<?>> function;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private int next;
+
+        AsyncWindow(final List<T> items, final int window,
+                    final Function<? super T, ? extends CompletionStage<?>> function) {
+            this.items = items;
+            this.window = window;
+            this.function = function;
+            this.remaining = new AtomicInteger(items.size());
+        }
+
+        CompletableFuture<Void> start() {
+            if (items.isEmpty()) {
+                result.complete(null);
+            } else {
+                pump();
+            }
+            return result;
+        }
+
+        private void pump() {
+            if (wip.getAndIncrement() != 0) return;
+
+            int missed = 1;
+            for (;;) {
+                while (!result.isDone() && next < items.size() && active.get() < window) {
+                    start(items.get(next++));
+                }
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) return;
+            }
+        }
+
+        private void start(final T item) {
+            active.incrementAndGet();
+            final CompletionStage<?> stage;
+            try {
+                stage = function.apply(item);
+            } catch (final RuntimeException | Error e) {
+                result.completeExceptionally(e);
+                return;
+            }
+
+            stage.whenComplete((value, throwable) -> {
+                active.decrementAndGet();
+                if (throwable != null) {
+                    result.completeExceptionally(S3Client.unwrap(throwable));
+                } else if (remaining.decrementAndGet() == 0) {
+                    result.complete(null);
+                } else {
+                    pump();
+                }
+            });
+        }
+    }
+
+    /**
+     * Keeps up to {@code window} futures outstanding. Only the consuming
+     * thread reads the source and touches {@code inFlight}; completion
+     * callbacks only add to the {@code completed} queue.
+     */
+    private static class WindowIterator<T, R> implements Iterator<R> {
+        private final Iterator<T> source;
+        private final int window;
+        private final boolean ordered;
+        private final Function<? super T, ? extends CompletionStage<? extends R>> function;
+        private final Deque<CompletableFuture<? extends R>> inFlight = new ArrayDeque<>();
+        private final BlockingQueue<CompletableFuture<? extends R>> completed = new LinkedBlockingQueue<>();
+        private volatile boolean closed;
+
+        WindowIterator(final Iterator<T> source, final int window, final boolean ordered,
+                       final Function<? super T, ? extends CompletionStage<? extends R>> function) {
+            this.source = source;
+            this.window = window;
+            this.ordered = ordered;
+            this.function = function;
+        }
+
+        @Override
+        public boolean hasNext() {
+            fill();
+            return !inFlight.isEmpty();
+        }
+
+        @Override
+        public R next() {
+            if (!hasNext()) throw new NoSuchElementException();
+
+            final CompletableFuture<? extends R> future = ordered ? inFlight.poll() : takeCompleted();
+
+            try {
+                return S3Client.join(future);
+            } catch (final RuntimeException | Error e) {
+                close();
+                throw e;
+            }
+        }
+
+        private CompletableFuture<? extends R> takeCompleted() {
+            try {
+                final CompletableFuture<? extends R> future = completed.take();
+                inFlight.remove(future);
+                return future;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new IllegalStateException("Interrupted while waiting for a result", e);
+            }
+        }
+
+        private void fill() {
+            while (!closed && inFlight.size() < window && source.hasNext()) {
+                final CompletableFuture<? extends R> future = start(source.next());
+                inFlight.add(future);
+                if (!ordered) {
+                    future.whenComplete((result, throwable) -> completed.add(future));
+                }
+            }
+        }
+
+        private CompletableFuture<? extends R> start(final T item) {
+            try {
+                return function.apply(item).toCompletableFuture();
+            } catch (final RuntimeException | Error e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        void close() {
+            closed = true;
+            for (final CompletableFuture<? extends R> future : inFlight) {
+                future.cancel(true);
+            }
+            inFlight.clear();
+        }
+    }
+
+    /**
+     * Threads for blocking functions when no executor is given. The
+     * pool grows to the combined window of the streams using it and
+     * idle threads are released after a minute.
+     */
+    private static class DefaultExecutor {
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r);
+                thread.setDaemon(true);
+                thread.setName("jaws-stream-worker-" + threadCount.getAndIncrement());
+                return thread;
+            }
+        });
+    }
+}
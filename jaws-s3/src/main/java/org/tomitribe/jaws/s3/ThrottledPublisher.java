@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.core.async.SdkPublisher;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passes the chunks of a body through one or more {@link Bandwidth}
+ * limits. One chunk is requested from the source at a time, and a chunk
+ * over the limit is delivered from the bandwidth timer once its tokens
+ * have accumulated, so order is preserved and nothing is buffered beyond
+ * the chunk being held.
+ */
+class ThrottledPublisher implements SdkPublisher<ByteBuffer> {
+
+    private final Publisher<ByteBuffer> source;
+    private final List<Bandwidth> limits;
+
+    ThrottledPublisher(final Publisher<ByteBuffer> source, final List<Bandwidth> limits) {
+        this.source = source;
+        this.limits = limits;
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super ByteBuffer> subscriber) {
+        source.subscribe(new Gate(subscriber));
+    }
+
+    static AsyncRequestBody body(final AsyncRequestBody body, final List<Bandwidth> limits) {
+        if (limits.isEmpty()) return body;
+
+        return new AsyncRequestBody() {
+            @Override
+            public Optional<Long> contentLength() {
+                return body.contentLength();
+            }
+
+            @Override
+            public String contentType() {
+                return body.contentType();
+            }
+
+            @Override
+            public void subscribe(final Subscriber<? super ByteBuffer> subscriber) {
+                new ThrottledPublisher(body, limits).subscribe(subscriber);
+            }
+        };
+    }
+
+    static <R, T> AsyncResponseTransformer<R, T> transformer(final AsyncResponseTransformer<R, T> transformer,
+                                                           final List<Bandwidth> limits) {
+        if (limits.isEmpty()) return transformer;
+
+        return new AsyncResponseTransformer<R, T>() {
+            @Override
+            public CompletableFuture<T> prepare() {
+                return transformer.prepare();
+            }
+
+            @Override
+            public void onResponse(final R response) {
+                transformer.onResponse(response);
+            }
+
+            @Override
+            public void onStream(final SdkPublisher<ByteBuffer> publisher) {
+                transformer.onStream(new ThrottledPublisher(publisher, limits));
+            }
+
+            @Override
+            public void exceptionOccurred(final Throwable error) {
+                transformer.exceptionOccurred(error);
+            }
+        };
+    }
+
+    private long reserve(final long bytes) {
+        long wait = 0;
+        for (final Bandwidth limit : limits) {
+            wait = Math.max(wait, limit.reserve(bytes));
+        }
+        return wait;
+    }
+
+    /**
+     * Sits between the source and the subscriber. {@code pulling} is set
+     * while one chunk has been requested and not yet delivered. A chunk
+     * over the limit is {@code waiting} until the timer hands it over as
+     * {@code ready}.
+     *
+     * <p>All signals to the subscriber are sent from {@link #drain()},
+     * which only one thread runs at a time, so a completion or error that
+     * arrives while a chunk is held back is only sent after that chunk.
+     */
+    private class Gate implements Subscriber<ByteBuffer>, Subscription {
+        private final Subscriber<? super ByteBuffer> downstream;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicBoolean pulling = new AtomicBoolean();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean waiting;
+        private volatile ByteBuffer ready;
+        private volatile Runnable terminal;
+        private volatile boolean cancelled;
+        private Subscription upstream;
+        private boolean done;
+
+        Gate(final Subscriber<? super ByteBuffer> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(final Subscription subscription) {
+            upstream = subscription;
+            downstream.onSubscribe(this);
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                upstream.request(n);
+                return;
+            }
+            demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            upstream.cancel();
+        }
+
+        @Override
+        public void onNext(final ByteBuffer buffer) {
+            final long wait = reserve(buffer.remaining());
+            if (wait == 0) {
+                ready = buffer;
+                drain();
+                return;
+            }
+
+            waiting = true;
+            Bandwidth.schedule(() -> {
+                // Set before waiting is cleared, as emit reads them the other way round
+                ready = buffer;
+                waiting = false;
+                drain();
+            }, wait);
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            terminal = () -> downstream.onError(throwable);
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            terminal = downstream::onComplete;
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) return;
+
+            int missed = 1;
+            for (;;) {
+                if (!done) emit();
+
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) return;
+            }
+        }
+
+        /**
+         * Delivers the ready chunk, then either sends the terminal signal,
+         * if no chunk is held, or requests the next chunk.
+         */
+        private void emit() {
+            for (;;) {
+                // A chunk the timer hands over in between is seen in one of the two
+                final boolean held = waiting;
+                final ByteBuffer buffer = ready;
+
+                if (buffer != null) {
+                    ready = null;
+                    if (!cancelled) {
+                        demand.decrementAndGet();
+                        downstream.onNext(buffer);
+                    }
+                    pulling.set(false);
+                    continue;
+                }
+
+                final Runnable signal = terminal;
+                if (!held && signal != null) {
+                    done = true;
+                    if (!cancelled) signal.run();
+                    return;
+                }
+
+                if (!cancelled && demand.get() > 0 && pulling.compareAndSet(false, true)) {
+                    upstream.request(1);
+                }
+                return;
+            }
+        }
+    }
+}
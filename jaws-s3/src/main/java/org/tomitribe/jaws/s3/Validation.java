@@ -15,8 +15,12 @@ package org.tomitribe.jaws.s3;
 
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /**
  * Collects {@link Prefix}, {@link Suffix}, {@link Match} and {@link Filter}
@@ -26,27 +30,65 @@ import java.util.regex.Pattern;
  * <p>Annotations are applied in fixed order (cheapest first):
  * <ol>
  *   <li>{@code @Prefix} — {@code file.getName().startsWith(value)}</li>
- *   <li>{@code @Suffix} includes</li>
- *   <li>{@code @Suffix} excludes</li>
- *   <li>{@code @Match} includes</li>
- *   <li>{@code @Match} excludes</li>
+ *   <li>{@code @Suffix} includes and excludes</li>
+ *   <li>{@code @Match} includes and excludes</li>
  *   <li>{@code @Filter}</li>
  * </ol>
  *
- * <p>Type-level annotations are ANDed with method-level annotations
- * (type first).
+ * <p>The name rules of the type and the method are compiled together
+ * into one {@link NameMatcher}; only the {@code @Filter} predicates see
+ * the {@link S3File}. Type-level filters run before method-level filters.
  */
 public class Validation implements Predicate<S3File> {
 
-    private final Predicate<S3File> predicate;
+    private static final Logger LOGGER = Logger.getLogger(Validation.class.getName());
 
-    private Validation(final Predicate<S3File> predicate) {
-        this.predicate = predicate;
+    private final NameMatcher names;
+    private final NameMatcher bound;
+    private final Template template;
+
+    private Validation(final NameMatcher names, final NameMatcher bound, final Template template) {
+        this.names = names;
+        this.bound = bound;
+        this.template = template;
     }
 
     @Override
     public boolean test(final S3File s3File) {
-        return predicate.test(s3File);
+        final String name = s3File.getName();
+        return names.matches(name) && bound.matches(name) && template.filters.test(s3File);
+    }
+
+    /**
+     * Checks the name rules against the name within a listing key, without
+     * creating an {@link S3File}.
+     */
+    boolean matchesKey(final String key) {
+        return names.matchesKey(key) && bound.matchesKey(key);
+    }
+
+    /**
+     * Runs only the {@link Filter} predicates, for a listed file whose name
+     * has already been checked by {@link #matchesKey(String)}.
+     *
+     * <p>If the predicates made a request for the file, they will make
+     * one for every entry of the listing; this is logged once.
+     */
+    boolean testFilters(final S3File s3File) {
+        if (template.none) return true;
+
+        final Object before = s3File.state();
+        final boolean accepted = template.filters.test(s3File);
+        if (s3File.state() != before) template.requested(s3File);
+        return accepted;
+    }
+
+    /**
+     * @return whether the {@link Filter} predicates declare attributes a
+     *         listing does not include
+     */
+    boolean needsMetadata() {
+        return template.metadata;
     }
 
     public static Builder builder() {
@@ -79,72 +121,49 @@ public class Validation implements Predicate<S3File> {
         }
 
         public Validation build() {
-            Predicate<S3File> predicate = file -> true;
+            return template().bind(NameMatcher.ANY);
+        }
+
+        /**
+         * Compiles the annotations into a template that can later be
+         * completed with the rules for values bound from call arguments.
+         */
+        Template template() {
+            final NameMatcher.Builder names = NameMatcher.builder();
+            final List<Filter> filters = new ArrayList<>();
 
             // Type-level annotations first
             if (type != null) {
-                predicate = predicate.and(fromAnnotations(type, false));
+                names(names, type, false);
+                filters.addAll(List.of(type.getAnnotationsByType(Filter.class)));
             }
 
             // Method-level annotations second
             if (element != null) {
-                predicate = predicate.and(fromAnnotations(element, prefix));
+                names(names, element, prefix);
+                filters.addAll(List.of(element.getAnnotationsByType(Filter.class)));
             }
 
-            return new Validation(predicate);
+            return new Template(names.build(), filters);
         }
 
-        private static Predicate<S3File> fromAnnotations(final AnnotatedElement element, final boolean applyPrefix) {
-            Predicate<S3File> predicate = file -> true;
+        private static void names(final NameMatcher.Builder names, final AnnotatedElement element,
+                                  final boolean applyPrefix) {
 
             // 1. @Prefix — only when applyPrefix is true and element has the annotation
             if (applyPrefix && element.isAnnotationPresent(Prefix.class)) {
-                final String value = element.getAnnotation(Prefix.class).value();
-                predicate = predicate.and(file -> file.getName().startsWith(value));
+                names.prefix(element.getAnnotation(Prefix.class).value());
             }
 
-            // 2. @Suffix includes
+            // 2. @Suffix includes and excludes
             for (final Suffix suffix : element.getAnnotationsByType(Suffix.class)) {
-                if (suffix.exclude()) continue;
-                final String[] values = suffix.value();
-                predicate = predicate.and(file -> {
-                    final String name = file.getName();
-                    for (final String s : values) {
-                        if (name.endsWith(s)) return true;
-                    }
-                    return false;
-                });
+                names.suffix(suffix.value(), suffix.exclude());
             }
 
-            // 3. @Suffix excludes
-            for (final Suffix suffix : element.getAnnotationsByType(Suffix.class)) {
-                if (!suffix.exclude()) continue;
-                final String[] values = suffix.value();
-                predicate = predicate.and(file -> {
-                    final String name = file.getName();
-                    for (final String s : values) {
-                        if (name.endsWith(s)) return false;
-                    }
-                    return true;
-                });
-            }
-
-            // 4. @Match includes, then excludes
+            // 3. @Match includes and excludes
             for (final Match match : element.getAnnotationsByType(Match.class)) {
-                final Predicate<String> regex = Pattern.compile(match.value()).asMatchPredicate();
-                if (!match.exclude()) {
-                    predicate = predicate.and(file -> regex.test(file.getName()));
-                } else {
-                    predicate = predicate.and(file -> !regex.test(file.getName()));
-                }
+                names.match(NameMatcher.regex(match.value()), match.exclude());
             }
-
-            // 5. @Filter
-            for (final Filter filter : element.getAnnotationsByType(Filter.class)) {
-                predicate = predicate.and(instantiate(filter));
-            }
-
-            return predicate;
         }
 
         private static Predicate<S3File> instantiate(final Filter filter) {
@@ -157,4 +176,58 @@ public class Validation implements Predicate<S3File> {
             }
         }
     }
+
+    /**
+     * The annotations of a type and method compiled once. Values bound
+     * from call arguments are checked after the static names and before
+     * the {@link Filter filters}, in the same position they would have had
+     * as annotations on the method.
+     */
+    static final class Template {
+        private final NameMatcher names;
+        private final Predicate<S3File> filters;
+        private final boolean none;
+        private final boolean metadata;
+        private final String description;
+        private final AtomicBoolean warned = new AtomicBoolean();
+        private final Validation unbound;
+
+        private Template(final NameMatcher names, final List<Filter> filters) {
+            this.names = names;
+            this.none = filters.isEmpty();
+
+            // 4. @Filter
+            Predicate<S3File> predicate = file -> true;
+            boolean metadata = false;
+            for (final Filter filter : filters) {
+                predicate = predicate.and(Builder.instantiate(filter));
+                for (final Filter.Attribute attribute : filter.needs()) {
+                    metadata |= !attribute.isListed();
+                }
+            }
+            this.filters = predicate;
+            this.metadata = metadata;
+            this.description = filters.stream()
+                    .map(filter -> "@Filter(" + filter.value().getSimpleName() + ".class)")
+                    .collect(Collectors.joining(" "));
+            this.unbound = new Validation(names, NameMatcher.ANY, this);
+        }
+
+        /**
+         * @param bound the rules for values bound from call arguments
+         */
+        Validation bind(final NameMatcher bound) {
+            if (bound.isEmpty()) return unbound;
+            return new Validation(names, bound, this);
+        }
+
+        private void requested(final S3File file) {
+            if (!warned.compareAndSet(false, true)) return;
+
+            LOGGER.warning(String.format("%s made a request for the listed file %s and will make one for every "
+                            + "entry of the listing. Declare the attributes it reads with @Filter(needs = ...) "
+                            + "so they are fetched for a whole page at once.",
+                    description, file.getAbsoluteName()));
+        }
+    }
 }
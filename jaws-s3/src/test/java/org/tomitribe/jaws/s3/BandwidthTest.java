@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BandwidthTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+
+    @Test
+    public void burstPassesThenBytesWait() {
+        final Bandwidth bandwidth = Bandwidth.of(1000, 1000);
+
+        assertEquals(0, bandwidth.reserve(1000));
+
+        final long wait = bandwidth.reserve(500);
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(400), "wait " + wait);
+        assertTrue(wait <= TimeUnit.MILLISECONDS.toNanos(500), "wait " + wait);
+        assertEquals(1500, bandwidth.getBytes());
+        assertEquals(Duration.ofNanos(wait), bandwidth.getDelay());
+    }
+
+    @Test
+    public void invalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> Bandwidth.of(0));
+        assertThrows(IllegalArgumentException.class, () -> Bandwidth.of(100, 0));
+    }
+
+    @Test
+    public void chunksKeepTheirOrder() throws Exception {
+        final List<ByteBuffer> chunks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            chunks.add(ByteBuffer.wrap(new byte[]{(byte) i}));
+        }
+
+        final Bandwidth bandwidth = Bandwidth.of(200, 1);
+        final List<Integer> received = new ArrayList<>();
+        final CompletableFuture<Void> complete = new CompletableFuture<>();
+        final long start = System.nanoTime();
+
+        new ThrottledPublisher(new ListPublisher(chunks), List.of(bandwidth)).subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(final Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(final ByteBuffer buffer) {
+                received.add((int) buffer.get());
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+                complete.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                complete.complete(null);
+            }
+        });
+
+        complete.get(5, TimeUnit.SECONDS);
+
+        assertEquals(20, received.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, (int) received.get(i));
+        }
+        // 19 bytes over the burst at 200 bytes per second
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(80));
+    }
+
+    @Test
+    public void completionFollowsTheLastChunk() throws Exception {
+        final List<ByteBuffer> chunks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            chunks.add(ByteBuffer.wrap(new byte[10]));
+        }
+
+        // Every chunk past the first is held back by the timer
+        final Bandwidth bandwidth = Bandwidth.of(1000, 10);
+        final List<Integer> receivedAt = new CopyOnWriteArrayList<>();
+        final List<ByteBuffer> received = new CopyOnWriteArrayList<>();
+        final CompletableFuture<Void> complete = new CompletableFuture<>();
+
+        new ThrottledPublisher(new ListPublisher(chunks), List.of(bandwidth)).subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(final Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(final ByteBuffer buffer) {
+                received.add(buffer);
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+                complete.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                receivedAt.add(received.size());
+                complete.complete(null);
+            }
+        });
+
+        complete.get(5, TimeUnit.SECONDS);
+        Thread.sleep(50);
+
+        // Nothing is delivered after the completion signal
+        assertEquals(List.of(5), receivedAt);
+        assertEquals(5, received.size());
+    }
+
+    @Test
+    public void clientLimitAppliesToPutsAndGets() {
+        final Bandwidth bandwidth = Bandwidth.of(200_000, 50_000);
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .bandwidth(bandwidth)
+                .build();
+        final S3Bucket bucket = s3Client.createBucket("throttled");
+
+        final byte[] content = new byte[100_000];
+        content[99_999] = 42;
+
+        final long start = System.nanoTime();
+        bucket.put("data.bin", content);
+        final byte[] read = bucket.getObjectAsBytesAsync("data.bin").join().asByteArray();
+        final long elapsed = System.nanoTime() - start;
+
+        assertArrayEquals(content, read);
+        assertTrue(bandwidth.getBytes() >= 200_000, "bytes " + bandwidth.getBytes());
+        // 150,000 bytes over the burst at 200,000 bytes per second
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(600), "elapsed " + elapsed);
+    }
+
+    @Test
+    public void bucketLimitOnlyAppliesToItsBucket() {
+        final Bandwidth limited = Bandwidth.of(1_000_000);
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .bucketBandwidth("limited", limited)
+                .build();
+
+        s3Client.createBucket("limited").put("a.txt", "hello");
+        s3Client.createBucket("other").put("b.bin", new byte[1000]);
+
+        assertSame(limited, s3Client.getBandwidth("limited"));
+        assertNull(s3Client.getBandwidth("other"));
+        assertNull(s3Client.getBandwidth());
+        assertTrue(limited.getBytes() >= 5 && limited.getBytes() < 1000, "bytes " + limited.getBytes());
+    }
+
+    /**
+     * Emits each buffer of a list as it is requested.
+     */
+    private static class ListPublisher implements Publisher<ByteBuffer> {
+        private final List<ByteBuffer> buffers;
+
+        ListPublisher(final List<ByteBuffer> buffers) {
+            this.buffers = buffers;
+        }
+
+        @Override
+        public void subscribe(final Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                private int next;
+                private boolean completed;
+
+                @Override
+                public void request(final long n) {
+                    for (long i = 0; i < n && next < buffers.size(); i++) {
+                        subscriber.onNext(buffers.get(next++));
+                    }
+                    if (next == buffers.size() && !completed) {
+                        completed = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    next = buffers.size();
+                    completed = true;
+                }
+            });
+        }
+    }
+}
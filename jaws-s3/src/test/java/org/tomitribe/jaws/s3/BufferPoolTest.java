@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BufferPoolTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+
+    @Test
+    public void reservationsWaitForRoom() {
+        final BufferPool pool = BufferPool.builder().capacity(100).build();
+
+        assertTrue(pool.reserve(60).isDone());
+        final CompletableFuture<Void> second = pool.reserve(60);
+        assertFalse(second.isDone());
+        assertEquals(1, pool.getWaiting());
+
+        pool.release(60);
+        assertTrue(second.isDone());
+        assertEquals(60, pool.getUsed());
+    }
+
+    @Test
+    public void oversizedReservationIsGrantedAlone() {
+        final BufferPool pool = BufferPool.builder().capacity(100).build();
+
+        assertTrue(pool.reserve(500).isDone());
+        assertFalse(pool.reserve(1).isDone());
+    }
+
+    @Test
+    public void cancelledReservationGivesUpItsPlace() {
+        final BufferPool pool = BufferPool.builder().capacity(100).build();
+
+        pool.reserve(100);
+        pool.reserve(50).cancel(false);
+        pool.release(100);
+
+        assertEquals(0, pool.getUsed());
+    }
+
+    @Test
+    public void cancelledReservationDoesNotHoldBackOthers() {
+        final BufferPool pool = BufferPool.builder().capacity(100).build();
+
+        assertTrue(pool.reserve(80).isDone());
+        final CompletableFuture<Void> large = pool.reserve(500);
+        final CompletableFuture<Void> small = pool.reserve(10);
+        assertFalse(small.isDone());
+
+        // Once the large one gives up, the small one fits beside the first
+        large.cancel(false);
+        assertTrue(small.isDone());
+        assertEquals(90, pool.getUsed());
+        assertEquals(0, pool.getWaiting());
+    }
+
+    @Test
+    public void buffersAreReused() {
+        final BufferPool pool = BufferPool.builder().capacity(1024).bufferSize(256).build();
+
+        final ByteBuffer first = pool.take();
+        first.put((byte) 1);
+        pool.give(first);
+
+        final ByteBuffer second = pool.take();
+        assertSame(first, second);
+        assertEquals(0, second.position());
+        assertEquals(1, pool.getAllocated());
+        assertEquals(1, pool.getReused());
+    }
+
+    @Test
+    public void admittedWorkMayOverdraw() {
+        final BufferPool pool = BufferPool.builder().capacity(512).bufferSize(256).build();
+
+        final List<ByteBuffer> held = IntStream.range(0, 4)
+                .mapToObj(i -> i == 0 ? pool.take() : pool.takeMore())
+                .collect(Collectors.toList());
+        assertEquals(1024, pool.getUsed());
+
+        // New work waits until the overdraft is repaid
+        final CompletableFuture<Void> next = pool.reserve(1);
+        assertFalse(next.isDone());
+
+        held.forEach(pool::discard);
+        assertTrue(next.isDone());
+    }
+
+    @Test
+    public void directBuffers() {
+        final BufferPool pool = BufferPool.builder().direct(true).build();
+        assertTrue(pool.take().isDirect());
+    }
+
+    @Test
+    public void streamUploadsUsePooledBuffers() {
+        final BufferPool pool = BufferPool.builder().capacity(4096).bufferSize(64).build();
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .bufferPool(pool)
+                .build();
+
+        final String content = IntStream.range(0, 100).mapToObj(Integer::toString).collect(Collectors.joining(","));
+        final S3Bucket bucket = s3Client.createBucket("repository");
+
+        bucket.setObjectAsStream("first.txt", new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        bucket.setObjectAsStream("second.txt", new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(content, bucket.getObjectAsString("first.txt"));
+        assertEquals(content, bucket.getObjectAsString("second.txt"));
+        assertTrue(pool.getReused() > 0);
+        assertEquals(0, pool.getUsed());
+    }
+
+    @Test
+    public void readsStayWithinBudget() {
+        final BufferPool pool = BufferPool.builder().capacity(1000).build();
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .bufferPool(pool)
+                .build();
+
+        final String large = String.join("", Collections.nCopies(3000, "x"));
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("large.txt", large);
+        for (int i = 0; i < 10; i++) {
+            bucket.put("small-" + i + ".txt", String.join("", Collections.nCopies(400, "y")));
+        }
+
+        // Larger than the whole budget, so read alone
+        assertEquals(large, bucket.getObjectAsString("large.txt"));
+
+        final List<CompletableFuture<String>> reads = IntStream.range(0, 10)
+                .mapToObj(i -> bucket.getObjectAsStringAsync("small-" + i + ".txt"))
+                .collect(Collectors.toList());
+        reads.forEach(read -> assertEquals(400, read.join().length()));
+
+        assertEquals(0, pool.getUsed());
+        assertEquals(0, pool.getWaiting());
+    }
+}
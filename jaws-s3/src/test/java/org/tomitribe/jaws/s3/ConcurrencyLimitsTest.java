@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrencyLimitsTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+
+    private final S3Exception slowDown = S3Exception.builder().statusCode(503).message("SlowDown").build();
+
+    @Test
+    public void partitions() {
+        assertEquals("repository/logs/", ConcurrencyLimits.partition("repository", "logs/2024/01/app.log"));
+        assertEquals("repository/logs/", ConcurrencyLimits.partition("repository", "logs/"));
+        assertEquals("repository/", ConcurrencyLimits.partition("repository", "readme.txt"));
+        assertEquals("repository/", ConcurrencyLimits.partition("repository", null));
+    }
+
+    @Test
+    public void requestsOverTheLimitWait() {
+        final ConcurrencyLimits limits = ConcurrencyLimits.builder().initialLimit(2).build();
+
+        final ConcurrencyLimits.Permit first = limits.acquire("repository", "logs/a").join();
+        limits.acquire("repository", "logs/b").join();
+        final CompletableFuture<ConcurrencyLimits.Permit> third = limits.acquire("repository", "logs/c");
+
+        assertFalse(third.isDone());
+        assertEquals(1, limits.getQueued());
+
+        // Other partitions are not affected
+        assertTrue(limits.acquire("repository", "images/a").isDone());
+
+        first.release(null);
+        assertTrue(third.isDone());
+        assertEquals(0, limits.getQueued());
+    }
+
+    @Test
+    public void throttlingCutsTheLimitOncePerRound() {
+        final ConcurrencyLimits limits = ConcurrencyLimits.builder().initialLimit(8).build();
+
+        final List<ConcurrencyLimits.Permit> permits = acquire(limits, 8);
+        permits.get(0).release(slowDown);
+        permits.get(1).release(slowDown);
+        permits.get(2).release(slowDown);
+
+        assertEquals(4, limits.getLimit("repository", "logs/a"));
+        assertEquals(3, limits.getThrottles());
+
+        // Other failures leave the limit alone
+        permits.subList(3, 8).forEach(permit -> permit.release(new IllegalStateException("timeout")));
+        assertEquals(4, limits.getLimit("repository", "logs/a"));
+
+        // Requests sent after the cut can cut it again
+        final List<ConcurrencyLimits.Permit> more = acquire(limits, 1);
+        more.get(0).release(slowDown);
+        assertEquals(2, limits.getLimit("repository", "logs/a"));
+    }
+
+    @Test
+    public void limitRecoversOnSuccess() {
+        final ConcurrencyLimits limits = ConcurrencyLimits.builder().initialLimit(4).minLimit(1).build();
+
+        acquire(limits, 1).get(0).release(slowDown);
+        assertEquals(2, limits.getLimit("repository", "logs/a"));
+
+        for (int i = 0; i < 20; i++) {
+            acquire(limits, 2).forEach(permit -> permit.release(null));
+        }
+
+        assertEquals(4, limits.getLimit("repository", "logs/a"));
+        // Recovered and idle, so no longer tracked
+        assertTrue(limits.getLimits().isEmpty());
+    }
+
+    @Test
+    public void unusedPermitsDoNotGrowTheLimit() {
+        final ConcurrencyLimits limits = ConcurrencyLimits.builder().initialLimit(4).minLimit(1).build();
+
+        acquire(limits, 1).get(0).release(slowDown);
+        assertEquals(2, limits.getLimit("repository", "logs/a"));
+
+        for (int i = 0; i < 20; i++) {
+            acquire(limits, 2).forEach(ConcurrencyLimits.Permit::discard);
+        }
+        assertEquals(2, limits.getLimit("repository", "logs/a"));
+        assertEquals(0, limits.getInFlight());
+    }
+
+    @Test
+    public void requestsThatCannotStartDoNotGrowTheLimit() {
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .concurrencyLimits(ConcurrencyLimits.builder().initialLimit(4).minLimit(1).build())
+                .build();
+        final ConcurrencyLimits limits = s3Client.getConcurrencyLimits();
+
+        limits.acquire("repository", "logs/a").join().release(slowDown);
+        assertEquals(2, limits.getLimit("repository", "logs/a"));
+
+        // Keeps the partition busy enough that successes would grow it
+        final ConcurrencyLimits.Permit busy = limits.acquire("repository", "logs/a").join();
+        for (int i = 0; i < 20; i++) {
+            final CompletableFuture<String> response = s3Client.execute(Operation.GET, "repository", "logs/" + i, () -> {
+                throw new IllegalStateException("not sent");
+            });
+            assertThrows(IllegalStateException.class, () -> S3Client.join(response));
+        }
+        busy.discard();
+
+        assertEquals(2, limits.getLimit("repository", "logs/a"));
+        assertEquals(0, limits.getInFlight());
+    }
+
+    @Test
+    public void cancelledWaiterGivesUpItsPlace() {
+        final ConcurrencyLimits limits = ConcurrencyLimits.builder().initialLimit(1).build();
+
+        final ConcurrencyLimits.Permit permit = limits.acquire("repository", "logs/a").join();
+        final CompletableFuture<ConcurrencyLimits.Permit> waiter = limits.acquire("repository", "logs/b");
+        waiter.cancel(false);
+
+        permit.release(null);
+
+        assertEquals(0, limits.getInFlight());
+        assertTrue(limits.acquire("repository", "logs/c").isDone());
+    }
+
+    @Test
+    public void invalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> ConcurrencyLimits.builder().minLimit(10).initialLimit(5).build());
+        assertThrows(IllegalArgumentException.class, () -> ConcurrencyLimits.builder().backoff(1));
+    }
+
+    @Test
+    public void clientRequestsAreLimited() {
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .concurrencyLimits(ConcurrencyLimits.builder().initialLimit(4).build())
+                .build();
+
+        final S3Bucket bucket = s3Client.createBucket("repository");
+        final List<CompletableFuture<?>> puts = IntStream.range(0, 20)
+                .mapToObj(i -> bucket.putObjectAsync("logs/" + i + ".log", "line " + i))
+                .collect(Collectors.toList());
+        CompletableFuture.allOf(puts.toArray(new CompletableFuture[0])).join();
+
+        assertEquals(20, bucket.objects().count());
+        assertEquals(0, s3Client.getConcurrencyLimits().getInFlight());
+
+        final CompletableFuture<Object> throttled = s3Client.execute(Operation.GET, "repository", "logs/0.log",
+                () -> CompletableFuture.failedFuture(slowDown));
+        assertThrows(S3Exception.class, () -> S3Client.join(throttled));
+
+        assertEquals(2, s3Client.getConcurrencyLimits().getLimit("repository", "logs/x"));
+        assertEquals(1, s3Client.getConcurrencyLimits().getThrottles());
+    }
+
+    private List<ConcurrencyLimits.Permit> acquire(final ConcurrencyLimits limits, final int count) {
+        final List<ConcurrencyLimits.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            permits.add(limits.acquire("repository", "logs/" + i).join());
+        }
+        return permits;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HedgingTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+
+    private final List<CompletableFuture<String>> sent = new CopyOnWriteArrayList<>();
+
+    private final Hedging hedging = Hedging.builder()
+            .operations(Operation.GET, Operation.HEAD)
+            .minDelay(Duration.ofMillis(50))
+            .maxDelay(Duration.ofMillis(50))
+            .build();
+
+    private Supplier<CompletableFuture<String>> request() {
+        return () -> {
+            final CompletableFuture<String> future = new CompletableFuture<>();
+            sent.add(future);
+            return future;
+        };
+    }
+
+    @Test
+    public void fastRequestIsNotHedged() throws Exception {
+        final CompletableFuture<String> result = hedging.execute(Operation.GET, request());
+        sent.get(0).complete("primary");
+
+        assertEquals("primary", result.get(1, TimeUnit.SECONDS));
+        Thread.sleep(150);
+
+        assertEquals(1, sent.size());
+        assertEquals(1, hedging.getRequests(Operation.GET));
+        assertEquals(0, hedging.getHedges(Operation.GET));
+    }
+
+    @Test
+    public void slowRequestIsHedged() throws Exception {
+        final CompletableFuture<String> result = hedging.execute(Operation.GET, request());
+
+        awaitSent(2);
+        sent.get(1).complete("hedge");
+
+        assertEquals("hedge", result.get(1, TimeUnit.SECONDS));
+        assertTrue(sent.get(0).isCancelled());
+        assertEquals(1, hedging.getHedges(Operation.GET));
+        assertEquals(1, hedging.getWins(Operation.GET));
+        assertEquals(1.0, hedging.getWinRate(Operation.GET));
+    }
+
+    @Test
+    public void primaryCanStillWin() throws Exception {
+        final CompletableFuture<String> result = hedging.execute(Operation.HEAD, request());
+
+        awaitSent(2);
+        sent.get(0).complete("primary");
+
+        assertEquals("primary", result.get(1, TimeUnit.SECONDS));
+        assertTrue(sent.get(1).isCancelled());
+        assertEquals(1.0, hedging.getHedgeRate(Operation.HEAD));
+        assertEquals(0, hedging.getWins(Operation.HEAD));
+    }
+
+    @Test
+    public void failedHedgeWaitsForPrimary() throws Exception {
+        final CompletableFuture<String> result = hedging.execute(Operation.GET, request());
+
+        awaitSent(2);
+        sent.get(1).completeExceptionally(new IllegalStateException("hedge failed"));
+        assertFalse(result.isDone());
+
+        sent.get(0).complete("primary");
+        assertEquals("primary", result.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failureWithoutHedgeIsImmediate() {
+        final CompletableFuture<String> result = hedging.execute(Operation.GET, request());
+
+        final IllegalStateException failure = new IllegalStateException("not found");
+        sent.get(0).completeExceptionally(failure);
+
+        assertSame(failure, assertThrows(CompletionException.class, result::join).getCause());
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void cancelStopsBothRequests() throws Exception {
+        final CompletableFuture<String> result = hedging.execute(Operation.GET, request());
+        awaitSent(2);
+
+        result.cancel(true);
+
+        assertTrue(sent.get(0).isCancelled());
+        assertTrue(sent.get(1).isCancelled());
+    }
+
+    @Test
+    public void otherOperationsPassThrough() throws Exception {
+        final CompletableFuture<String> result = hedging.execute(Operation.LIST, request());
+
+        assertSame(sent.get(0), result);
+        assertNull(hedging.getDelay(Operation.LIST));
+        assertEquals(0, hedging.getRequests(Operation.LIST));
+    }
+
+    @Test
+    public void delayFollowsObservedLatency() {
+        final Hedging adaptive = Hedging.builder()
+                .percentile(50)
+                .minDelay(Duration.ofMillis(1))
+                .maxDelay(Duration.ofSeconds(10))
+                .build();
+
+        assertEquals(Duration.ofSeconds(10), adaptive.getDelay(Operation.GET));
+
+        for (int i = 0; i < 64; i++) {
+            adaptive.execute(Operation.GET, () -> CompletableFuture.completedFuture("fast")).join();
+        }
+
+        assertTrue(adaptive.getDelay(Operation.GET).compareTo(Duration.ofSeconds(1)) < 0,
+                "delay " + adaptive.getDelay(Operation.GET));
+    }
+
+    @Test
+    public void writesCannotBeHedged() {
+        assertThrows(IllegalArgumentException.class, () -> Hedging.builder().operations(Operation.PUT));
+        assertThrows(IllegalArgumentException.class, () -> Hedging.builder()
+                .minDelay(Duration.ofSeconds(2))
+                .maxDelay(Duration.ofSeconds(1))
+                .build());
+    }
+
+    @Test
+    public void clientReadsAreHedged() {
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .hedging(Hedging.builder().build())
+                .build();
+
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("config.json", "{}")
+                .put("readme.txt", "hello");
+
+        assertEquals("{}", bucket.getObjectAsString("config.json"));
+        assertEquals(2, bucket.root().files().count());
+
+        final Hedging stats = s3Client.getHedging();
+        assertEquals(1, stats.getRequests(Operation.GET));
+        assertEquals(1, stats.getRequests(Operation.LIST));
+    }
+
+    private void awaitSent(final int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, sent.size());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NameMatcherTest {
+
+    @Test
+    public void empty() {
+        final NameMatcher matcher = NameMatcher.builder().build();
+
+        assertTrue(matcher.isEmpty());
+        assertTrue(matcher.matches(""));
+        assertTrue(matcher.matches("anything"));
+    }
+
+    @Test
+    public void prefix() {
+        final NameMatcher matcher = NameMatcher.builder()
+                .prefix("report-")
+                .build();
+
+        assertTrue(matcher.matches("report-2024.csv"));
+        assertFalse(matcher.matches("summary.csv"));
+        assertFalse(matcher.matches("report"));
+    }
+
+    @Test
+    public void suffixGroupsAreAnded() {
+        final NameMatcher matcher = NameMatcher.builder()
+                .suffix(new String[]{".gz", ".zip"}, false)
+                .suffix(new String[]{".tar.gz", ".zip"}, false)
+                .build();
+
+        assertTrue(matcher.matches("site.tar.gz"));
+        assertTrue(matcher.matches("site.zip"));
+        assertFalse(matcher.matches("site.gz"));
+        assertFalse(matcher.matches("site.tar"));
+    }
+
+    @Test
+    public void suffixExcludes() {
+        final NameMatcher matcher = NameMatcher.builder()
+                .suffix(new String[]{".csv"}, false)
+                .suffix(new String[]{".bak", "-old.csv"}, true)
+                .build();
+
+        assertTrue(matcher.matches("report.csv"));
+        assertFalse(matcher.matches("report-old.csv"));
+        assertFalse(matcher.matches("report.csv.bak"));
+        assertFalse(matcher.matches("report.txt"));
+    }
+
+    @Test
+    public void manySuffixGroups() {
+        final NameMatcher.Builder builder = NameMatcher.builder();
+        for (int i = 0; i < 70; i++) {
+            builder.suffix(new String[]{".txt", "." + i}, false);
+        }
+        final NameMatcher matcher = builder.build();
+
+        assertTrue(matcher.matches("notes.txt"));
+        assertFalse(matcher.matches("notes.5"));
+    }
+
+    @Test
+    public void regexesAreMerged() {
+        final NameMatcher matcher = NameMatcher.builder()
+                .match(NameMatcher.regex(".*\\.json"), false)
+                .match(NameMatcher.regex("[a-z]+\\..*"), false)
+                .match(NameMatcher.regex("bob\\..*"), true)
+                .match(NameMatcher.regex(".*\\.tmp\\.json"), true)
+                .build();
+
+        assertTrue(matcher.matches("alice.json"));
+        assertFalse(matcher.matches("bob.json"));
+        assertFalse(matcher.matches("Carol.json"));
+        assertFalse(matcher.matches("dave.xml"));
+        assertFalse(matcher.matches("eve.tmp.json"));
+    }
+
+    @Test
+    public void patternFlagsAreKept() {
+        final NameMatcher matcher = NameMatcher.builder()
+                .match(NameMatcher.regex(Pattern.compile("ALICE\\..*", Pattern.CASE_INSENSITIVE)), false)
+                .match(NameMatcher.regex(".*\\.json"), false)
+                .build();
+
+        assertTrue(matcher.matches("alice.json"));
+        assertFalse(matcher.matches("alice.xml"));
+    }
+
+    @Test
+    public void backReferencesAreNotMerged() {
+        final NameMatcher matcher = NameMatcher.builder()
+                .match(NameMatcher.regex("(.)\\1.*"), false)
+                .match(NameMatcher.regex("(?<x>[a-z])\\k<x>.*"), false)
+                .match(NameMatcher.regex(".*\\.txt"), false)
+                .build();
+
+        assertTrue(matcher.matches("aab.txt"));
+        assertFalse(matcher.matches("abb.txt"));
+        assertFalse(matcher.matches("aab.csv"));
+    }
+
+    @Test
+    public void keys() {
+        final NameMatcher matcher = NameMatcher.builder()
+                .prefix("re")
+                .suffix(new String[]{"port"}, false)
+                .match(NameMatcher.regex("[a-z]+"), false)
+                .build();
+
+        assertTrue(matcher.matchesKey("report"));
+        assertTrue(matcher.matchesKey("a/b/report"));
+        assertTrue(matcher.matchesKey("a/b/report/"));
+        assertFalse(matcher.matchesKey("report/b"));
+        assertFalse(matcher.matchesKey("a/reports"));
+        assertFalse(matcher.matchesKey("a/re/"));
+    }
+
+    @Test
+    public void regexesAreCached() {
+        assertSame(NameMatcher.regex("report-.*"), NameMatcher.regex("report-.*"));
+        assertSame(NameMatcher.regex("report-.*"), NameMatcher.regex(Pattern.compile("report-.*")));
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.tomitribe.jaws.s3.Asserts.assertType;
+
+public class ObjectMetadataLazyTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+    private S3Bucket bucket;
+    private S3File file;
+
+    @BeforeEach
+    public final void setUp() throws Exception {
+        final S3AsyncClient s3 = mockS3.getS3Client();
+        bucket = new S3Client(s3).createBucket("repository");
+
+        s3.putObject(PutObjectRequest.builder()
+                        .bucket("repository")
+                        .key("reports/summary.json")
+                        .contentType("application/json")
+                        .metadata(Map.of("build", "42"))
+                        .build(),
+                AsyncRequestBody.fromString("{\"ok\":true}")).join();
+
+        file = bucket.root().getFile("reports").files().findFirst().get();
+        assertType(file, "ObjectSummary");
+    }
+
+    @Test
+    public void listingFieldsDoNotLoad() {
+        final ObjectMetadata metadata = file.getObjectMetadata();
+
+        assertEquals(11, metadata.getContentLength());
+        assertEquals(file.getETag(), metadata.getETag());
+        assertEquals(file.getLastModified(), metadata.getLastModified());
+
+        // No HEAD yet
+        assertType(file, "ObjectSummary");
+    }
+
+    @Test
+    public void contentTypeLoads() {
+        final ObjectMetadata metadata = file.getObjectMetadata();
+
+        assertEquals("application/json", metadata.getContentType());
+        assertType(file, "Metadata");
+
+        assertEquals("42", metadata.getUserMetadata().get("build"));
+    }
+
+    @Test
+    public void userMetadataLoads() {
+        assertEquals("42", file.getObjectMetadata().getUserMetadata().get("build"));
+        assertType(file, "Metadata");
+    }
+
+    @Test
+    public void sameInstanceUntilResolved() {
+        assertSame(file.getObjectMetadata(), file.getObjectMetadata());
+    }
+
+    @Test
+    public void concurrentAccess() {
+        final ObjectMetadata metadata = file.getObjectMetadata();
+
+        final List<CompletableFuture<String>> futures = IntStream.range(0, 8)
+                .mapToObj(i -> CompletableFuture.supplyAsync(metadata::getContentType))
+                .collect(Collectors.toList());
+
+        for (final CompletableFuture<String> future : futures) {
+            assertEquals("application/json", future.join());
+        }
+    }
+
+    @Test
+    public void toBuilderIsComplete() {
+        final ObjectMetadata copy = file.getObjectMetadata().toBuilder().build();
+
+        assertEquals("application/json", copy.getContentType());
+        assertEquals("42", copy.getUserMetadata().get("build"));
+        assertEquals(11, copy.getContentLength());
+    }
+
+    @Test
+    public void deletedAfterListing() {
+        final ObjectMetadata metadata = file.getObjectMetadata();
+        bucket.deleteObject("reports/summary.json");
+
+        assertThrows(NoSuchS3ObjectException.class, metadata::getContentType);
+        assertType(file, "NewObject");
+    }
+}
@@ -140,4 +140,45 @@ public class PathTest {
         assertSame(Path.ROOT, path.getParent());
     }
 
+    @Test
+    public void parentIsCached() throws Exception {
+        final Path path = Path.fromKey("colors/red/crimson.txt");
+
+        assertSame(path.getParent(), path.getParent());
+        assertEquals("colors/red", path.getParent().getAbsoluteName());
+        assertEquals("colors", path.getParent().getParent().getAbsoluteName());
+    }
+
+    @Test
+    public void childSharesParent() throws Exception {
+        final Path path = Path.fromKey("colors");
+
+        assertSame(path, path.getChild("red.txt").getParent());
+        assertSame(path, path.getChild("green.txt").getParent());
+    }
+
+    @Test
+    public void siblingsShareParent() throws Exception {
+        final Path.Siblings siblings = new Path.Siblings();
+
+        final Path red = siblings.fromKey("colors/red.txt");
+        final Path green = siblings.fromKey("colors/green.txt");
+        final Path dir = siblings.fromKey("colors/shades/");
+        final Path other = siblings.fromKey("fruits/apple.txt");
+
+        assertSame(red.getParent(), green.getParent());
+        assertSame(red.getParent(), dir.getParent());
+        assertEquals("shades", dir.getName());
+        assertEquals("fruits", other.getParent().getAbsoluteName());
+    }
+
+    @Test
+    public void siblingsAtRoot() throws Exception {
+        final Path.Siblings siblings = new Path.Siblings();
+
+        assertSame(Path.ROOT, siblings.fromKey("red.txt").getParent());
+        assertSame(Path.ROOT, siblings.fromKey("green.txt").getParent());
+        assertSame(Path.ROOT, siblings.fromKey("/"));
+    }
+
 }
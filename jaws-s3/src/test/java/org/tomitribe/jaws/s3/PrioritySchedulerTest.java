@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.tomitribe.jaws.s3.Priority.Level.BACKGROUND;
+import static org.tomitribe.jaws.s3.Priority.Level.INTERACTIVE;
+import static org.tomitribe.jaws.s3.Priority.Level.NORMAL;
+
+public class PrioritySchedulerTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+
+    @Test
+    public void higherClassesGoFirst() {
+        final PriorityScheduler scheduler = PriorityScheduler.builder()
+                .concurrency(2)
+                .reserve(INTERACTIVE, 0)
+                .reserve(BACKGROUND, 0)
+                .build();
+
+        final CompletableFuture<PriorityScheduler.Slot> first = scheduler.acquire(BACKGROUND);
+        assertTrue(first.isDone());
+        assertTrue(scheduler.acquire(BACKGROUND).isDone());
+
+        final CompletableFuture<PriorityScheduler.Slot> background = scheduler.acquire(BACKGROUND);
+        final CompletableFuture<PriorityScheduler.Slot> normal = scheduler.acquire(NORMAL);
+        final CompletableFuture<PriorityScheduler.Slot> interactive = scheduler.acquire(INTERACTIVE);
+        assertEquals(1, scheduler.getQueued(INTERACTIVE));
+
+        first.join().release();
+        assertTrue(interactive.isDone());
+        assertFalse(normal.isDone());
+        assertFalse(background.isDone());
+
+        interactive.join().release();
+        assertTrue(normal.isDone());
+        assertFalse(background.isDone());
+    }
+
+    @Test
+    public void reservedSlotsAreKeptFree() {
+        final PriorityScheduler scheduler = PriorityScheduler.builder()
+                .concurrency(4)
+                .reserve(INTERACTIVE, 1)
+                .reserve(BACKGROUND, 0)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(scheduler.acquire(BACKGROUND).isDone());
+        }
+        assertFalse(scheduler.acquire(BACKGROUND).isDone());
+        assertTrue(scheduler.acquire(INTERACTIVE).isDone());
+        assertEquals(3, scheduler.getInFlight(BACKGROUND));
+        assertEquals(1, scheduler.getInFlight(INTERACTIVE));
+    }
+
+    @Test
+    public void limitCapsAClass() {
+        final PriorityScheduler scheduler = PriorityScheduler.builder()
+                .concurrency(10)
+                .reserve(INTERACTIVE, 0)
+                .reserve(BACKGROUND, 0)
+                .limit(BACKGROUND, 2)
+                .build();
+
+        assertTrue(scheduler.acquire(BACKGROUND).isDone());
+        assertTrue(scheduler.acquire(BACKGROUND).isDone());
+        assertFalse(scheduler.acquire(BACKGROUND).isDone());
+        assertTrue(scheduler.acquire(NORMAL).isDone());
+    }
+
+    @Test
+    public void cancelledWaiterGivesUpItsPlace() {
+        final PriorityScheduler scheduler = PriorityScheduler.builder()
+                .concurrency(1)
+                .reserve(INTERACTIVE, 0)
+                .reserve(BACKGROUND, 0)
+                .build();
+
+        final CompletableFuture<PriorityScheduler.Slot> held = scheduler.acquire(NORMAL);
+        scheduler.acquire(INTERACTIVE).cancel(false);
+        final CompletableFuture<PriorityScheduler.Slot> next = scheduler.acquire(BACKGROUND);
+
+        held.join().release();
+        assertTrue(next.isDone());
+        assertEquals(0, scheduler.getInFlight(INTERACTIVE));
+    }
+
+    @Test
+    public void reservationsMustFit() {
+        assertThrows(IllegalArgumentException.class, () -> PriorityScheduler.builder()
+                .concurrency(10)
+                .reserve(INTERACTIVE, 8)
+                .reserve(BACKGROUND, 4)
+                .build());
+    }
+
+    @Test
+    public void scopesNest() {
+        assertEquals(NORMAL, Priority.Scope.current());
+
+        try (Priority.Scope outer = BACKGROUND.scope()) {
+            assertEquals(BACKGROUND, Priority.Scope.current());
+            try (Priority.Scope inner = INTERACTIVE.scope()) {
+                assertEquals(INTERACTIVE, Priority.Scope.current());
+            }
+            assertEquals(BACKGROUND, Priority.Scope.current());
+        }
+
+        assertEquals(NORMAL, Priority.Scope.current());
+    }
+
+    @Test
+    public void throttledPrefixDoesNotHoldSlots() {
+        final PriorityScheduler scheduler = PriorityScheduler.builder()
+                .concurrency(2)
+                .reserve(INTERACTIVE, 0)
+                .reserve(BACKGROUND, 0)
+                .build();
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .priorities(scheduler)
+                .concurrencyLimits(ConcurrencyLimits.builder()
+                        .minLimit(1)
+                        .initialLimit(1)
+                        .build())
+                .build();
+
+        // The hot prefix has room for one request, the second waits for it
+        final CompletableFuture<String> hot = new CompletableFuture<>();
+        final CompletableFuture<String> first = s3Client.execute(Operation.GET, "repository", "hot/1", () -> hot);
+        final CompletableFuture<String> second = s3Client.execute(Operation.GET, "repository", "hot/2",
+                () -> CompletableFuture.completedFuture("hot/2"));
+        assertEquals(1, scheduler.getInFlight(NORMAL));
+
+        // The waiting request holds no slot, so another prefix still starts
+        final CompletableFuture<String> cold = s3Client.execute(Operation.GET, "repository", "cold/1",
+                () -> CompletableFuture.completedFuture("cold/1"));
+        assertEquals("cold/1", cold.join());
+        assertFalse(second.isDone());
+
+        hot.complete("hot/1");
+        assertEquals("hot/1", first.join());
+        assertEquals("hot/2", second.join());
+        assertEquals(0, scheduler.getInFlight(NORMAL));
+    }
+
+    @Test
+    public void scopeClassesFileRequests() {
+        final PriorityScheduler scheduler = PriorityScheduler.builder().build();
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .priorities(scheduler)
+                .build();
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("readme.txt", "hello");
+
+        try (Priority.Scope scope = INTERACTIVE.scope()) {
+            assertEquals("hello", bucket.getObjectAsString("readme.txt"));
+        }
+
+        assertEquals(1, scheduler.getStarted(INTERACTIVE));
+        assertEquals(0, scheduler.getInFlight(INTERACTIVE));
+    }
+
+    @Test
+    public void annotatedInterfaceClassesItsListings() {
+        final PriorityScheduler scheduler = PriorityScheduler.builder().build();
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .priorities(scheduler)
+                .build();
+        final S3Bucket bucket = s3Client.createBucket("repository");
+        for (int i = 0; i < 5; i++) {
+            bucket.put("logs/" + i + ".log", "line " + i);
+        }
+
+        final long normal = scheduler.getStarted(NORMAL);
+        final Backfill backfill = bucket.as(Backfill.class);
+        final List<String> names = backfill.logs()
+                .map(S3File::getName)
+                .collect(Collectors.toList());
+
+        assertEquals(5, names.size());
+        assertTrue(scheduler.getStarted(BACKGROUND) > 0);
+        assertEquals(normal, scheduler.getStarted(NORMAL));
+        assertEquals(0, scheduler.getStarted(INTERACTIVE));
+    }
+
+    @Priority(Priority.Level.BACKGROUND)
+    public interface Backfill extends S3.Dir {
+
+        @Recursive
+        Stream<S3File> logs();
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProxyTypeTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+
+    @Test
+    public void computedOncePerInterface() {
+        final ProxyType type = ProxyType.of(Repository.class);
+
+        assertSame(type, ProxyType.of(Repository.class));
+        assertSame(type.getMethodAnnotations(), ProxyType.of(Repository.class).getMethodAnnotations());
+        assertEquals(Priority.Level.BACKGROUND, type.getPriority().value());
+    }
+
+    @Test
+    public void proxiesShareTheirClass() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("org.color/red/1.4/foo.txt", "red")
+                .put("org.color/green/2.3/bar.txt", "green");
+
+        final List<Group> groups = bucket.as(Repository.class).groups().collect(Collectors.toList());
+        assertEquals(1, groups.size());
+
+        final List<Artifact> artifacts = groups.get(0).artifacts().collect(Collectors.toList());
+        assertEquals(2, artifacts.size());
+        assertSame(artifacts.get(0).getClass(), artifacts.get(1).getClass());
+        assertEquals("green", artifacts.get(0).file().getName());
+    }
+
+    @Test
+    public void plansAreCompiledOnce() throws Exception {
+        final ProxyType type = ProxyType.of(Repository.class);
+        final Method groups = Repository.class.getMethod("groups");
+
+        assertSame(type.plan(groups), type.plan(groups));
+    }
+
+    @Test
+    public void defaultMethodsUseTheCachedHandle() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("org.color/red/1.4/foo.txt", "red")
+                .put("junit/junit/4.12/junit.txt", "");
+
+        final Repository repository = bucket.as(Repository.class);
+        assertEquals("junit, org.color", repository.describe(", "));
+        assertEquals("junit, org.color", bucket.as(Repository.class).describe(", "));
+    }
+
+    @Test
+    public void invalidInterfaceFailsEveryTime() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final S3File root = s3Client.createBucket("repository").root();
+
+        assertThrows(InvalidAnnotationException.class, () -> root.as(Invalid.class));
+        assertThrows(InvalidAnnotationException.class, () -> root.as(Invalid.class));
+    }
+
+    @Test
+    public void invalidInterfaceFailsWhenReachable() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final S3Bucket bucket = s3Client.createBucket("repository");
+
+        // Reached only through a method that is never called
+        assertThrows(InvalidAnnotationException.class, () -> bucket.as(Catalog.class));
+        assertThrows(InvalidAnnotationException.class, () -> bucket.as(Catalog.class));
+    }
+
+    @Test
+    public void warmUpFollowsCycles() throws Exception {
+        final ProxyType type = ProxyType.warmUp(Repository.class);
+
+        assertSame(type, ProxyType.of(Repository.class));
+        assertSame(type, ProxyType.warmUp(Repository.class));
+        assertSame(ProxyType.of(Artifact.class), ProxyType.warmUp(Artifact.class));
+    }
+
+    @Test
+    public void generatedClassIsUsed() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final S3File root = s3Client.createBucket("repository").root();
+
+        final Current current = root.getFile("current").as(Current.class);
+        assertTrue(current instanceof Current$$Jaws);
+        assertEquals("current/readme", current.readme().getAbsoluteName());
+    }
+
+    @Test
+    public void staleGeneratedClassIsIgnored() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final S3File root = s3Client.createBucket("repository").root();
+
+        // Stale$$Jaws still implements a method the interface no longer has
+        final Stale stale = root.getFile("stale").as(Stale.class);
+        assertTrue(Proxy.isProxyClass(stale.getClass()));
+        assertEquals("stale/readme", stale.readme().getAbsoluteName());
+    }
+
+    public interface Current extends S3 {
+        S3File readme();
+    }
+
+    /**
+     * Written as the processor would write it for {@link Current}.
+     */
+    public static final class Current$$Jaws extends GeneratedProxy implements Current {
+        private static final Call CALL0 = call(Current.class, "file");
+        private static final Call CALL1 = call(Current.class, "parent");
+        private static final Call CALL2 = call(Current.class, "readme");
+
+        public Current$$Jaws(final S3Handler handler) {
+            super(handler);
+        }
+
+        @Override
+        public S3File file() {
+            return (S3File) CALL0.invoke(this, null);
+        }
+
+        @Override
+        public S3File parent() {
+            return (S3File) CALL1.invoke(this, null);
+        }
+
+        @Override
+        public S3File readme() {
+            return (S3File) CALL2.invoke(this, null);
+        }
+    }
+
+    public interface Stale extends S3 {
+        S3File readme();
+    }
+
+    /**
+     * Generated for an earlier version of {@link Stale} that also had
+     * {@code size()}.
+     */
+    public static final class Stale$$Jaws extends GeneratedProxy implements Stale {
+        private static final Call CALL0 = call(Stale.class, "file");
+        private static final Call CALL1 = call(Stale.class, "parent");
+        private static final Call CALL2 = call(Stale.class, "readme");
+
+        public Stale$$Jaws(final S3Handler handler) {
+            super(handler);
+        }
+
+        @Override
+        public S3File file() {
+            return (S3File) CALL0.invoke(this, null);
+        }
+
+        @Override
+        public S3File parent() {
+            return (S3File) CALL1.invoke(this, null);
+        }
+
+        @Override
+        public S3File readme() {
+            return (S3File) CALL2.invoke(this, null);
+        }
+
+        public long size() {
+            throw new IllegalStateException("size() was removed from Stale");
+        }
+    }
+
+    public interface Catalog extends S3.Dir {
+        Stream<Section> sections();
+    }
+
+    public interface Section extends S3.Dir {
+        CompletableFuture<Invalid> invalid(String name);
+    }
+
+    @Priority(Priority.Level.BACKGROUND)
+    public interface Repository extends S3.Dir {
+        Stream<Group> groups();
+
+        default String describe(final String separator) {
+            return groups().map(group -> group.file().getName())
+                    .sorted()
+                    .collect(Collectors.joining(separator));
+        }
+    }
+
+    public interface Group extends S3.Dir {
+        Stream<Artifact> artifacts();
+    }
+
+    public interface Artifact extends S3.Dir {
+        @Parent
+        Group group();
+    }
+
+    public interface Invalid extends S3.Dir {
+        @Prefix("")
+        Stream<S3File> files(String name);
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RequestCoalescerTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final AtomicInteger sent = new AtomicInteger();
+
+    private CompletableFuture<String> request(final CompletableFuture<String> response) {
+        sent.incrementAndGet();
+        return response;
+    }
+
+    @Test
+    public void identicalRequestsShare() {
+        final CompletableFuture<String> response = new CompletableFuture<>();
+        final RequestCoalescer.Key key = new RequestCoalescer.Key("bucket", "config.json", Operation.HEAD, null);
+
+        final CompletableFuture<String> first = coalescer.execute(key, () -> request(response));
+        final CompletableFuture<String> second = coalescer.execute(key, () -> request(response));
+        assertEquals(1, sent.get());
+        assertEquals(1, coalescer.getInFlight());
+
+        response.complete("etag");
+
+        assertEquals("etag", first.join());
+        assertEquals("etag", second.join());
+        assertEquals(1, coalescer.getIssued());
+        assertEquals(1, coalescer.getCoalesced());
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    @Test
+    public void completedRequestsAreNotReused() {
+        final RequestCoalescer.Key key = new RequestCoalescer.Key("bucket", "config.json", Operation.GET, null);
+
+        coalescer.execute(key, () -> request(CompletableFuture.completedFuture("one"))).join();
+        final String second = coalescer.execute(key, () -> request(CompletableFuture.completedFuture("two"))).join();
+
+        assertEquals("two", second);
+        assertEquals(2, sent.get());
+    }
+
+    @Test
+    public void differentKeysDoNotShare() {
+        final CompletableFuture<String> response = new CompletableFuture<>();
+
+        coalescer.execute(new RequestCoalescer.Key("bucket", "a", Operation.HEAD, null), () -> request(response));
+        coalescer.execute(new RequestCoalescer.Key("bucket", "a", Operation.GET, null), () -> request(response));
+        coalescer.execute(new RequestCoalescer.Key("bucket", "b", Operation.HEAD, null), () -> request(response));
+        coalescer.execute(new RequestCoalescer.Key("other", "a", Operation.HEAD, null), () -> request(response));
+        coalescer.execute(new RequestCoalescer.Key("bucket", "a", Operation.GET, "bytes=0-9"), () -> request(response));
+
+        assertEquals(5, sent.get());
+    }
+
+    @Test
+    public void cancellingOneCallerDoesNotAffectOthers() {
+        final CompletableFuture<String> response = new CompletableFuture<>();
+        final RequestCoalescer.Key key = new RequestCoalescer.Key("bucket", "config.json", Operation.HEAD, null);
+
+        final CompletableFuture<String> first = coalescer.execute(key, () -> request(response));
+        final CompletableFuture<String> second = coalescer.execute(key, () -> request(response));
+
+        first.cancel(true);
+        response.complete("etag");
+
+        assertTrue(first.isCancelled());
+        assertFalse(response.isCancelled());
+        assertEquals("etag", second.join());
+    }
+
+    @Test
+    public void failuresAreShared() {
+        final CompletableFuture<String> response = new CompletableFuture<>();
+        final RequestCoalescer.Key key = new RequestCoalescer.Key("bucket", "config.json", Operation.HEAD, null);
+
+        final CompletableFuture<String> first = coalescer.execute(key, () -> request(response));
+        final CompletableFuture<String> second = coalescer.execute(key, () -> request(response));
+
+        final IllegalStateException failure = new IllegalStateException("boom");
+        response.completeExceptionally(new CompletionException(failure));
+
+        assertSame(failure, assertThrows(CompletionException.class, first::join).getCause());
+        assertSame(failure, assertThrows(CompletionException.class, second::join).getCause());
+        assertEquals(0, coalescer.getInFlight());
+    }
+
+    @Test
+    public void invalidatedRequestsAreNotJoined() {
+        final CompletableFuture<String> stale = new CompletableFuture<>();
+        final RequestCoalescer.Key key = new RequestCoalescer.Key("bucket", "config.json", Operation.GET, null);
+        final RequestCoalescer.Key range = new RequestCoalescer.Key("bucket", "config.json", Operation.GET, "bytes=0-1");
+
+        final CompletableFuture<String> first = coalescer.execute(key, () -> request(stale));
+        coalescer.execute(range, () -> request(stale));
+        coalescer.execute(new RequestCoalescer.Key("bucket", "other.json", Operation.GET, null), () -> request(stale));
+
+        coalescer.invalidate("bucket", "config.json");
+        assertEquals(1, coalescer.getInFlight());
+
+        final String second = coalescer.execute(key, () -> request(CompletableFuture.completedFuture("fresh"))).join();
+        assertEquals("fresh", second);
+
+        // The invalidated request still completes its own caller
+        stale.complete("stale");
+        assertEquals("stale", first.join());
+        assertEquals(4, sent.get());
+    }
+
+    @Test
+    public void readAfterWriteDoesNotJoinOlderRead() throws Exception {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("config.json", "{}");
+
+        // A GET sent before the write that has not answered yet
+        final CompletableFuture<String> pending = new CompletableFuture<>();
+        final CompletableFuture<String> older = s3Client.getCoalescer().execute(
+                new RequestCoalescer.Key("repository", "config.json", Operation.GET, null), () -> pending);
+
+        bucket.put("config.json", "{\"color\":\"red\"}");
+
+        assertEquals("{\"color\":\"red\"}", bucket.getObjectAsStringAsync("config.json").get(5, TimeUnit.SECONDS));
+        assertFalse(older.isDone());
+    }
+
+    @Test
+    public void joiningRaisesThePriorityOfASharedRequest() throws Exception {
+        final PriorityScheduler scheduler = PriorityScheduler.builder()
+                .concurrency(1)
+                .reserve(Priority.Level.INTERACTIVE, 0)
+                .reserve(Priority.Level.BACKGROUND, 0)
+                .build();
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .priorities(scheduler)
+                .build();
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("backfill.json", "{}")
+                .put("config.json", "{}");
+
+        // Hold the only slot so that requests queue
+        final PriorityScheduler.Slot busy = scheduler.acquire(Priority.Level.NORMAL).join();
+
+        final CompletableFuture<HeadObjectResponse> backfill;
+        final CompletableFuture<HeadObjectResponse> queued;
+        try (Priority.Scope scope = Priority.Level.BACKGROUND.scope()) {
+            backfill = bucket.getObjectMetadataAsync("backfill.json");
+            queued = bucket.getObjectMetadataAsync("config.json");
+        }
+        assertEquals(2, scheduler.getQueued(Priority.Level.BACKGROUND));
+
+        final CompletableFuture<HeadObjectResponse> interactive;
+        try (Priority.Scope scope = Priority.Level.INTERACTIVE.scope()) {
+            interactive = bucket.getObjectMetadataAsync("config.json");
+        }
+
+        // The shared HEAD moved ahead of the other background request
+        assertEquals(1, s3Client.getCoalescer().getCoalesced());
+        assertEquals(1, scheduler.getQueued(Priority.Level.INTERACTIVE));
+        assertEquals(1, scheduler.getQueued(Priority.Level.BACKGROUND));
+
+        busy.release();
+
+        interactive.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+        backfill.get(5, TimeUnit.SECONDS);
+        assertEquals(1, scheduler.getStarted(Priority.Level.INTERACTIVE));
+        assertEquals(1, scheduler.getStarted(Priority.Level.BACKGROUND));
+    }
+
+    @Test
+    public void bucketReadsGoThroughCoalescer() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("config.json", "{}");
+
+        assertEquals("{}", bucket.root().getFile("config.json").getValueAsString());
+        assertEquals(2L, (long) bucket.getObjectMetadata("config.json").contentLength());
+
+        assertEquals(2, s3Client.getCoalescer().getIssued());
+        assertThrows(NoSuchS3ObjectException.class, () -> bucket.getObjectAsString("missing.json"));
+    }
+}
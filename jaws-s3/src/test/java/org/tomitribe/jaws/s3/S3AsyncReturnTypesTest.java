@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.tomitribe.util.Join;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.tomitribe.jaws.s3.Asserts.assertType;
+
+public class S3AsyncReturnTypesTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+    private Repository repository;
+
+    @BeforeEach
+    public final void setUp() throws Exception {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("org.color/red/1.4/foo.txt", "red")
+                .put("org.color/red/1.4/foo.pom", "")
+                .put("org.color/green/2.3/bar.txt", "green")
+                .put("junit/junit/4.12/junit.txt", "")
+                .put("readme.txt", "hello");
+        repository = bucket.as(Repository.class);
+    }
+
+    @Test
+    public void futureOfList() {
+        final List<String> names = repository.groups().join().stream()
+                .map(group -> group.file().getName())
+                .sorted()
+                .collect(Collectors.toList());
+
+        assertEquals("junit\norg.color", Join.join("\n", names));
+    }
+
+    @Test
+    public void futureOfListWithValidation() {
+        final Group group = repository.group("org.color").join();
+
+        final List<String> names = group.artifact("red").join().texts().join().stream()
+                .map(S3File::getAbsoluteName)
+                .collect(Collectors.toList());
+
+        assertEquals("org.color/red/1.4/foo.txt", Join.join("\n", names));
+    }
+
+    @Test
+    public void futureOfInterfaceRejectsInvalidName() {
+        assertThrows(IllegalArgumentException.class, () -> S3Client.join(repository.group("Invalid")));
+    }
+
+    @Test
+    public void futureOfFileIsResolved() {
+        final S3File readme = repository.readme().join();
+
+        assertType(readme, "Metadata");
+        assertEquals("hello", readme.getValueAsString());
+    }
+
+    @Test
+    public void futureOfMissingFile() {
+        final CompletionException e = assertThrows(CompletionException.class, () -> repository.missing().join());
+        assertTrue(e.getCause() instanceof FileNotFoundException);
+    }
+
+    @Test
+    public void publisherWalk() {
+        final List<String> paths = collect(repository.everything()).stream()
+                .map(S3File::getAbsoluteName)
+                .sorted()
+                .collect(Collectors.toList());
+
+        assertEquals("" +
+                "junit/junit/4.12/junit.txt\n" +
+                "org.color/green/2.3/bar.txt\n" +
+                "org.color/red/1.4/foo.pom\n" +
+                "org.color/red/1.4/foo.txt\n" +
+                "readme.txt", Join.join("\n", paths));
+    }
+
+    @Test
+    public void publisherOfDirectories() {
+        final List<String> paths = collect(repository.directories()).stream()
+                .map(group -> group.file().getAbsoluteName())
+                .collect(Collectors.toList());
+
+        // Same depth-first order as S3File.walk()
+        assertEquals("" +
+                "junit\n" +
+                "org.color\n" +
+                "junit/junit\n" +
+                "junit/junit/4.12\n" +
+                "org.color/green\n" +
+                "org.color/red\n" +
+                "org.color/green/2.3\n" +
+                "org.color/red/1.4", Join.join("\n", paths));
+    }
+
+    @Test
+    public void publisherHonorsDemand() throws Exception {
+        final BlockingQueue<S3File> received = new LinkedBlockingQueue<>();
+        final CompletableFuture<Void> complete = new CompletableFuture<>();
+        final CompletableFuture<Flow.Subscription> subscribed = new CompletableFuture<>();
+
+        repository.everything().subscribe(new Flow.Subscriber<S3File>() {
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+                subscribed.complete(subscription);
+            }
+
+            @Override
+            public void onNext(final S3File item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+                complete.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                complete.complete(null);
+            }
+        });
+
+        final Flow.Subscription subscription = subscribed.join();
+
+        // Nothing is listed until there is demand
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+
+        subscription.request(2);
+        final List<S3File> files = new ArrayList<>();
+        files.add(received.poll(5, TimeUnit.SECONDS));
+        files.add(received.poll(5, TimeUnit.SECONDS));
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        assertFalse(complete.isDone());
+
+        subscription.request(Long.MAX_VALUE);
+        complete.get(5, TimeUnit.SECONDS);
+        received.drainTo(files);
+
+        assertEquals(5, files.size());
+    }
+
+    private static <T> List<T> collect(final Flow.Publisher<T> publisher) {
+        final CompletableFuture<List<T>> future = new CompletableFuture<>();
+        publisher.subscribe(new Flow.Subscriber<T>() {
+            private final List<T> list = new ArrayList<>();
+
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(final T item) {
+                list.add(item);
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                future.complete(list);
+            }
+        });
+        return future.join();
+    }
+
+    public interface Repository extends S3.Dir {
+
+        CompletableFuture<List<Group>> groups();
+
+        CompletableFuture<Group> group(String name);
+
+        @Recursive
+        Flow.Publisher<S3File> everything();
+
+        @Recursive
+        Flow.Publisher<Folder> directories();
+
+        @Name("readme.txt")
+        CompletableFuture<S3File> readme();
+
+        @Name("missing.txt")
+        CompletableFuture<S3File> missing() throws FileNotFoundException;
+    }
+
+    @Match("[a-z.]+")
+    public interface Group extends S3.Dir {
+
+        CompletableFuture<Artifact> artifact(String name);
+    }
+
+    public interface Folder extends S3.Dir {
+    }
+
+    public interface Artifact extends S3.Dir {
+
+        @Recursive
+        @Suffix(".txt")
+        CompletableFuture<List<S3File>> texts();
+    }
+}
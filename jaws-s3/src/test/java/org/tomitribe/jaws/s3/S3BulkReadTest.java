@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.tomitribe.jaws.s3.Asserts.assertType;
+
+public class S3BulkReadTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+    private S3Bucket bucket;
+
+    @BeforeEach
+    public final void setUp() throws Exception {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+
+        bucket = s3Client.createBucket("repository");
+        for (int i = 0; i < 25; i++) {
+            bucket.put("org.color/red/1." + i + "/upload.meta", "version=1." + i);
+        }
+    }
+
+    @Test
+    public void readListedFiles() {
+        final S3File red = bucket.root().getFile("org.color/red");
+
+        final List<ReadResult> results = bucket.read(red.files()).collect(Collectors.toList());
+
+        assertEquals(25, results.size());
+        for (final ReadResult result : results) {
+            assertTrue(result.isSuccess());
+            final String version = result.getFile().getParentFile().getName();
+            assertEquals("version=" + version, result.getValueAsString());
+
+            // The GET response replaced the listing data
+            assertType(result.getFile(), "Metadata");
+        }
+    }
+
+    @Test
+    public void readAllByKey() {
+        final Map<String, ReadResult> results = bucket.readAll(Stream.of(
+                "org.color/red/1.3/upload.meta",
+                "org.color/red/1.7/upload.meta",
+                "org.color/red/9.9/upload.meta"));
+
+        assertEquals(3, results.size());
+        assertEquals("version=1.3", results.get("org.color/red/1.3/upload.meta").getValueAsString());
+        assertEquals("version=1.7", results.get("org.color/red/1.7/upload.meta").getValueAsString());
+
+        // Missing objects are reported per item
+        final ReadResult missing = results.get("org.color/red/9.9/upload.meta");
+        assertFalse(missing.isSuccess());
+        assertTrue(missing.getError() instanceof NoSuchS3ObjectException);
+        assertThrows(NoSuchS3ObjectException.class, missing::getValueAsString);
+    }
+
+    @Test
+    public void readAllDuplicateNames() {
+        final Map<String, ReadResult> results = bucket.readAll(Stream.of(
+                "org.color/red/1.3/upload.meta",
+                "org.color/red/1.4/upload.meta",
+                "org.color/red/1.3/upload.meta"));
+
+        assertEquals(2, results.size());
+        assertFalse(results.containsKey(null));
+        assertEquals("version=1.3", results.get("org.color/red/1.3/upload.meta").getValueAsString());
+        assertEquals("version=1.4", results.get("org.color/red/1.4/upload.meta").getValueAsString());
+    }
+
+    @Test
+    public void readAllNameRepeatedAfterCacheEviction() {
+        final PriorityScheduler scheduler = PriorityScheduler.builder().build();
+        final S3Bucket bucket = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .priorities(scheduler)
+                .build()
+                .getBucket("repository");
+        final List<String> others = IntStream.range(0, ChildCache.MAX_ENTRIES + 8)
+                .mapToObj(i -> "org.color/blue/" + i + ".txt")
+                .collect(Collectors.toList());
+        others.forEach(key -> bucket.put(key, key));
+
+        // The child cache has dropped the first name by the time it repeats
+        final List<String> names = new ArrayList<>();
+        names.add("org.color/red/1.3/upload.meta");
+        names.addAll(others);
+        names.add("org.color/red/1.3/upload.meta");
+
+        final long started = scheduler.getStarted(Priority.Level.NORMAL);
+        final Map<String, ReadResult> results = bucket.readAll(names.stream());
+
+        assertEquals(others.size() + 1, results.size());
+        assertEquals(others.size() + 1, scheduler.getStarted(Priority.Level.NORMAL) - started);
+        assertEquals("version=1.3", results.get("org.color/red/1.3/upload.meta").getValueAsString());
+    }
+
+    @Test
+    public void readAllFromDir() {
+        final Artifact red = bucket.root().getFile("org.color/red").as(Artifact.class);
+
+        final Map<String, ReadResult> results = red.readAll(red.versions()
+                .map(version -> version.file().getName() + "/upload.meta"));
+
+        assertEquals(25, results.size());
+        assertEquals("version=1.12", results.get("1.12/upload.meta").getValueAsString());
+    }
+
+    @Test
+    public void smallByteBudget() {
+        final S3File red = bucket.root().getFile("org.color/red");
+
+        // Each object is larger than the budget, so they are read one at a time
+        final long count = bucket.read(red.files(), 8, 1)
+                .filter(ReadResult::isSuccess)
+                .count();
+
+        assertEquals(25, count);
+    }
+
+    @Test
+    public void byteBudget() {
+        final ByteBudget budget = new ByteBudget(100);
+        budget.acquire(60);
+        budget.acquire(40);
+        assertEquals(100, budget.getUsed());
+
+        budget.release(60);
+        budget.release(40);
+
+        // Larger than the whole budget, granted because nothing else is reserved
+        budget.acquire(500);
+        assertEquals(500, budget.getUsed());
+    }
+
+    @Test
+    public void readNames() {
+        final Artifact red = bucket.root().getFile("org.color/red").as(Artifact.class);
+
+        final List<String> values = red.read(IntStream.range(0, 3).mapToObj(i -> "1." + i + "/upload.meta"))
+                .map(ReadResult::getValueAsString)
+                .sorted()
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("version=1.0", "version=1.1", "version=1.2"), values);
+    }
+
+    public interface Artifact extends S3.Dir {
+        Stream<Version> versions();
+    }
+
+    public interface Version extends S3.Dir {
+    }
+}
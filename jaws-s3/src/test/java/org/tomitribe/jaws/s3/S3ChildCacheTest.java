@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.tomitribe.jaws.s3.Asserts.assertType;
+
+public class S3ChildCacheTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+    private S3Bucket bucket;
+
+    @BeforeEach
+    public final void setUp() throws Exception {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+
+        bucket = s3Client.createBucket("repository");
+        bucket.put("org.color/green/2/2.3/foo.txt", "red")
+                .put("junit/junit/4/4.12/bar.txt", "blue");
+    }
+
+    @Test
+    public void sameChild() {
+        final S3File root = bucket.root();
+        final S3File foo = root.getFile("org.color/green/2/2.3/foo.txt");
+
+        assertSame(foo, root.getFile("org.color/green/2/2.3/foo.txt"));
+        assertSame(root.getFile("junit"), root.getFile("junit"));
+    }
+
+    @Test
+    public void resolvedStateIsKept() {
+        final S3File root = bucket.root();
+        assertTrue(root.getFile("junit/junit/4/4.12/bar.txt").exists());
+
+        assertType(root.getFile("junit/junit/4/4.12/bar.txt"), "Metadata");
+    }
+
+    @Test
+    public void writeInvalidates() {
+        final S3File root = bucket.root();
+        final S3File missing = root.getFile("missing.txt");
+        assertFalse(missing.exists());
+
+        bucket.put("missing.txt", "found");
+
+        final S3File found = root.getFile("missing.txt");
+        assertNotSame(missing, found);
+        assertTrue(found.exists());
+    }
+
+    @Test
+    public void deleteInvalidates() {
+        final S3File root = bucket.root();
+        final S3File bar = root.getFile("junit/junit/4/4.12/bar.txt");
+        assertTrue(bar.exists());
+
+        bucket.deleteObject("junit/junit/4/4.12/bar.txt");
+
+        final S3File deleted = root.getFile("junit/junit/4/4.12/bar.txt");
+        assertNotSame(bar, deleted);
+        assertFalse(deleted.exists());
+    }
+
+    @Test
+    public void sameProxy() {
+        final Repository repository = bucket.as(Repository.class);
+        final Group group = repository.group("junit");
+
+        assertSame(group, repository.group("junit"));
+        assertSame(group.file(), repository.group("junit").file());
+        assertSame(repository, bucket.root().as(Repository.class));
+    }
+
+    @Test
+    public void proxyOfAnotherType() {
+        final S3File junit = bucket.root().getFile("junit");
+        final Group group = junit.as(Group.class);
+
+        assertNotSame(group, junit.as(Other.class));
+    }
+
+    public interface Repository extends S3.Dir {
+        Group group(String name);
+    }
+
+    public interface Group extends S3.Dir {
+    }
+
+    public interface Other extends S3.Dir {
+    }
+}
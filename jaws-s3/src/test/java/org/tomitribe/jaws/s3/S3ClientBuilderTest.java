@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class S3ClientBuilderTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+
+    @Test
+    public void streamUploadsUseTheGivenExecutor() {
+        final AtomicInteger tasks = new AtomicInteger();
+        final ExecutorService pool = Executors.newCachedThreadPool();
+        final ExecutorService counting = new AbstractExecutorService() {
+            @Override
+            public void execute(final Runnable command) {
+                tasks.incrementAndGet();
+                pool.execute(command);
+            }
+
+            @Override
+            public void shutdown() {
+                pool.shutdown();
+            }
+
+            @Override
+            public List<Runnable> shutdownNow() {
+                return pool.shutdownNow();
+            }
+
+            @Override
+            public boolean isShutdown() {
+                return pool.isShutdown();
+            }
+
+            @Override
+            public boolean isTerminated() {
+                return pool.isTerminated();
+            }
+
+            @Override
+            public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+                return pool.awaitTermination(timeout, unit);
+            }
+        };
+
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .executor(counting)
+                .build();
+
+        final byte[] bytes = "streamed".getBytes(StandardCharsets.UTF_8);
+        final S3Bucket bucket = s3Client.createBucket("repository");
+        bucket.putObject("streamed.txt", new ByteArrayInputStream(bytes), bytes.length);
+
+        assertEquals("streamed", bucket.getObjectAsString("streamed.txt"));
+        assertTrue(tasks.get() > 0);
+        assertSame(counting, s3Client.getExecutor());
+        pool.shutdown();
+    }
+
+    @Test
+    public void callbacksRunOnTheGivenExecutor() {
+        final AtomicInteger callbacks = new AtomicInteger();
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .callbackExecutor(command -> {
+                    callbacks.incrementAndGet();
+                    command.run();
+                })
+                .build();
+
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("config.json", "{}");
+        final int before = callbacks.get();
+
+        assertEquals("{}", bucket.getObjectAsStringAsync("config.json").join());
+        assertEquals(before + 1, callbacks.get());
+    }
+
+    @Test
+    public void transferManagerCustomizer() {
+        final AtomicBoolean customized = new AtomicBoolean();
+        S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .transferManager(builder -> customized.set(true))
+                .build();
+
+        assertTrue(customized.get());
+    }
+
+    @Test
+    public void sharedResources() {
+        final S3Client first = new S3Client(mockS3.getS3Client());
+        final S3Client second = S3Client.builder()
+                .shareResourcesWith(first)
+                .build();
+
+        assertSame(first.getS3(), second.getS3());
+        assertSame(first.getTransferManager(), second.getTransferManager());
+        assertSame(first.getExecutor(), second.getExecutor());
+        assertNotSame(first.getConcurrencyLimits(), second.getConcurrencyLimits());
+    }
+
+    @Test
+    public void defaultExecutorIsBounded() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final ThreadPoolExecutor executor = (ThreadPoolExecutor) s3Client.getExecutor();
+        assertEquals(S3Client.DEFAULT_THREADS, executor.getMaximumPoolSize());
+
+        final S3Client sized = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .threads(3)
+                .build();
+        assertEquals(3, ((ThreadPoolExecutor) sized.getExecutor()).getMaximumPoolSize());
+    }
+
+    @Test
+    public void virtualThreads() {
+        final S3Client.Builder builder = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .virtualThreads(true);
+
+        if (Runtime.version().feature() < 21) {
+            assertThrows(UnsupportedOperationException.class, builder::build);
+            return;
+        }
+
+        final S3Client s3Client = builder.build();
+        final byte[] bytes = "virtual".getBytes(StandardCharsets.UTF_8);
+        final S3Bucket bucket = s3Client.createBucket("repository");
+        bucket.putObject("virtual.txt", new ByteArrayInputStream(bytes), bytes.length);
+
+        assertEquals("virtual", bucket.getObjectAsString("virtual.txt"));
+    }
+
+    @Test
+    public void s3IsRequired() {
+        assertThrows(NullPointerException.class, () -> S3Client.builder().build());
+        assertThrows(IllegalArgumentException.class, () -> S3Client.builder().threads(0));
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class S3ClientCloseTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+
+    @Test
+    public void closedClientRefusesWork() {
+        final S3Bucket bucket;
+        try (final S3Client s3Client = new S3Client(mockS3.getS3Client())) {
+            bucket = s3Client.createBucket("repository")
+                    .put("config.json", "{}");
+            assertEquals("{}", bucket.getObjectAsString("config.json"));
+        }
+
+        assertTrue(bucket.getClient().isClosed());
+        assertThrows(IllegalStateException.class, () -> bucket.getObjectAsString("config.json"));
+        assertThrows(IllegalStateException.class, () -> bucket.put("other.json", "{}"));
+        assertThrows(IllegalStateException.class, () -> bucket.getClient().getBucket("repository"));
+    }
+
+    @Test
+    public void closeWaitsForWorkInFlight() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final CompletableFuture<String> response = new CompletableFuture<>();
+        final CompletableFuture<String> result = s3Client.execute(Operation.GET, "repository", "config.json", () -> response);
+
+        CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS).execute(() -> response.complete("{}"));
+
+        assertTrue(s3Client.close(Duration.ofSeconds(10)));
+        assertEquals("{}", result.join());
+    }
+
+    @Test
+    public void closeCancelsWorkAfterTimeout() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final CompletableFuture<String> response = new CompletableFuture<>();
+        final CompletableFuture<String> result = s3Client.execute(Operation.GET, "repository", "config.json", () -> response);
+
+        assertFalse(s3Client.close(Duration.ofMillis(100)));
+        assertTrue(result.isCancelled());
+        assertTrue(response.isCancelled());
+        assertEquals(0, s3Client.getConcurrencyLimits().getInFlight());
+    }
+
+    @Test
+    public void ownedExecutorIsShutDown() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        s3Client.close();
+
+        assertTrue(s3Client.getExecutor().isShutdown());
+
+        // The async client belongs to the caller and is still usable
+        final S3Client another = new S3Client(mockS3.getS3Client());
+        another.createBucket("repository");
+        another.close();
+    }
+
+    @Test
+    public void sharedResourcesAreLeftOpen() {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        final S3Client first = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .executor(executor)
+                .build();
+        final S3Client second = S3Client.builder()
+                .shareResourcesWith(first)
+                .build();
+
+        second.close();
+        assertFalse(executor.isShutdown());
+        first.createBucket("repository");
+
+        first.close();
+        assertFalse(executor.isShutdown());
+        executor.shutdown();
+    }
+
+    @Test
+    public void sharedResourcesOutliveTheOwner() {
+        final S3Client first = new S3Client(mockS3.getS3Client());
+        final S3Client second = S3Client.builder()
+                .shareResourcesWith(first)
+                .build();
+
+        first.close();
+        assertFalse(first.getExecutor().isShutdown());
+        second.createBucket("repository");
+
+        second.close();
+        assertTrue(first.getExecutor().isShutdown());
+        assertThrows(IllegalStateException.class, () -> S3Client.builder().shareResourcesWith(second));
+    }
+
+    @Test
+    public void openStreamCountsAsInFlight() throws Exception {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("config.json", "{}");
+
+        final InputStream stream = bucket.getObject("config.json");
+        CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS).execute(() -> {
+            try {
+                stream.close();
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        assertTrue(s3Client.close(Duration.ofSeconds(10)));
+    }
+
+    @Test
+    public void unclosedStreamIsAbortedAfterTimeout() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("config.json", "{}");
+
+        bucket.getObject("config.json");
+
+        assertFalse(s3Client.close(Duration.ofMillis(100)));
+    }
+
+    @Test
+    public void waitingRequestsFailOnClose() {
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .concurrencyLimits(ConcurrencyLimits.builder()
+                        .minLimit(1)
+                        .initialLimit(1)
+                        .build())
+                .build();
+
+        final CompletableFuture<String> response = new CompletableFuture<>();
+        final CompletableFuture<String> running = s3Client.execute(Operation.GET, "repository", "config.json", () -> response);
+        final CompletableFuture<String> waiting = s3Client.execute(Operation.GET, "repository", "other.json",
+                () -> CompletableFuture.completedFuture("{}"));
+
+        CompletableFuture.delayedExecutor(100, TimeUnit.MILLISECONDS).execute(() -> response.complete("{}"));
+
+        // The running request is waited for, the waiting one never started
+        assertTrue(s3Client.close(Duration.ofSeconds(10)));
+        assertEquals("{}", running.join());
+        assertThrows(IllegalStateException.class, () -> S3Client.join(waiting));
+        assertEquals(0, s3Client.getConcurrencyLimits().getInFlight());
+    }
+
+    @Test
+    public void closeIsIdempotent() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+
+        assertTrue(s3Client.close(Duration.ofSeconds(1)));
+        assertTrue(s3Client.close(Duration.ofSeconds(1)));
+    }
+}
@@ -19,6 +19,7 @@ package org.tomitribe.jaws.s3;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.tomitribe.jaws.NoSuchBucketException;
 import org.tomitribe.util.Join;
 
 import java.io.IOException;
@@ -27,6 +28,8 @@ import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class S3ClientTest {
 
@@ -55,6 +58,40 @@ public class S3ClientTest {
         assertEquals("red", bucket.getName());
     }
 
+    @Test
+    public void getBucketIsCached() {
+        final S3Bucket created = s3Client.createBucket("red");
+
+        assertSame(created, s3Client.getBucket("red"));
+        assertSame(created, s3Client.bucket("red"));
+
+        final S3Client other = new S3Client(mockS3.getS3Client());
+        assertSame(other.getBucket("red"), other.getBucket("red"));
+    }
+
+    @Test
+    public void getMissingBucket() {
+        final NoSuchBucketException e = assertThrows(NoSuchBucketException.class, () -> s3Client.getBucket("missing"));
+        assertEquals("missing", e.getBucketName());
+    }
+
+    @Test
+    public void lazyBucket() {
+        s3Client.createBucket("red").put("readme.txt", "hello");
+
+        final S3Client other = new S3Client(mockS3.getS3Client());
+        assertEquals("hello", other.bucket("red").getObjectAsString("readme.txt"));
+    }
+
+    @Test
+    public void lazyMissingBucketFailsOnFirstRequest() {
+        final S3Bucket bucket = s3Client.bucket("missing");
+        assertEquals("missing", bucket.getName());
+
+        final NoSuchBucketException e = assertThrows(NoSuchBucketException.class, () -> bucket.put("readme.txt", "hello"));
+        assertEquals("missing", e.getBucketName());
+    }
+
     @Test
     public void buckets() throws IOException {
         s3Client.createBucket("red")
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.tomitribe.jaws.s3.Asserts.assertType;
+
+public class S3EnrichTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+    private S3Bucket bucket;
+
+    @BeforeEach
+    public final void setUp() throws Exception {
+        final S3AsyncClient s3 = mockS3.getS3Client();
+        bucket = new S3Client(s3).createBucket("repository");
+
+        for (int i = 0; i < 12; i++) {
+            s3.putObject(PutObjectRequest.builder()
+                            .bucket("repository")
+                            .key("reports/" + i + ".json")
+                            .contentType("application/json")
+                            .metadata(Map.of("build", "" + i))
+                            .build(),
+                    AsyncRequestBody.fromString("{}")).join();
+        }
+    }
+
+    @Test
+    public void enrichListedFiles() {
+        final List<S3File> listed = bucket.root().getFile("reports").files().collect(Collectors.toList());
+        listed.forEach(file -> assertType(file, "ObjectSummary"));
+
+        final List<S3File> enriched = S3Streams.enrich(listed.stream(), 4).collect(Collectors.toList());
+
+        // Same instances, same order, now holding HEAD metadata
+        assertEquals(listed, enriched);
+        for (final S3File file : enriched) {
+            assertType(file, "Metadata");
+            final ObjectMetadata metadata = file.getObjectMetadata();
+            assertEquals("application/json", metadata.getContentType());
+            final String build = file.getName().replace(".json", "");
+            assertEquals(build, metadata.getUserMetadata().get("build"));
+        }
+    }
+
+    @Test
+    public void enrichUnordered() {
+        final long count = S3Streams.enrich(bucket.root().getFile("reports").files(), 5, false)
+                .filter(file -> "application/json".equals(file.getObjectMetadata().getContentType()))
+                .count();
+
+        assertEquals(12, count);
+    }
+
+    @Test
+    public void deletedAfterListing() {
+        final List<S3File> listed = bucket.root().getFile("reports").files().collect(Collectors.toList());
+        bucket.deleteObject("reports/3.json");
+
+        final S3File deleted = S3Streams.enrich(listed.stream(), 4)
+                .filter(file -> file.getName().equals("3.json"))
+                .findFirst()
+                .get();
+
+        assertType(deleted, "NewObject");
+        assertFalse(deleted.exists());
+    }
+
+    @Test
+    public void directoriesPassThrough() {
+        final S3File directory = bucket.root().getFile("reports/0.json").getParentFile();
+
+        final List<S3File> enriched = S3Streams.enrich(List.of(directory).stream(), 2).collect(Collectors.toList());
+
+        assertType(enriched.get(0), "Directory");
+    }
+}
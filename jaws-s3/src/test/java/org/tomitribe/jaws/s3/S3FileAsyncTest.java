@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.tomitribe.jaws.s3.Asserts.assertType;
+import static org.tomitribe.jaws.s3.Priority.Level.BACKGROUND;
+import static org.tomitribe.jaws.s3.Priority.Level.INTERACTIVE;
+import static org.tomitribe.jaws.s3.Priority.Level.NORMAL;
+
+public class S3FileAsyncTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+    private S3Bucket bucket;
+
+    @BeforeEach
+    public final void setUp() throws Exception {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+
+        bucket = s3Client.createBucket("repository");
+        bucket.put("org.color/green/2/2.3/foo.txt", "red")
+                .put("org.color/green/1/1.4/foo.txt", "green")
+                .put("org.color/green/1/1.4/bar.txt", "blue")
+                .put("org.color/readme.txt", "orange");
+    }
+
+    @Test
+    public void existsAsync() {
+        final S3File file = bucket.root().getFile("org.color/green/1/1.4/foo.txt");
+        assertType(file, "Unknown");
+
+        final CompletableFuture<Boolean> exists = file.existsAsync();
+        assertTrue(exists.join());
+
+        // The HEAD response is kept once the future completes
+        assertType(file, "Metadata");
+    }
+
+    @Test
+    public void existsAsyncMissing() {
+        final S3File file = bucket.root().getFile("org.color/green/1/1.4/missing.txt");
+        assertType(file, "Unknown");
+
+        assertFalse(file.existsAsync().join());
+        assertType(file, "NewObject");
+    }
+
+    @Test
+    public void getValueAsStringAsync() {
+        final S3File file = bucket.root().getFile("org.color/green/1/1.4/foo.txt");
+        assertType(file, "Unknown");
+
+        assertEquals("green", file.getValueAsStringAsync().join());
+        assertType(file, "Metadata");
+        assertEquals(5, file.getSize());
+    }
+
+    @Test
+    public void getValueAsStringAsyncMissing() {
+        final S3File file = bucket.root().getFile("org.color/green/1/1.4/missing.txt");
+
+        assertThrows(NoSuchS3ObjectException.class, () -> S3Client.join(file.getValueAsStringAsync()));
+    }
+
+    @Test
+    public void getObjectMetadataAsync() {
+        final S3File file = bucket.root().getFile("org.color/readme.txt");
+
+        final ObjectMetadata metadata = file.getObjectMetadataAsync().join();
+        assertEquals(6, metadata.getContentLength());
+        assertType(file, "Metadata");
+    }
+
+    @Test
+    public void listedMetadataAsyncDoesNotBlock() throws Exception {
+        final PriorityScheduler scheduler = PriorityScheduler.builder()
+                .concurrency(1)
+                .reserve(INTERACTIVE, 0)
+                .reserve(BACKGROUND, 0)
+                .build();
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .priorities(scheduler)
+                .build();
+        final S3Bucket bucket = s3Client.createBucket("reports");
+        mockS3.getS3Client().putObject(PutObjectRequest.builder()
+                        .bucket("reports")
+                        .key("daily/summary.json")
+                        .contentType("application/json")
+                        .build(),
+                AsyncRequestBody.fromString("{\"ok\":true}")).join();
+
+        final S3File file = bucket.root().getFile("daily").files().findFirst().get();
+        assertType(file, "ObjectSummary");
+
+        // While the only slot is held the HEAD cannot start, so a caller
+        // that made it on its own thread would not return
+        final PriorityScheduler.Slot held = scheduler.acquire(NORMAL).join();
+        final ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            final Future<CompletableFuture<String>> read = caller.submit(() ->
+                    file.getObjectMetadataAsync().thenApply(ObjectMetadata::getContentType));
+            final CompletableFuture<String> contentType = read.get(10, TimeUnit.SECONDS);
+            assertFalse(contentType.isDone());
+
+            held.release();
+            assertEquals("application/json", contentType.join());
+            assertType(file, "Metadata");
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+
+    @Test
+    public void listAsync() {
+        final S3File dir = bucket.root().getFile("org.color");
+
+        final List<String> names = dir.listAsync().join().stream()
+                .map(S3File::getName)
+                .sorted()
+                .collect(Collectors.toList());
+
+        assertEquals(List.of("green", "readme.txt"), names);
+    }
+
+    @Test
+    public void deleteAsync() {
+        final S3File file = bucket.root().getFile("org.color/readme.txt");
+
+        file.deleteAsync().join();
+        assertType(file, "NewObject");
+        assertFalse(bucket.root().getFile("org.color/readme.txt").exists());
+    }
+
+    @Test
+    public void deleteAsyncDirectory() {
+        final S3File directory = bucket.root().getFile("org.color/readme.txt").getParentFile();
+        assertType(directory, "Directory");
+
+        assertThrows(UnsupportedOperationException.class, () -> S3Client.join(directory.deleteAsync()));
+
+        directory.deleteAsync(true).join();
+        assertType(directory, "NewObject");
+        assertTrue(bucket.root().listAsync().join().isEmpty());
+    }
+
+    @Test
+    public void deleteAsyncDirectoryPageByPage() {
+        final PriorityScheduler scheduler = PriorityScheduler.builder().build();
+        final S3Client s3Client = S3Client.builder()
+                .s3(mockS3.getS3Client())
+                .priorities(scheduler)
+                .build();
+        final S3Bucket bucket = s3Client.createBucket("archive");
+        for (int i = 0; i < 1100; i++) {
+            bucket.put("logs/" + i + ".log", "line " + i);
+        }
+        final S3File directory = bucket.root().getFile("logs/0.log").getParentFile();
+        assertType(directory, "Directory");
+        final long started = scheduler.getStarted(NORMAL);
+
+        // One key is enough to refuse, the other pages are not listed
+        assertThrows(UnsupportedOperationException.class, () -> S3Client.join(directory.deleteAsync()));
+        assertEquals(started + 1, scheduler.getStarted(NORMAL));
+
+        directory.deleteAsync(true).join();
+        assertType(directory, "NewObject");
+        assertTrue(bucket.root().listAsync().join().isEmpty());
+    }
+}
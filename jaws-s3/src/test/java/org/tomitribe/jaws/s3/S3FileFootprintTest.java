@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.tomitribe.jaws.s3.Asserts.assertType;
+
+public class S3FileFootprintTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+    private S3Bucket bucket;
+
+    @BeforeEach
+    public final void setUp() throws Exception {
+        bucket = new S3Client(mockS3.getS3Client()).createBucket("repository");
+    }
+
+    @Test
+    public void listedFilesShareTheirParent() {
+        final List<S3File> files = list(2500);
+
+        // Entries of one directory share their parent
+        final Path first = files.get(0).getPath().getParent();
+        assertSame(first, files.get(999).getPath().getParent());
+        assertNotSame(first, files.get(1000).getPath().getParent());
+        assertEquals(first.getParent(), files.get(1000).getPath().getParent().getParent());
+
+        assertEquals("part-0.parquet", files.get(0).getName());
+        assertEquals("data/2024/0/", first.getSearchPrefix());
+        files.forEach(file -> assertType(file, "ObjectSummary"));
+    }
+
+    /**
+     * Measures the heap retained by listed files, not counting the
+     * {@code S3Object}s they were created from. With compressed oops one
+     * listed file takes about 88 bytes; before Path kept a single key
+     * string and S3File its node in a VarHandle field, it took about 344.
+     * The result depends on the collector and heap sizing, so this only
+     * runs with {@code mvn test -Pbenchmark}.
+     */
+    @Test
+    @Tag("benchmark")
+    public void listedFilesAreCompact() {
+        final int entries = 200_000;
+        final List<S3Object> objects = objects(entries);
+        final List<S3File> files = new ArrayList<>(entries);
+        final long before = usedMemory();
+
+        final Function<S3Object, S3File> listed = S3File.fromListing(bucket);
+        for (final S3Object object : objects) {
+            files.add(listed.apply(object));
+        }
+
+        final long bytesPerEntry = (usedMemory() - before) / entries;
+        assertTrue(bytesPerEntry <= 160, bytesPerEntry + " bytes per listed file");
+        assertEquals(entries, files.size());
+    }
+
+    private List<S3File> list(final int entries) {
+        final Function<S3Object, S3File> listed = S3File.fromListing(bucket);
+        final List<S3File> files = new ArrayList<>(entries);
+        for (final S3Object object : objects(entries)) {
+            files.add(listed.apply(object));
+        }
+        return files;
+    }
+
+    private static List<S3Object> objects(final int entries) {
+        final List<S3Object> objects = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            objects.add(S3Object.builder()
+                    .key("data/2024/" + (i / 1000) + "/part-" + i + ".parquet")
+                    .eTag("\"" + Integer.toHexString(i) + "0123456789abcdef0123456789\"")
+                    .size((long) i)
+                    .lastModified(Instant.ofEpochSecond(i))
+                    .build());
+        }
+        return objects;
+    }
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
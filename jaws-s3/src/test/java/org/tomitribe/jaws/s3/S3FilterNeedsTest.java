@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.function.Predicate;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.tomitribe.jaws.s3.Asserts.assertType;
+
+public class S3FilterNeedsTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+    private final List<LogRecord> warnings = new ArrayList<>();
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(final LogRecord record) {
+            warnings.add(record);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+    private S3AsyncClient s3;
+    private S3Bucket bucket;
+    private Reports reports;
+
+    @BeforeEach
+    public final void setUp() throws Exception {
+        s3 = mockS3.getS3Client();
+        bucket = new S3Client(s3).createBucket("repository");
+
+        for (int i = 0; i < 6; i++) {
+            put("reports/" + i, i % 2 == 0);
+        }
+
+        reports = bucket.root().getFile("reports").as(Reports.class);
+        Logger.getLogger(Validation.class.getName()).addHandler(handler);
+    }
+
+    @AfterEach
+    public final void tearDown() {
+        Logger.getLogger(Validation.class.getName()).removeHandler(handler);
+    }
+
+    @Test
+    public void declaredMetadataIsLoadedFirst() {
+        final List<S3File> json = reports.json().collect(Collectors.toList());
+
+        assertEquals(List.of("0.json", "2.json", "4.json"), names(json));
+        json.forEach(file -> assertType(file, "Metadata"));
+        assertTrue(warnings.isEmpty());
+    }
+
+    @Test
+    public void declaredMetadataIsLoadedFirstAsync() {
+        final ListingPublisher<S3File> publisher = (ListingPublisher<S3File>) reports.jsonAsync();
+
+        assertEquals(List.of("0.json", "2.json", "4.json"), names(publisher.toList().join()));
+        assertEquals(List.of("0.json", "2.json", "4.json"), names(reports.jsonFuture().join()));
+        assertTrue(warnings.isEmpty());
+    }
+
+    @Test
+    public void listedAttributesNeedNoRequest() {
+        final List<S3File> small = reports.small();
+
+        assertEquals(List.of("0.json", "2.json", "4.json"), names(small));
+        small.forEach(file -> assertType(file, "ObjectSummary"));
+        assertTrue(warnings.isEmpty());
+    }
+
+    @Test
+    public void undeclaredRequestsAreReportedOnce() {
+        assertEquals(List.of("0.json", "2.json", "4.json"), names(reports.undeclared().collect(Collectors.toList())));
+        assertEquals(3, reports.undeclared().count());
+
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0).getMessage().contains("@Filter(IsJson.class)"), warnings.get(0).getMessage());
+    }
+
+    @Test
+    public void pagesLargerThanTheWindow() {
+        final int count = S3Handler.METADATA_WINDOW * 2 + 5;
+        for (int i = 0; i < count; i++) {
+            put(String.format("many/%03d", i), i % 2 == 0);
+        }
+
+        final Reports many = bucket.root().getFile("many").as(Reports.class);
+        final List<S3File> json = ((ListingPublisher<S3File>) many.jsonAsync()).toList().join();
+
+        assertEquals((count + 1) / 2, json.size());
+        json.forEach(file -> assertType(file, "Metadata"));
+    }
+
+    @Test
+    public void filesDeletedAfterListingAreLeftOut() {
+        // Deletes an object once it has been listed, before its HEAD request
+        final S3AsyncClient deleting = (S3AsyncClient) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{S3AsyncClient.class}, (proxy, method, args) -> {
+                    final Object result = method.invoke(s3, args);
+                    if (!method.getName().equals("listObjects")) return result;
+                    return ((CompletableFuture<?>) result).thenCompose(page -> s3.deleteObject(DeleteObjectRequest.builder()
+                                    .bucket("repository")
+                                    .key("reports/2.json")
+                                    .build())
+                            .thenApply(deleted -> page));
+                });
+        final Reports reports = new S3Client(deleting).getBucket("repository").root().getFile("reports").as(Reports.class);
+
+        assertEquals(List.of("0.json", "4.json"), names(reports.json().collect(Collectors.toList())));
+
+        put("reports/2", true);
+        assertEquals(List.of("0.json", "4.json"), names(((ListingPublisher<S3File>) reports.jsonAsync()).toList().join()));
+    }
+
+    private void put(final String name, final boolean json) {
+        s3.putObject(PutObjectRequest.builder()
+                        .bucket("repository")
+                        .key(name + (json ? ".json" : ".txt"))
+                        .contentType(json ? "application/json" : "text/plain")
+                        .build(),
+                AsyncRequestBody.fromString(json ? "{}" : "plain text")).join();
+    }
+
+    private static List<String> names(final List<S3File> files) {
+        return files.stream().map(S3File::getName).collect(Collectors.toList());
+    }
+
+    public interface Reports extends S3.Dir {
+        @Filter(value = IsJson.class, needs = Filter.Attribute.CONTENT_TYPE)
+        Stream<S3File> json();
+
+        @Filter(value = IsJson.class, needs = Filter.Attribute.CONTENT_TYPE)
+        Flow.Publisher<S3File> jsonAsync();
+
+        @Filter(value = IsJson.class, needs = Filter.Attribute.CONTENT_TYPE)
+        CompletableFuture<List<S3File>> jsonFuture();
+
+        @Filter(value = IsSmall.class, needs = Filter.Attribute.SIZE)
+        List<S3File> small();
+
+        @Filter(IsJson.class)
+        Stream<S3File> undeclared();
+    }
+
+    public static class IsJson implements Predicate<S3File> {
+        @Override
+        public boolean test(final S3File file) {
+            return "application/json".equals(file.getObjectMetadata().getContentType());
+        }
+    }
+
+    public static class IsSmall implements Predicate<S3File> {
+        @Override
+        public boolean test(final S3File file) {
+            return file.getSize() < 5;
+        }
+    }
+}
@@ -286,6 +286,18 @@ public class S3MatchTest {
         assertEquals("main.css", Join.join("\n", RecordingFilter.seen));
     }
 
+    @Test
+    public void filterOnlySeesMatchingKeysOfRecursiveListing() throws Exception {
+        RecordingFilter.seen.clear();
+
+        final FilterOrderReturns returns = root().file().as(FilterOrderReturns.class);
+        final List<S3File> data = returns.recursiveAlphaFiles().collect(Collectors.toList());
+
+        // Names are checked on the listed keys, so @Filter never sees the others
+        assertEquals("file3.txt\nfile1.txt", Join.join("\n", S3File::getName, data));
+        assertEquals("file3.txt\nfile1.txt", Join.join("\n", RecordingFilter.seen));
+    }
+
     // ---------------------------------------------------------------
     // Test interfaces
     // ---------------------------------------------------------------
@@ -372,6 +384,11 @@ public class S3MatchTest {
         @Match(value = "reset\\.css", exclude = true)
         @Filter(RecordingFilter.class)
         Stream<S3File> excludeThenFilter();
+
+        @Recursive
+        @Match("file[13]\\.txt")
+        @Filter(RecordingFilter.class)
+        Stream<S3File> recursiveAlphaFiles();
     }
 
     public static class RecordingFilter implements Predicate<S3File> {
@@ -189,6 +189,26 @@ public class S3RecursiveTest {
                 "org.color/red/1/1.4/foo.txt", Join.join("\n", paths));
     }
 
+    @Test
+    public void recursiveDirsDescendThroughFilteredDirs() throws Exception {
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("org.color/red/1/1.4/foo.txt", "")
+                .put("org.color/red/latest/foo.txt", "")
+                .put("junit/junit/4/4.12/bar.txt", "");
+        final Work work = bucket.as(Work.class);
+
+        final List<S3File> list = work.recursiveVersions()
+                .map(VersionDir::file)
+                .collect(Collectors.toList());
+
+        // "org.color", "red" and "junit" are not versions but are still walked
+        assertEquals("" +
+                "junit/junit/4/\n" +
+                "junit/junit/4/4.12/\n" +
+                "org.color/red/1/\n" +
+                "org.color/red/1/1.4/", Join.join("\n", paths(list)));
+    }
+
     private List<String> paths(final List<S3File> list) {
         return list.stream()
                 .map(file -> file.isDirectory() ? file.getAbsoluteName() + "/" : file.getAbsoluteName())
@@ -214,11 +234,18 @@ public class S3RecursiveTest {
         Stream<S3File> immediateFiles();
 
         Stream<DirType> immediateDirs();
+
+        @Recursive
+        Stream<VersionDir> recursiveVersions();
     }
 
     public interface DirType extends S3.Dir {
     }
 
+    @Match("[0-9.]+")
+    public interface VersionDir extends S3.Dir {
+    }
+
     public static class IsJava implements Predicate<S3File> {
         @Override
         public boolean test(final S3File file) {
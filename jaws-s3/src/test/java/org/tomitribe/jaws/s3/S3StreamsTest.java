@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class S3StreamsTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+
+    @Test
+    public void orderedResults() {
+        final List<Integer> result = S3Streams.mapConcurrent(IntStream.range(0, 50).boxed(), 8, i -> {
+            sleep(50 - i);
+            return i * 2;
+        }).collect(Collectors.toList());
+
+        assertEquals(IntStream.range(0, 50).map(i -> i * 2).boxed().collect(Collectors.toList()), result);
+    }
+
+    @Test
+    public void unorderedResults() {
+        final List<Integer> result = S3Streams.mapConcurrent(IntStream.range(0, 50).boxed(), 8, false, i -> {
+            sleep(i % 5);
+            return i;
+        }).sorted().collect(Collectors.toList());
+
+        assertEquals(IntStream.range(0, 50).boxed().collect(Collectors.toList()), result);
+    }
+
+    @Test
+    public void windowIsRespected() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+
+        final long count = S3Streams.mapConcurrent(IntStream.range(0, 40).boxed(), 4, false, i -> {
+            max.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(5);
+            running.decrementAndGet();
+            return i;
+        }).count();
+
+        assertEquals(40, count);
+        assertTrue(max.get() <= 4, "max in flight " + max.get());
+        assertTrue(max.get() > 1, "calls were not overlapped");
+    }
+
+    @Test
+    public void sourceIsReadLazily() {
+        final AtomicInteger pulled = new AtomicInteger();
+        final Stream<Integer> source = IntStream.range(0, 1000).boxed().peek(i -> pulled.incrementAndGet());
+
+        final List<Integer> first = S3Streams.mapAsync(source, 5, true, CompletableFuture::completedFuture)
+                .limit(3)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of(0, 1, 2), first);
+        assertTrue(pulled.get() <= 8, "pulled " + pulled.get());
+    }
+
+    @Test
+    public void failuresArePropagated() {
+        final Stream<Integer> stream = S3Streams.mapConcurrent(IntStream.range(0, 10).boxed(), 3, i -> {
+            if (i == 4) throw new IllegalStateException("boom");
+            return i;
+        });
+
+        final IllegalStateException e = assertThrows(IllegalStateException.class, () -> stream.collect(Collectors.toList()));
+        assertEquals("boom", e.getMessage());
+    }
+
+    @Test
+    public void closeCancelsInFlightWork() {
+        final CompletableFuture<Integer> never = new CompletableFuture<>();
+        final AtomicInteger closed = new AtomicInteger();
+
+        final Stream<Integer> source = Stream.of(1, 2).onClose(closed::incrementAndGet);
+        try (final Stream<Integer> stream = S3Streams.mapAsync(source, 2, true,
+                i -> i == 1 ? CompletableFuture.completedFuture(i) : never)) {
+            assertEquals(1, (int) stream.findFirst().get());
+        }
+
+        assertTrue(never.isCancelled());
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    public void invalidWindow() {
+        assertThrows(IllegalArgumentException.class, () -> S3Streams.mapConcurrent(Stream.of(1), 0, i -> i));
+    }
+
+    @Test
+    public void forEachAsyncRespectsWindow() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        final List<Integer> items = IntStream.range(0, 40).boxed().collect(Collectors.toList());
+
+        S3Streams.forEachAsync(items, 4, i -> {
+            max.accumulateAndGet(running.incrementAndGet(), Math::max);
+            return CompletableFuture.runAsync(() -> {
+                sleep(5);
+                running.decrementAndGet();
+            });
+        }).join();
+
+        assertTrue(max.get() <= 4, "max in flight " + max.get());
+        assertTrue(max.get() > 1, "calls were not overlapped");
+
+        // Completed futures do not recurse
+        final AtomicInteger started = new AtomicInteger();
+        S3Streams.forEachAsync(IntStream.range(0, 100_000).boxed().collect(Collectors.toList()), 4,
+                i -> CompletableFuture.completedFuture(started.incrementAndGet())).join();
+        assertEquals(100_000, started.get());
+    }
+
+    @Test
+    public void forEachAsyncStopsAtFirstFailure() {
+        final AtomicInteger started = new AtomicInteger();
+        final List<Integer> items = IntStream.range(0, 10).boxed().collect(Collectors.toList());
+
+        final CompletableFuture<Void> result = S3Streams.forEachAsync(items, 1, i -> {
+            started.incrementAndGet();
+            if (i == 3) return CompletableFuture.failedFuture(new IllegalStateException("boom"));
+            return CompletableFuture.completedFuture(i);
+        });
+
+        final IllegalStateException e = assertThrows(IllegalStateException.class, () -> S3Client.join(result));
+        assertEquals("boom", e.getMessage());
+        assertEquals(4, started.get());
+    }
+
+    @Test
+    public void asyncReadsOverListing() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final S3Bucket bucket = s3Client.createBucket("repository");
+        for (int i = 0; i < 20; i++) {
+            bucket.put("versions/" + i + "/changelog.txt", "release " + i);
+        }
+
+        final List<String> changelogs = S3Streams.mapAsync(bucket.root().getFile("versions").files(), 8, true,
+                        S3File::getValueAsStringAsync)
+                .sorted()
+                .collect(Collectors.toList());
+
+        assertEquals(20, changelogs.size());
+        assertEquals("release 0", changelogs.get(0));
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -20,10 +20,16 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.RegisterExtension;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
+import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ValidationTest {
@@ -202,6 +208,61 @@ public class ValidationTest {
         assertTrue(v.test(file("carol.xml")));
     }
 
+    // ---------------------------------------------------------------
+    // Compiled listing filters
+    // ---------------------------------------------------------------
+
+    @Test
+    public void listingFilterIsCompiledOnce() throws Exception {
+        final MethodAnnotations annotations = MethodAnnotations.of(CombinedMethods.class.getMethod("aliceOnly"));
+
+        final Validation first = annotations.listingFilter(JsonFile2.class, null);
+        final Validation second = annotations.listingFilter(JsonFile2.class, null);
+
+        assertSame(first, second);
+        assertNotSame(first, annotations.listingFilter(S3File.class, null));
+        assertTrue(first.test(file("alice.json")));
+        assertFalse(first.test(file("bob.json")));
+    }
+
+    @Test
+    public void filterClassIsInstantiatedOnce() throws Exception {
+        final MethodAnnotations annotations = MethodAnnotations.of(FilterMethods.class.getMethod("counted", String.class));
+        final int before = CountingFilter.INSTANCES.get();
+
+        assertTrue(annotations.listingFilter(S3File.class, new Object[]{".json"}).test(file("alice.json")));
+        assertFalse(annotations.listingFilter(S3File.class, new Object[]{".xml"}).test(file("alice.json")));
+        assertTrue(annotations.listingFilter(S3File.class, new Object[]{".xml"}).test(file("carol.xml")));
+
+        assertEquals(before + 1, CountingFilter.INSTANCES.get());
+    }
+
+    @Test
+    public void boundArgumentsAreAppliedPerCall() throws Exception {
+        final Method method = BoundMethods.class.getMethod("matching", String.class, boolean.class);
+        final MethodAnnotations annotations = MethodAnnotations.of(method);
+
+        final Validation json = annotations.listingFilter(S3File.class, new Object[]{".*\\.json", false});
+        final Validation notJson = annotations.listingFilter(S3File.class, new Object[]{".*\\.json", true});
+
+        assertTrue(json.test(file("alice.json")));
+        assertFalse(json.test(file("carol.xml")));
+        assertFalse(notJson.test(file("alice.json")));
+        assertTrue(notJson.test(file("carol.xml")));
+    }
+
+    @Test
+    public void boundPatternKeepsFlags() throws Exception {
+        final Method method = BoundMethods.class.getMethod("pattern", Pattern.class);
+        final MethodAnnotations annotations = MethodAnnotations.of(method);
+
+        final Validation v = annotations.listingFilter(S3File.class,
+                new Object[]{Pattern.compile("ALICE\\.JSON", Pattern.CASE_INSENSITIVE)});
+
+        assertTrue(v.test(file("alice.json")));
+        assertFalse(v.test(file("bob.json")));
+    }
+
     // ---------------------------------------------------------------
     // Test interfaces and methods
     // ---------------------------------------------------------------
@@ -249,6 +310,30 @@ public class ValidationTest {
         Stream<S3File> aliceOnly();
     }
 
+    public interface FilterMethods {
+        @Filter(CountingFilter.class)
+        Stream<S3File> counted(@Suffix String suffix);
+    }
+
+    public interface BoundMethods {
+        Stream<S3File> matching(@Match String pattern, boolean exclude);
+
+        Stream<S3File> pattern(@Match Pattern pattern);
+    }
+
+    public static class CountingFilter implements Predicate<S3File> {
+        static final AtomicInteger INSTANCES = new AtomicInteger();
+
+        public CountingFilter() {
+            INSTANCES.incrementAndGet();
+        }
+
+        @Override
+        public boolean test(final S3File s3File) {
+            return true;
+        }
+    }
+
     public static class JsonOnlyFilter implements Predicate<S3File> {
         @Override
         public boolean test(final S3File s3File) {
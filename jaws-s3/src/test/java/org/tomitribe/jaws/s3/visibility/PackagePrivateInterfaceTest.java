@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.tomitribe.jaws.s3.visibility;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.tomitribe.jaws.s3.MockS3Extension;
+import org.tomitribe.jaws.s3.S3;
+import org.tomitribe.jaws.s3.S3Bucket;
+import org.tomitribe.jaws.s3.S3Client;
+
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Proxies of interfaces that are not public, declared outside the
+ * package of the library. Their proxy classes are package-private and
+ * live in this package.
+ */
+public class PackagePrivateInterfaceTest {
+
+    @RegisterExtension
+    public MockS3Extension mockS3 = new MockS3Extension();
+
+    @Test
+    public void packagePrivateInterface() {
+        final S3Client s3Client = new S3Client(mockS3.getS3Client());
+        final S3Bucket bucket = s3Client.createBucket("repository")
+                .put("org.color/red/1.4/foo.txt", "red")
+                .put("junit/junit/4.12/junit.txt", "");
+
+        final Repository repository = bucket.as(Repository.class);
+
+        assertEquals("org.color", repository.group("org.color").file().getName());
+        assertEquals("junit, org.color", repository.describe(", "));
+        assertEquals("junit, org.color", bucket.as(Repository.class).describe(", "));
+    }
+
+    interface Repository extends S3.Dir {
+        Stream<Group> groups();
+
+        Group group(String name);
+
+        default String describe(final String separator) {
+            return groups().map(group -> group.file().getName())
+                    .sorted()
+                    .collect(Collectors.joining(separator));
+        }
+    }
+
+    interface Group extends S3.Dir {
+    }
+}